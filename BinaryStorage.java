@@ -0,0 +1,343 @@
+/*
+ * File for the BinaryStorage class, the compact alternative to the
+ * tab separated storage format.
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Reads and writes the binary storage format. Manager.readStorage picks
+ * this reader when the file starts with MAGIC, so binary and text files
+ * can share the same <username>.txt name.
+ *
+ * Format (version 3):
+ * MAGIC, VERSION byte, varint number of Tasks, varint next id to hand
+ * out, then the template table: varint number of TaskTemplates, then
+ * for each one
+ * varint period (0 if not recurring, 1 daily, 2 weekly, 3 monthly,
+ * 4 yearly)
+ * zigzag varint until date as epoch day, only if recurring
+ * varint length + UTF-8 bytes of title, then of description
+ * then one record per Task in DFS order:
+ * varint depth (0 if not a subTask)
+ * varint id
+ * flags byte: bit 0 complete
+ * zigzag varint date as epoch day
+ * varint index of its TaskTemplate in the table
+ * Tasks with the same title, description and periodCode, e.g. the days
+ * of a weekly Task, store them once. The table comes first so a lazy or
+ * parallel read can start at any record.
+ *
+ * Version 2 files have no table; each record's flags byte holds the
+ * period in bits 1-3, and the record ends with the until date if
+ * recurring, then the title and description. Version 1 files are the
+ * same but have no next id or record ids, and are read with ids handed
+ * out in file order. Both are still read.
+ *
+ * Usage as converter: java BinaryStorage toBinary|toText username
+ */
+public class BinaryStorage {
+    byte[] data;
+    int index;
+
+    /*Constants */
+    final static byte[] MAGIC = {'F', 'C', 'T', 'B'};
+    final static int VERSION = 3;
+    final static int VERSION_WITHOUT_TEMPLATES = 2;
+    private final static int VERSION_WITHOUT_IDS = 1;
+
+    final static int COMPLETE_FLAG = 1;
+    final static int PERIOD_SHIFT = 1;
+    final static int PERIOD_MASK = 7;
+
+    BinaryStorage(byte[] data) {
+        this.data = data;
+        this.index = 0;
+    }
+
+    /**
+     * @param data - contents of a storage file
+     * @return True if data is in the binary format
+     */
+    public static boolean isBinary(byte[] data) {
+        if (data.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the header of a binary storage file, telling the Manager
+     * whether the records carry ids, which id to hand out next and the
+     * TaskTemplates the records refer to.
+     * @param m - Manager to load into
+     * @param data - contents of the storage file
+     * @return index of the first record
+     * @throws IOException if the file is not a supported version
+     */
+    static int readHeader(Manager m, byte[] data) throws IOException {
+        BinaryStorage in = new BinaryStorage(data);
+        in.index = MAGIC.length;
+        int version = data[in.index++];
+        if (version < VERSION_WITHOUT_IDS || version > VERSION) {
+            throw new IOException("Unsupported storage version " + version);
+        }
+        in.readVarint(); // Task count, records run to the end of the file
+        m.storedIds = version >= VERSION_WITHOUT_TEMPLATES;
+        if (m.storedIds) {
+            m.nextId = Math.max(m.nextId, in.readVarint());
+        }
+        m.storedTemplates = null;
+        if (version == VERSION) {
+            m.storedTemplates = new TaskTemplate[in.readVarint()];
+            for (int i = 0; i < m.storedTemplates.length; i++) {
+                int period = in.readVarint();
+                int periodCode = 0;
+                if (period != 0) {
+                    periodCode = new Recurrence(period, in.readSignedVarint()).toCode();
+                }
+                String title = in.readString();
+                m.storedTemplates[i] = m.templates.share(title, in.readString(), periodCode);
+            }
+        }
+        return in.index;
+    }
+
+    /**
+     * Decodes the Task records in a byte range of a binary storage file
+     * whose header has been read with readHeader.
+     * @param m - Manager to load into
+     * @param data - contents of the storage file
+     * @param start - index of the first record
+     * @param end - index just past the last record
+     * @param lazy - True to skip over subTasks, recording where they are
+     */
+    static void readRecords(Manager m, byte[] data, int start, int end, boolean lazy) {
+        BinaryStorage in = new BinaryStorage(data);
+        in.index = start;
+        TaskTemplate[] table = m.storedTemplates;
+        while (in.index < end) {
+            int recordStart = in.index;
+            int depth = in.readVarint();
+            int id = m.storedIds ? in.readVarint() : -1;
+            if (lazy && depth > 0) {
+                in.skipRecord(table != null);
+                m.skipTask(recordStart, in.index, id);
+                continue;
+            }
+            int flags = data[in.index++];
+            LocalDate date = LocalDate.ofEpochDay(in.readSignedVarint());
+            Task t;
+            if (table != null) {
+                t = new Task(table[in.readVarint()], date);
+            }
+            else {
+                int period = (flags >> PERIOD_SHIFT) & PERIOD_MASK;
+                int periodCode = 0;
+                if (period != 0) {
+                    periodCode = new Recurrence(period, in.readSignedVarint()).toCode();
+                }
+                String title = in.readString();
+                t = new Task(m.templates.share(title, in.readString(), periodCode), date);
+            }
+            if ((flags & COMPLETE_FLAG) != 0) {
+                t.markComplete();
+            }
+            m.loadTask(t, depth, id);
+        }
+    }
+
+    /**
+     * Writes Tasks and their subTasks in the binary format. Equal
+     * TaskTemplates are written once, whether or not the Tasks share them.
+     * @param tasks - Tasks that are not subTasks
+     * @param count - total number of Tasks including subTasks
+     * @param nextId - id the next new Task gets
+     * @param out - stream to write to
+     * @throws IOException
+     */
+    public static void write(List<Task> tasks, int count, int nextId, OutputStream out)
+        throws IOException {
+        Map<TaskTemplate, Integer> table = new HashMap<TaskTemplate, Integer>();
+        List<TaskTemplate> order = new ArrayList<TaskTemplate>();
+        for (Task t : tasks) {
+            collectTemplates(t, table, order);
+        }
+
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeVarint(out, count);
+        writeVarint(out, nextId);
+        writeVarint(out, order.size());
+        for (TaskTemplate template : order) {
+            Recurrence r = Recurrence.fromCode(template.periodCode);
+            writeVarint(out, r == null ? 0 : r.getPeriod());
+            if (r != null) {
+                writeSignedVarint(out, r.untilEpochDay);
+            }
+            writeString(out, template.title);
+            writeString(out, template.description);
+        }
+        for (Task t : tasks) {
+            writeTask(out, t, 0, table);
+        }
+    }
+
+    /*Numbers each distinct TaskTemplate in the order it is first used */
+    private static void collectTemplates(Task t, Map<TaskTemplate, Integer> table,
+        List<TaskTemplate> order) {
+        if (table.putIfAbsent(t.template, order.size()) == null) {
+            order.add(t.template);
+        }
+        for (Task s : t.getSubTasks()) {
+            collectTemplates(s, table, order);
+        }
+    }
+
+    private static void writeTask(OutputStream out, Task t, int depth, Map<TaskTemplate, Integer> table)
+        throws IOException {
+        writeVarint(out, depth);
+        writeVarint(out, t.id);
+        out.write(t.isComplete() ? COMPLETE_FLAG : 0);
+        writeSignedVarint(out, t.getDate().toEpochDay());
+        writeVarint(out, table.get(t.template));
+        for (Task s : t.getSubTasks()) {
+            writeTask(out, s, depth + 1, table);
+        }
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeSignedVarint(OutputStream out, long value) throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeString(OutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Finds chunk boundaries for a parallel load. Records are walked
+     * without building anything, and a chunk starts at the first record
+     * of depth 0 past each target offset.
+     * @param data - contents of the storage file
+     * @param first - index of the first record
+     * @param chunkCount - number of chunks to aim for
+     * @param ids - True if records carry an id after their depth
+     * @param templates - True if records refer to a template table
+     * @return start of each chunk, followed by the end of the last chunk
+     */
+    static int[] chunkStarts(byte[] data, int first, int chunkCount, boolean ids, boolean templates) {
+        BinaryStorage in = new BinaryStorage(data);
+        in.index = first;
+        int target = Math.max(1, (data.length - in.index) / chunkCount);
+        List<Integer> starts = new ArrayList<Integer>();
+        starts.add(in.index);
+        int next = in.index + target;
+        while (in.index < data.length) {
+            int recordStart = in.index;
+            int depth = in.readVarint();
+            if (depth == 0 && recordStart >= next) {
+                starts.add(recordStart);
+                next = recordStart + target;
+            }
+            if (ids) {
+                in.readVarint();
+            }
+            in.skipRecord(templates);
+        }
+        starts.add(data.length);
+        int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    /*Skips the rest of a record after its id without building anything */
+    private void skipRecord(boolean templates) {
+        int flags = data[index++];
+        readLongVarint();
+        if (templates) {
+            readLongVarint();
+            return;
+        }
+        if (((flags >> PERIOD_SHIFT) & PERIOD_MASK) != 0) {
+            readLongVarint();
+        }
+        int titleLength = readVarint();
+        index += titleLength;
+        int descriptionLength = readVarint();
+        index += descriptionLength;
+    }
+
+    int readVarint() {
+        return (int) readLongVarint();
+    }
+
+    private long readLongVarint() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[index++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    long readSignedVarint() {
+        long raw = readLongVarint();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    String readString() {
+        int length = readVarint();
+        String s = new String(data, index, length, StandardCharsets.UTF_8);
+        index += length;
+        return s;
+    }
+
+    /**
+     * Rewrites a user's storage file in the binary or text format. Any
+     * pending journal is folded in. Recurring Tasks are kept exactly as
+     * stored rather than rolled over to today.
+     * @param username - user whose file to convert
+     * @param binary - True to convert to binary, false to text
+     * @throws IOException
+     */
+    public static void convert(String username, boolean binary) throws IOException {
+        Manager m = new Manager(username);
+        m.date = LocalDate.MIN; // No Task is ever before MIN, so nothing rolls over
+        m.readStorage();
+        m.setBinaryStorage(binary);
+        m.writeToStorage();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 || !(args[0].equals("toBinary") || args[0].equals("toText"))) {
+            System.out.println("Usage: java BinaryStorage toBinary|toText username");
+            return;
+        }
+        convert(args[1], args[0].equals("toBinary"));
+    }
+}
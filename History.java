@@ -0,0 +1,178 @@
+/*
+ * File for the History class, the undo and redo stacks of a Manager.
+ */
+import java.util.*;
+
+/*
+ * Command log behind Manager.undo and Manager.redo. Every change the
+ * Manager makes records a pair of actions, one taking the change back
+ * and one making it again. The actions recorded between begin and end
+ * form one step, so a change that cascades (e.g. completing a Task's
+ * last subTask completes the Task too) is undone in one go.
+ *
+ * A step only holds the Tasks and values it touched, so recording costs
+ * O(1) per changed field and nothing is copied. Undone steps wait on the
+ * redo stack until a new change is recorded.
+ *
+ * While a step is being undone or redone, recording is switched off so
+ * the actions, which go through the Manager, do not record themselves.
+ *
+ * Instance Variables:
+ * Deque<Step> undoSteps: steps that can be undone, newest first
+ * Deque<Step> redoSteps: steps that can be redone, newest first
+ * Step open: step being recorded, null between steps
+ * int depth: how deeply begin calls are nested
+ * int limit: most steps kept for undo
+ * boolean replaying: whether a step is being undone or redone
+ */
+public class History {
+    Deque<Step> undoSteps;
+    Deque<Step> redoSteps;
+    Step open;
+    int depth;
+    int limit;
+    boolean replaying;
+
+    /*Constants */
+    private final static int DEFAULT_LIMIT = 1000;
+
+    /*Actions recorded for one user level change, oldest first */
+    static class Step {
+        final List<Runnable> undo = new ArrayList<Runnable>();
+        final List<Runnable> redo = new ArrayList<Runnable>();
+    }
+
+    /**
+     * Constructor to create an empty History.
+     */
+    public History() {
+        undoSteps = new ArrayDeque<Step>();
+        redoSteps = new ArrayDeque<Step>();
+        open = null;
+        depth = 0;
+        limit = DEFAULT_LIMIT;
+        replaying = false;
+    }
+
+    /**
+     * Starts a step. Calls nest, and the step ends with the outermost end.
+     */
+    void begin() {
+        if (depth++ == 0) {
+            open = new Step();
+        }
+    }
+
+    /**
+     * Ends a step, keeping it for undo if anything was recorded.
+     */
+    void end() {
+        if (--depth > 0) {
+            return;
+        }
+        Step done = open;
+        open = null;
+        if (done.undo.isEmpty()) {
+            return;
+        }
+        undoSteps.push(done);
+        redoSteps.clear();
+        while (undoSteps.size() > limit) {
+            undoSteps.removeLast();
+        }
+    }
+
+    /**
+     * Records one change of the open step. Ignored while undoing or
+     * redoing.
+     * @param undo - takes the change back
+     * @param redo - makes the change again
+     */
+    void record(Runnable undo, Runnable redo) {
+        if (replaying) {
+            return;
+        }
+        if (open == null) { // A change made outside begin and end is its own step
+            begin();
+            record(undo, redo);
+            end();
+            return;
+        }
+        open.undo.add(undo);
+        open.redo.add(redo);
+    }
+
+    /**
+     * @return True if there is a step to undo
+     */
+    public boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    /**
+     * @return True if there is a step to redo
+     */
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    /**
+     * Takes back the newest step, newest change first.
+     * @return False if there was nothing to undo
+     */
+    boolean undo() {
+        if (undoSteps.isEmpty()) {
+            return false;
+        }
+        Step step = undoSteps.pop();
+        replaying = true;
+        try {
+            for (int i = step.undo.size() - 1; i >= 0; i--) {
+                step.undo.get(i).run();
+            }
+        } finally {
+            replaying = false;
+        }
+        redoSteps.push(step);
+        return true;
+    }
+
+    /**
+     * Makes the most recently undone step again, oldest change first.
+     * @return False if there was nothing to redo
+     */
+    boolean redo() {
+        if (redoSteps.isEmpty()) {
+            return false;
+        }
+        Step step = redoSteps.pop();
+        replaying = true;
+        try {
+            for (Runnable r : step.redo) {
+                r.run();
+            }
+        } finally {
+            replaying = false;
+        }
+        undoSteps.push(step);
+        return true;
+    }
+
+    /**
+     * Forgets every step, e.g. after the Tasks were reloaded.
+     */
+    public void clear() {
+        undoSteps.clear();
+        redoSteps.clear();
+    }
+
+    /**
+     * @param limit - most steps kept for undo, older ones are dropped
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+        while (undoSteps.size() > limit) {
+            undoSteps.removeLast();
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * File for the Journal class, the append-only change log kept next
+ * to a user's snapshot file.
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+
+/*
+ * Journal of Manager mutations since the last snapshot. Records are
+ * buffered in memory and appended to <username>.log on flush, so a
+ * save only costs the size of what changed. At load time the log is
+ * replayed on top of the snapshot read by Manager.readStorage.
+ *
+ * Tasks are identified by their id, which the Manager hands out once and
+ * the snapshot stores, so ids stay the same across compactions. Snapshots
+ * from before ids were stored number their Tasks in file order instead
+ * (every line counts, even dropped ones).
+ *
+ * The in-memory records (pending, recordCount) are guarded by the
+ * Manager's write lock. File operations (append, startLog) may run on a
+ * background SaveService thread, one at a time.
+ *
+ * The first line of the log holds the CRC32 of the snapshot it belongs
+ * to. A log whose snapshot has since been rewritten (e.g. a crash
+ * between compaction and deleting the log) is ignored.
+ *
+ * Titles and descriptions are escaped, so a tab, line break or
+ * backslash in them is written as \t, \n, \r or \\ and cannot split a
+ * record. Logs from before escaping have no format number in their
+ * first line; they are replayed as written and folded into a new
+ * snapshot at the next save rather than appended to.
+ *
+ * Record format, one per line, fields separated by tabs:
+ * A parentId title description YYYYMMDD complete periodCode id - added
+ * Task (parentId -1 for a Task that is not a subTask, no id in older logs)
+ * C id - marked complete, I id - marked incomplete
+ * T id title, D id description, W id YYYYMMDD, P id periodCode - field edits
+ * X id withSubTasks - removed Task, M id parentId - moved Task
+ *
+ * Instance Variables:
+ * File logFile: the log, <username>.log
+ * StringBuilder pending: records not yet written to the log
+ * long snapshotChecksum: CRC32 of the snapshot the log belongs to
+ * int recordCount: records in the log and pending, since the last snapshot
+ * boolean unescaped: whether the log on disk is from before escaping
+ */
+public class Journal {
+    File logFile;
+    StringBuilder pending;
+    long snapshotChecksum;
+    int recordCount;
+    boolean unescaped;
+
+    /*Constants */
+    private final static String FILE_EXTENSION = ".log";
+    private final static String FILE_START = "Journal:";
+    private final static char FILE_DELIM = '\t';
+    private final static char ESCAPE = '\\';
+    private final static String FORMAT = "2";
+    private final static int NO_PARENT = -1;
+
+    final static char ADD = 'A';
+    final static char COMPLETE = 'C';
+    final static char INCOMPLETE = 'I';
+    final static char TITLE = 'T';
+    final static char DESCRIPTION = 'D';
+    final static char DATE = 'W';
+    final static char PERIOD = 'P';
+    final static char REMOVE = 'X';
+    final static char MOVE = 'M';
+
+    /**
+     * Constructor to create the Journal for a user.
+     * @param username - same username the Manager uses
+     */
+    public Journal(String username) {
+        logFile = new File(username + FILE_EXTENSION);
+        pending = new StringBuilder();
+        snapshotChecksum = 0;
+        recordCount = 0;
+        unescaped = false;
+    }
+
+    /**
+     * Records a Task added to the Manager.
+     * @param t - the new Task
+     * @param parent - its parent, null if not a subTask
+     */
+    public void add(Task t, Task parent) {
+        pending.append(ADD).append(FILE_DELIM)
+            .append(parent == null ? NO_PARENT : parent.id).append(FILE_DELIM)
+            .append(escape(t.getTitle())).append(FILE_DELIM)
+            .append(escape(t.getDescription())).append(FILE_DELIM)
+            .append(toDigits(t.getDate())).append(FILE_DELIM)
+            .append(t.isComplete()).append(FILE_DELIM)
+            .append(t.getPeriodCode()).append(FILE_DELIM)
+            .append(t.id).append('\n');
+        recordCount++;
+    }
+
+    /**
+     * Records a Task removed from the Manager.
+     * @param t - the removed Task
+     * @param withSubTasks - True if its subTasks went with it, false if
+     * they moved up a level
+     */
+    public void remove(Task t, boolean withSubTasks) {
+        edit(REMOVE, t, withSubTasks);
+    }
+
+    /**
+     * Records a Task moved under a new parent.
+     * @param t - the moved Task
+     * @param newParent - its new parent, null if no longer a subTask
+     */
+    public void move(Task t, Task newParent) {
+        edit(MOVE, t, newParent == null ? NO_PARENT : newParent.id);
+    }
+
+    /**
+     * Records a change to one field of a Task.
+     * @param type - record type, one of COMPLETE, INCOMPLETE, TITLE,
+     * DESCRIPTION, DATE or PERIOD
+     * @param t - the changed Task
+     * @param value - new value, null for COMPLETE and INCOMPLETE
+     */
+    public void edit(char type, Task t, Object value) {
+        pending.append(type).append(FILE_DELIM).append(t.id);
+        if (value != null) {
+            pending.append(FILE_DELIM).append(value instanceof String ? escape((String) value) : value);
+        }
+        pending.append('\n');
+        recordCount++;
+    }
+
+    /**
+     * @return True if there are records not yet written to the log
+     */
+    public boolean hasPending() {
+        return pending.length() > 0;
+    }
+
+    /**
+     * Appends the pending records to the log.
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        append(takePending());
+    }
+
+    /**
+     * Hands over the pending records so they can be appended elsewhere.
+     * @return records not yet written, "" if none
+     */
+    public String takePending() {
+        String records = pending.toString();
+        pending.setLength(0);
+        return records;
+    }
+
+    /**
+     * Appends records to the log and syncs them to disk, starting a new
+     * log if there is none for the current snapshot.
+     * @param records - records taken from takePending
+     * @throws IOException
+     */
+    public void append(String records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        boolean fresh = !logFile.exists();
+        try (FileOutputStream file = new FileOutputStream(logFile, true);
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8))) {
+            if (fresh) {
+                out.write(FILE_START + FILE_DELIM + snapshotChecksum + FILE_DELIM + FORMAT);
+                out.newLine();
+            }
+            out.write(records);
+            out.flush();
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * Forgets the in-memory records once a new snapshot has been taken.
+     */
+    public void clearPending() {
+        pending.setLength(0);
+        recordCount = 0;
+    }
+
+    /**
+     * Discards the log once its records have been folded into a new
+     * snapshot, so the next append starts a log for that snapshot.
+     * @param newSnapshotChecksum - CRC32 of the new snapshot
+     */
+    public void startLog(long newSnapshotChecksum) {
+        logFile.delete();
+        snapshotChecksum = newSnapshotChecksum;
+        unescaped = false;
+    }
+
+    /**
+     * Discards both the log and the in-memory records.
+     * @param newSnapshotChecksum - CRC32 of the new snapshot
+     */
+    public void reset(long newSnapshotChecksum) {
+        clearPending();
+        startLog(newSnapshotChecksum);
+    }
+
+    /**
+     * @return True if there is a log, which may still turn out to belong
+     * to an older snapshot
+     */
+    public boolean hasLog() {
+        return logFile.exists();
+    }
+
+    /**
+     * Replays the log on top of the snapshot the Manager just read.
+     * Records are only applied once their whole line is there and parses.
+     * A crash part way through an append leaves the last record without
+     * its line break, so the log is truncated before it and the next
+     * append carries on from there. A whole line that does not parse is
+     * skipped, and the records after it are still applied.
+     * @param m - Manager holding the snapshot
+     * @return True if a log was replayed
+     * @throws IOException
+     */
+    public boolean replay(Manager m) throws IOException {
+        if (!logFile.exists()) {
+            return false;
+        }
+        byte[] data = Files.readAllBytes(logFile.toPath());
+        int headerEnd = indexOf(data, '\n', 0);
+        String header = headerEnd < 0 ? null : line(data, 0, headerEnd);
+        String current = FILE_START + FILE_DELIM + snapshotChecksum;
+        if (header == null || !(header.equals(current) || header.equals(current + FILE_DELIM + FORMAT))) {
+            /*Log belongs to an older snapshot, its changes are already in the file */
+            logFile.delete();
+            return false;
+        }
+        unescaped = header.equals(current);
+        int start = headerEnd + 1;
+        while (start < data.length) {
+            int end = indexOf(data, '\n', start);
+            if (end < 0) {
+                truncate(start);
+                break;
+            }
+            String[] fields = line(data, start, end).split(String.valueOf(FILE_DELIM), -1);
+            start = end + 1;
+            if (!wellFormed(fields)) {
+                continue;
+            }
+            char type = fields[0].charAt(0);
+            if (type == ADD) {
+                Task t = new Task(m.templates.share(text(fields[2]), text(fields[3]),
+                    Integer.parseInt(fields[6])), fromDigits(fields[4]));
+                if (Boolean.parseBoolean(fields[5])) {
+                    t.markComplete();
+                }
+                m.replayAdd(t, Integer.parseInt(fields[1]),
+                    fields.length > 7 ? Integer.parseInt(fields[7]) : -1);
+            }
+            else {
+                m.replayEdit(type, Integer.parseInt(fields[1]), fields.length > 2 ? text(fields[2]) : null);
+            }
+            recordCount++;
+        }
+        return true;
+    }
+
+    /*Whether a record has every field its type needs, each of them parsing */
+    private static boolean wellFormed(String[] fields) {
+        if (fields[0].length() != 1 || fields.length < 2) {
+            return false;
+        }
+        try {
+            Integer.parseInt(fields[1]);
+            switch (fields[0].charAt(0)) {
+                case ADD:
+                    fromDigits(fields[4]);
+                    Recurrence.fromCode(Integer.parseInt(fields[6]));
+                    if (fields.length > 7) {
+                        Integer.parseInt(fields[7]);
+                    }
+                    return isBoolean(fields[5]);
+                case COMPLETE:
+                case INCOMPLETE:
+                    return true;
+                case TITLE:
+                case DESCRIPTION:
+                    return fields.length > 2;
+                case DATE:
+                    fromDigits(fields[2]);
+                    return true;
+                case PERIOD:
+                    Recurrence.fromCode(Integer.parseInt(fields[2]));
+                    return true;
+                case MOVE:
+                    Integer.parseInt(fields[2]);
+                    return true;
+                case REMOVE:
+                    return isBoolean(fields[2]);
+                default:
+                    return false;
+            }
+        } catch (RuntimeException e) { // Missing field, bad number or date
+            return false;
+        }
+    }
+
+    /*A text field as it was before being written */
+    private String text(String field) {
+        return unescaped ? field : unescape(field);
+    }
+
+    /**
+     * @return text with backslashes, tabs and line breaks escaped, so it
+     * fits in one field of a record
+     */
+    static String escape(String text) {
+        StringBuilder sb = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char escaped = c == ESCAPE ? ESCAPE : c == FILE_DELIM ? 't' : c == '\n' ? 'n' : c == '\r' ? 'r' : 0;
+            if (escaped != 0 && sb == null) {
+                sb = new StringBuilder(text.length() + 8).append(text, 0, i);
+            }
+            if (escaped != 0) {
+                sb.append(ESCAPE).append(escaped);
+            }
+            else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? text : sb.toString();
+    }
+
+    /**
+     * @return text escaped by escape as it was before. A backslash not
+     * followed by an escape is kept as it is
+     */
+    static String unescape(String field) {
+        int i = field.indexOf(ESCAPE);
+        if (i < 0) {
+            return field;
+        }
+        StringBuilder sb = new StringBuilder(field.length()).append(field, 0, i);
+        while (i < field.length()) {
+            char c = field.charAt(i++);
+            if (c == ESCAPE && i < field.length()) {
+                char next = field.charAt(i);
+                char plain = next == ESCAPE ? ESCAPE : next == 't' ? FILE_DELIM : next == 'n' ? '\n'
+                    : next == 'r' ? '\r' : 0;
+                if (plain != 0) {
+                    sb.append(plain);
+                    i++;
+                    continue;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isBoolean(String field) {
+        return field.equals("true") || field.equals("false");
+    }
+
+    /*Text of a line, without the '\r' newLine() writes before '\n' on some systems */
+    private static String line(byte[] data, int start, int end) {
+        if (end > start && data[end - 1] == '\r') {
+            end--;
+        }
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] data, char c, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*Cuts the log off before a record that did not make it to disk whole */
+    private void truncate(int length) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.setLength(length);
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * @return date as an int in format YYYYMMDD
+     */
+    static int toDigits(LocalDate d) {
+        return d.getYear() * 10000 + d.getMonthValue() * 100 + d.getDayOfMonth();
+    }
+
+    /**
+     * @return date from a String in format YYYYMMDD
+     */
+    static LocalDate fromDigits(String digits) {
+        return fromDigits(Integer.parseInt(digits));
+    }
+
+    /**
+     * @return date from an int in format YYYYMMDD
+     */
+    static LocalDate fromDigits(int date) {
+        return LocalDate.of(date / 10000, (date % 10000) / 100, date % 100);
+    }
+}
@@ -4,12 +4,19 @@
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.scene.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.control.*;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.application.*;
 import javafx.stage.*;
 import javafx.util.Callback;
@@ -17,15 +24,65 @@ import javafx.util.Callback;
 /*
  * This is the class for the application's UI. The Instance variables
  * are intended to 
+ *
+ * Tasks are shown in a ListView or TreeView. Both only build rows for
+ * the Tasks on screen and reuse them while scrolling, so showing a
+ * store costs the same whatever its size. Which descriptions are shown
+ * and which Tasks are expanded is kept per Task, not per row, so it
+ * survives scrolling and rebuilding the view. A row only has its title
+ * and date until it is first hovered or focused, when its buttons are
+ * made, and rows are handed back to a pool when their cells empty, so
+ * cells made again reuse them rather than building new ones.
+ *
+ * The ListView and TreeView are made once and kept while the other is
+ * shown. The tree keeps being patched while hidden, so switching back
+ * to it keeps every subtree that was expanded unless a filter changed.
+ *
+ * The view is built once and then patched: the Manager reports each
+ * Task added, changed, moved or removed, and ViewPatcher inserts,
+ * redraws or removes just those rows, whichever way the change was made.
+ * Changes made on other threads cannot be patched in as they happen, so
+ * they mark the view stale and it is built again once on the JavaFX
+ * thread, however many arrive before that runs.
+ * Flipping a filter fills the same view again with Tasks copied by date
+ * range out of the Manager's lists of all and of incomplete Tasks, so it
+ * costs the number of Tasks shown, not the number stored.
+ *
+ * The window opens before anything is read. Storage is read on a worker
+ * thread while the controls that use the Manager are disabled, then the
+ * view is filled in batches from today onwards, then the overdue Tasks
+ * nearest first, so the rows the view opens on are painted first. How
+ * long the first frame, the first rows and the full view took is
+ * printed once everything is in.
  */
 public class Main extends Application {
     static String username;
-    ScrollPane screen;
     VBox display;
     HBox operations;
     VBox taskList;
     Manager m;
+    SaveService saveService;
     Scene scene;
+    Set<Task> shownDescriptions = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+    Set<Task> expandedTasks = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+    int view;
+    boolean searching;
+    ListView<Task> listView;
+    TreeView<Task> treeView;
+    ListView<Task> listControl;
+    TreeView<Task> treeControl;
+    boolean treeShowsOverdue;
+    boolean treeShowsComplete;
+    Deque<TaskRow> rowPool = new ArrayDeque<TaskRow>();
+    Map<Task, TaskTreeItem> treeItems = new IdentityHashMap<Task, TaskTreeItem>();
+    Map<Task, TaskRow> shownRows = new IdentityHashMap<Task, TaskRow>();
+    ViewPatcher patcher = new ViewPatcher();
+    AtomicBoolean viewStale = new AtomicBoolean();
+    int viewGeneration;
+    boolean streaming;
+    ProgressBar progress;
+    StartupMetrics metrics;
+    List<String> pendingMetrics = new ArrayList<String>();
 
     private static final String LOGIN_PROMPT = "Enter username";
     private static final String SHOW_OVERDUE_BUTTON_TEXT = "Show Overdue";
@@ -36,13 +93,18 @@ public class Main extends Application {
     private static final String ADD_SUBTASK_STAGE_TITLE = "Add Subtask";
     private static final String EARLY_DATE_COLOR = "-fx-background-color: #ffc0cb;";
     private static final String FINALIZE_SUBTASK_BUTTON_TEXT = "Create Subtask";
+    private static final String SEARCH_PROMPT = "Search";
+    private static final int SEARCH_RESULT_LIMIT = 100;
+    private static final String UNDO_BUTTON_TEXT = "Undo";
+    private static final String REDO_BUTTON_TEXT = "Redo";
     private static final String SAVE_BUTTON_TEXT = "Save";
+    private static final String SAVING_BUTTON_TEXT = "Saving...";
+    private static final String SAVED_BUTTON_TEXT = "Saved";
+    private static final String SAVE_FAILED_BUTTON_TEXT = "Save Failed - Retry";
     private static final String CREATE_TASK_BUTTON_TEXT = "Create Task";
     private static final String ADD_TASK_STAGE_TITLE = "Add Task";
     private static final String COMPLETE_TASK_COLOR = "-fx-background-color: green";
     private static final String INCOMPLETE_TASK_COLOR = "-fx-background-color: white";
-    private static final String SHOW_SUBTASKS_BUTTON_TEXT = "Show Subtasks";
-    private static final String HIDE_SUBTASKS_BUTTON_TEXT = "Hide Subtasks";
     private static final String MARK_COMPLETE_BUTTON_TEXT = "Mark COMPLETE";
     private static final String MARK_INCOMPLETE_BUTTON_TEXT = "mark INCOMPLETE";
     private static final String SHOW_DESCRIPTION_BUTTON_TEXT = "Show Description";
@@ -55,6 +117,13 @@ public class Main extends Application {
          "Weekly", "Monthly", "Yearly"};
     private static final String DAYS_PER_WEEK_PROMPT = "Select Number of Days Per Week";
     private static final String[] VIEW_SELECTION_PROMPTS = {"Task -> Subtask View", "All Tasks View"};
+    private static final int STREAM_BATCH = 5000;
+    private static final int ROW_POOL_LIMIT = 200;
+    private static final double ROW_MIN_HEIGHT = 26;
+    private static final String FIRST_FRAME_METRIC = "first frame";
+    private static final String STORAGE_READ_METRIC = "storage read";
+    private static final String FIRST_TASKS_METRIC = "first tasks";
+    private static final String FULLY_LOADED_METRIC = "fully loaded";
 
 
     public static void main(String[] args) throws IOException {
@@ -67,8 +136,10 @@ public class Main extends Application {
     
     @Override
     public void start(Stage primaryStage) throws Exception, IOException{
+        metrics = new StartupMetrics();
         m = new Manager(username);
-        m.readStorage();
+        m.setLazyLoading(true); // subTasks are read when first shown
+        m.setParallelLoading(true);
         display = new VBox();
         operations = new HBox();
 
@@ -80,19 +151,184 @@ public class Main extends Application {
         operations.getChildren().add(hideOld());
         operations.getChildren().add(hideComplete());
         operations.getChildren().add(selectView());
+        operations.getChildren().add(undo());
+        operations.getChildren().add(redo());
+        operations.getChildren().add(searchBox());
 
-        taskList.getChildren().add(displayTaskSubTask());
+        changeTaskView(0); // Empty until storage is read
+        VBox.setVgrow(taskList, Priority.ALWAYS); // The view scrolls itself, give it the space
         display.getChildren().add(taskList);
+
+        progress = new ProgressBar(); // Indeterminate while storage is read
+        progress.setMaxWidth(Double.MAX_VALUE);
+        display.getChildren().add(progress);
         
-        display.getChildren().add(saveTask(m));
+        Button saver = saveTask(m);
+        display.getChildren().add(saver);
 
+        /*The loading thread holds the Manager, anything using it would wait */
+        operations.setDisable(true);
+        saver.setDisable(true);
 
-        screen = new ScrollPane(display);
-        scene = new Scene(screen);
+        scene = new Scene(display);
+        scene.addPostLayoutPulseListener(this::pulse);
         primaryStage.setScene(scene);
         primaryStage.setWidth(1024);
         primaryStage.setHeight(512);
         primaryStage.show();
+
+        Thread loader = new Thread(() -> load(saver), "flow-control-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /*Reads storage on the loading thread, then streams the view in on the JavaFX thread */
+    private void load(Button saver) {
+        try {
+            m.readStorage();
+            m.setJournaling(true);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            Platform.exit();
+            return;
+        }
+        metrics.mark(STORAGE_READ_METRIC);
+        Platform.runLater(() -> {
+            m.addListener(patcher);
+            operations.setDisable(false);
+            saver.setDisable(false);
+            stream();
+        });
+    }
+
+    /*
+     * Fills the view built before storage was read. Tasks due from today
+     * on come first, in date order, then the overdue ones nearest first,
+     * each batch in its own runLater so frames are painted in between.
+     */
+    private void stream() {
+        boolean showOverdue = showOverdue();
+        boolean showComplete = showComplete();
+        boolean tree = treeView != null;
+        List<Task> upcoming = shownTasks(tree, false, showComplete, showOverdue);
+        List<Task> overdue = shownTasks(tree, true, showComplete, showOverdue);
+        streaming = true;
+        streamBatch(viewGeneration, upcoming, overdue, 0, overdue.size());
+    }
+
+    /**
+     * Adds the next batch of Tasks to the view and queues the one after.
+     * Batches end where the date changes, so no two share a date.
+     * @param generation - viewGeneration the stream belongs to
+     * @param upcoming - Tasks due from today on
+     * @param overdue - Tasks due before today
+     * @param next - index of the next upcoming Task to add
+     * @param overdueEnd - end of the overdue Tasks still to add, added
+     * once every upcoming Task is in
+     */
+    private void streamBatch(int generation, List<Task> upcoming, List<Task> overdue, int next, int overdueEnd) {
+        if (generation != viewGeneration) {
+            return; // The view was built again in full
+        }
+        if (next < upcoming.size()) {
+            int end = Math.min(upcoming.size(), next + STREAM_BATCH);
+            while (end < upcoming.size() && upcoming.get(end).getDate().equals(upcoming.get(end - 1).getDate())) {
+                end++;
+            }
+            addRows(upcoming.subList(next, end));
+            next = end;
+        }
+        else {
+            int start = Math.max(0, overdueEnd - STREAM_BATCH);
+            while (start > 0 && overdue.get(start - 1).getDate().equals(overdue.get(start).getDate())) {
+                start--;
+            }
+            addRows(overdue.subList(start, overdueEnd));
+            overdueEnd = start;
+            if (!upcoming.isEmpty()) { // Keep today at the top as earlier Tasks go in above it
+                int above = overdue.size() - overdueEnd;
+                if (listView != null) {
+                    listView.scrollTo(above);
+                }
+                else {
+                    treeView.scrollTo(above);
+                }
+            }
+        }
+        int total = upcoming.size() + overdue.size();
+        int done = next + overdue.size() - overdueEnd;
+        if (pendingMetrics.isEmpty() && done > 0) {
+            pendingMetrics.add(FIRST_TASKS_METRIC); // Kept only the first time
+        }
+        if (done < total) {
+            progress.setProgress((double) done / total);
+            int nextUpcoming = next;
+            int nextOverdueEnd = overdueEnd;
+            Platform.runLater(() -> streamBatch(generation, upcoming, overdue, nextUpcoming, nextOverdueEnd));
+        }
+        else {
+            finishStreaming();
+        }
+    }
+
+    /*Adds Tasks in date order to the view, skipping any it shows already */
+    private void addRows(List<Task> batch) {
+        if (treeView != null) {
+            List<TreeItem<Task>> items = new ArrayList<>(batch.size());
+            for (Task t : batch) {
+                if (inTree(t) && !treeItems.containsKey(t)) {
+                    items.add(new TaskTreeItem(t));
+                }
+            }
+            patcher.insertAll(treeView.getRoot().getChildren(), items, TreeItem::getValue);
+        }
+        else {
+            List<Task> tasks = new ArrayList<Task>(batch.size());
+            for (Task t : batch) {
+                if (isShown(t)) { // Rechecked, it may have changed since the batch was taken
+                    tasks.add(t);
+                }
+            }
+            patcher.insertAll(listView.getItems(), tasks, Function.identity());
+        }
+    }
+
+    private void finishStreaming() {
+        streaming = false;
+        display.getChildren().remove(progress);
+        pendingMetrics.add(FULLY_LOADED_METRIC);
+    }
+
+    /*Times startup phases once they have been laid out, the frame is drawn right after */
+    private void pulse() {
+        if (metrics == null) {
+            return;
+        }
+        metrics.mark(FIRST_FRAME_METRIC);
+        for (String phase : pendingMetrics) {
+            metrics.mark(phase);
+        }
+        if (pendingMetrics.contains(FULLY_LOADED_METRIC)) {
+            metrics.log();
+            metrics = null;
+        }
+    }
+
+    /*Drops a stream in progress, the view just built holds every Task */
+    private void viewChanged() {
+        viewGeneration++;
+        if (streaming) {
+            finishStreaming();
+            if (treeControl != null) { // Only part of the tree is in, build it in full when next shown
+                treeItems.clear();
+                treeControl.setRoot(null);
+            }
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        saveService.close(); // Let queued saves finish
     }
 
     public ChoiceBox<String> selectView() {
@@ -108,14 +344,55 @@ public class Main extends Application {
     }
 
     public void changeTaskView(int view) {
-        taskList.getChildren().clear();
+        viewChanged();
+        this.view = view;
+        searching = false;
         if (view == 0) {
-            taskList.getChildren().add(displayTaskSubTask());
+            showTree();
         }
         else {
-            taskList.getChildren().add(displayAllTasks());
+            showList(visibleTasks());
+        }
+    }
+
+    /*Shows the view's Tasks again after a filter changed, keeping the view */
+    public void refilter() {
+        if (searching) {
+            return; // Search results show every Task
+        }
+        viewChanged();
+        if (treeView != null) {
+            showTree();
+        }
+        else {
+            showList(visibleTasks());
         }
-        
+    }
+
+    /*
+     * Builds the view again after changes made on other threads. The tree
+     * is dropped even if hidden, so it is built from the Manager when shown.
+     */
+    private void rebuildView() {
+        viewStale.set(false); // Changes from here on queue another rebuild
+        if (treeControl != null) {
+            treeItems.clear();
+            treeControl.setRoot(null);
+        }
+        if (searching) {
+            listView.refresh(); // Search results are not looked up again
+        }
+        else {
+            refilter();
+        }
+    }
+
+    boolean showOverdue() {
+        return !((ToggleButton)operations.getChildren().get(1)).isSelected();
+    }
+
+    boolean showComplete() {
+        return !((ToggleButton)operations.getChildren().get(2)).isSelected();
     }
 
     public ToggleButton hideOld() {
@@ -127,8 +404,7 @@ public class Main extends Application {
             else {
                 hideOld.setText(HIDE_OVERDUE_BUTTON_TEXT);
             }
-            taskList.getChildren().clear();
-            taskList.getChildren().add(displayAllTasks());
+            refilter();
         });
         return hideOld;
     }
@@ -142,21 +418,56 @@ public class Main extends Application {
             else {
                 hideComplete.setText(HIDE_COMPLETE_BUTTON_TEXT);
             }
-            taskList.getChildren().clear();
-            taskList.getChildren().add(displayAllTasks());
+            refilter();
         });
         return hideComplete;
     }
 
 
-    public Button subTaskButton(Task t) {
-        Button subTask = new Button(ADD_SUBTASK_BUTTON_TEXT);
-        subTask.setOnAction(event -> {
-            addSubTaskStage(t).show();
+    public TextField searchBox() {
+        TextField search = new TextField();
+        search.setPromptText(SEARCH_PROMPT);
+        search.textProperty().addListener((observable, oldText, newText) -> {
+            if (newText.isBlank()) {
+                changeTaskView(view);
+            }
+            else {
+                viewChanged();
+                searching = true;
+                showList(searchResults(newText));
+            }
+        });
+        return search;
+    }
+
+    public List<Task> searchResults(String query) {
+        /*Matches are looked up in the index as each key is typed */
+        List<Task> found = new ArrayList<Task>();
+        for (Task t : m.search(query, SEARCH_RESULT_LIMIT)) {
+            if (isShown(t, true, true)) {
+                found.add(t);
+            }
+        }
+        return found;
+    }
+
+    public Button undo() {
+        Button undo = new Button(UNDO_BUTTON_TEXT);
+        undo.setOnAction(event -> {
+            m.undo(); // The Manager reports what changed back
+        });
+        return undo;
+    }
+
+    public Button redo() {
+        Button redo = new Button(REDO_BUTTON_TEXT);
+        redo.setOnAction(event -> {
+            m.redo();
         });
-        return subTask;
+        return redo;
     }
 
+
     public Stage addSubTaskStage(Task t) {
         Stage subStage = new Stage();
         subStage.setTitle(ADD_SUBTASK_STAGE_TITLE);
@@ -204,11 +515,6 @@ public class Main extends Application {
             }
             m.addSubTask(subTask, t);
             subStage.close();
-            taskList.getChildren().clear();
-            taskList.getChildren().add(displayAllTasks());
-            for (Task T : m.allTasks) {
-                System.out.println(T.getTitle());
-            }
         });
 
         Scene scene = new Scene(promptList);
@@ -220,12 +526,18 @@ public class Main extends Application {
 
     public Button saveTask(Manager m) {
         Button saver = new Button(SAVE_BUTTON_TEXT);
-        saver.setOnAction(event -> {
-            try {
-                m.writeToStorage();
-            } catch (IOException e) {
-                e.printStackTrace();
+        saveService = new SaveService(m, Platform::runLater, error -> {
+            if (error == null) {
+                saver.setText(SAVED_BUTTON_TEXT);
             }
+            else {
+                error.printStackTrace();
+                saver.setText(SAVE_FAILED_BUTTON_TEXT);
+            }
+        });
+        saver.setOnAction(event -> {
+            saver.setText(SAVING_BUTTON_TEXT);
+            saveService.requestSave();
         });
         return saver;
     }
@@ -288,15 +600,8 @@ public class Main extends Application {
                 }
             }
         };
-/** 
-        recurringChoice.getSelectionModel().selectedIndexProperty().addListener(new ChangeListener<Number>()  {
-            public void changed(ObservableValue<? extends Number> observableValue, Number oldValue, Number newValue) {
-                currChoice = (Integer) newValue;
-            }
-        });
-*/
         recurringChoice.setOnAction(event -> {
-            recurWrapper.currChoice = recurringChoice.getSelectionModel().getSelectedIndex(); //AAAAAAA
+            recurWrapper.currChoice = recurringChoice.getSelectionModel().getSelectedIndex();
             if (recurWrapper.currChoice == 1) {
                 dateSetter.getChildren().clear();
                 for (String prompt : PERIOD_SELECTION_PROMPTS) {
@@ -393,14 +698,16 @@ public class Main extends Application {
                 m.addTask(t);
             }
             else if (recurWrapper.currChoice == 1) {
-                int perCode = (int) (perWrapper.currChoice * Math.pow(10,8) + toDate.getValue().getYear() * Math.pow(10, 4)
-                    + toDate.getValue().getMonthValue() * 100 + toDate.getValue().getDayOfMonth());
+                int perCode = perWrapper.currChoice == 0 ? 0
+                    : new Recurrence(perWrapper.currChoice, toDate.getValue()).toCode();
                 if (perWrapper.currChoice == 0) {
-                    System.out.println("FAIL");
+                    return; // No period chosen yet, leave the prompt open
                 }
                 else if (perWrapper.currChoice == 2) {
+                    /*One Task per chosen day, all sharing the title, description and rule */
+                    TaskTemplate template = new TaskTemplate(titleString, descriptionString, perCode);
                     for (int i = 0; i < weekWrapper.currChoice; i++) {
-                        Task t = new Task(titleString, descriptionString, datePickers.get(i).getValue(), perCode);
+                        Task t = new Task(template, datePickers.get(i).getValue());
                         m.addTask(t);
                     }
                 }
@@ -410,8 +717,6 @@ public class Main extends Application {
                 }
             }
             taskStage.close();
-            taskList.getChildren().clear();
-            taskList.getChildren().add(displayAllTasks());
         });
         Scene scene = new Scene(promptList);
         taskStage.setScene(scene);
@@ -420,125 +725,516 @@ public class Main extends Application {
         return taskStage;
     }
 
-    public VBox displayTaskSubTask() {
-        boolean showOverdue = !((ToggleButton)operations.getChildren().get(1)).isSelected();
-        boolean showComplete = !((ToggleButton)operations.getChildren().get(2)).isSelected();
-        VBox tasksSub = new VBox();
-        TreeItem<BorderPane> origin = new TreeItem<>();
-        TreeView<BorderPane> taskSubTask = new TreeView<>(origin);
-        taskSubTask.setShowRoot(false);
-        for (Task t : m.tasks) {
-            BorderPane temp = taskBox(t, showComplete, showOverdue, true);
-            if (temp == null) {
-                continue;
-            }
-            tasksSub.getChildren().add(temp);
-        }
-        return tasksSub;
-    }
-
-    ToggleButton showSubTasks(Task t, BorderPane bPane, boolean showComplete, boolean showOverdue) {
-        ToggleButton showSubs = new ToggleButton(SHOW_SUBTASKS_BUTTON_TEXT);
-        showSubs.setOnAction(event -> {
-            if (showSubs.isSelected()) {
-                VBox subsBox = new VBox();
-                for (Task s : t.getSubTasks()) {
-                    BorderPane taskBox = taskBox(s, showComplete, showOverdue, true);
-                    if (taskBox == null) {
-                        continue;
+    /*
+     * Shows the TreeView, made the first time. Its items are only built
+     * again if a filter changed since, or a stream into it was cut short,
+     * otherwise the rows are just redrawn.
+     */
+    private void showTree() {
+        if (treeControl == null) {
+            treeControl = new TreeView<>();
+            treeControl.setShowRoot(false);
+            treeControl.setCellFactory(view -> new TaskTreeCell());
+            VBox.setVgrow(treeControl, Priority.ALWAYS);
+        }
+        if (treeControl.getRoot() == null || treeShowsOverdue != showOverdue()
+            || treeShowsComplete != showComplete()) {
+            treeItems.clear();
+            treeControl.setRoot(treeRoot());
+        }
+        else if (treeView == null) {
+            treeControl.refresh(); // Rows drawn while hidden may be out of date, they go back to the pool
+        }
+        listView = null;
+        treeView = treeControl;
+        taskList.getChildren().setAll(treeControl);
+    }
+
+    /*Hidden root of the tree, holding the shown Tasks that are not subTasks */
+    private TreeItem<Task> treeRoot() {
+        boolean showOverdue = showOverdue();
+        boolean showComplete = showComplete();
+        treeShowsOverdue = showOverdue;
+        treeShowsComplete = showComplete;
+        List<Task> roots = shownTasks(true, true, showComplete, showOverdue);
+        roots.addAll(shownTasks(true, false, showComplete, showOverdue));
+        List<TreeItem<Task>> items = new ArrayList<>(roots.size());
+        for (Task t : roots) {
+            items.add(new TaskTreeItem(t));
+        }
+        TreeItem<Task> origin = new TreeItem<>();
+        origin.getChildren().setAll(items);
+        return origin;
+    }
+
+    private List<Task> visibleTasks() {
+        boolean showOverdue = showOverdue();
+        boolean showComplete = showComplete();
+        List<Task> shown = shownTasks(false, true, showComplete, showOverdue);
+        shown.addAll(shownTasks(false, false, showComplete, showOverdue));
+        return shown;
+    }
+
+    /**
+     * Tasks the filters show on one side of today. They are copied out
+     * of the Manager's lists of all or incomplete Tasks by date range,
+     * so no Task is tested and the cost is the number shown, however
+     * many the filters leave out.
+     * @param roots - True for only the Tasks that are not subTasks
+     * @param overdue - True for the Tasks before today, false for the rest
+     * @param showComplete - whether complete Tasks are shown
+     * @param showOverdue - whether overdue Tasks are shown
+     * @return the shown Tasks, in date order
+     */
+    private List<Task> shownTasks(boolean roots, boolean overdue, boolean showComplete, boolean showOverdue) {
+        if (overdue) {
+            if (!showOverdue) {
+                return new ArrayList<Task>();
+            }
+            LocalDate yesterday = m.date.minusDays(1); // Complete Tasks are hidden once overdue
+            return roots ? m.incompleteRoots(null, yesterday) : m.incomplete(null, yesterday);
+        }
+        if (showComplete) {
+            return roots ? m.roots(m.date, null, null) : m.query(m.date, null, null);
+        }
+        return roots ? m.incompleteRoots(m.date, null) : m.incomplete(m.date, null);
+    }
+
+    /*Shows the ListView, made the first time, over Tasks already filtered */
+    private void showList(List<Task> shown) {
+        if (listControl == null) {
+            listControl = new ListView<>();
+            listControl.setCellFactory(view -> new TaskListCell());
+            VBox.setVgrow(listControl, Priority.ALWAYS);
+        }
+        else if (listView == null) {
+            listControl.refresh();
+        }
+        listControl.setItems(FXCollections.observableList(shown));
+        treeView = null;
+        listView = listControl;
+        taskList.getChildren().setAll(listControl);
+    }
+
+    /*Whether the current filters let a Task be shown */
+    boolean isShown(Task t) {
+        return searching || isShown(t, showComplete(), showOverdue());
+    }
+
+    /*Whether the filters the tree was built with let a Task be in it */
+    boolean inTree(Task t) {
+        return isShown(t, treeShowsComplete, treeShowsOverdue);
+    }
+
+    /*Complete Tasks are hidden when asked, or once their date has passed */
+    boolean isShown(Task t, boolean showComplete, boolean showOverdue) {
+        if (t.isComplete() && (!showComplete || t.getDate().isBefore(m.date))) {
+            return false;
+        }
+        return showOverdue || !t.getDate().isBefore(m.date);
+    }
+
+    /*
+     * Controls of one row: title, date, add subtask, complete and
+     * description. Pointed at whichever Task its cell shows, so scrolling
+     * only changes text and state. The buttons are made the first time
+     * the row is hovered or focused, or shows a description, so rows that
+     * are only scrolled past are two labels.
+     */
+    class TaskRow {
+        Task task;
+        BorderPane pane;
+        HBox curr;
+        Label title;
+        Label date;
+        ToggleButton complete;
+        ToggleButton showDescription;
+        Label description;
+
+        TaskRow() {
+            pane = new BorderPane();
+            pane.setPadding(new Insets(1));
+            curr = new HBox(5);
+            curr.setMinHeight(ROW_MIN_HEIGHT); // Keeps the height the buttons will need
+            curr.setAlignment(Pos.CENTER_LEFT);
+            pane.setTop(curr);
+            title = new Label();
+            title.setMinWidth(200);
+            date = new Label();
+            curr.getChildren().addAll(title, date);
+            pane.setOnMouseEntered(event -> buildControls());
+        }
+
+        /*Makes the buttons, once per row */
+        void buildControls() {
+            if (complete != null) {
+                return;
+            }
+            Button subTask = new Button(ADD_SUBTASK_BUTTON_TEXT);
+            subTask.setOnAction(event -> addSubTaskStage(task).show());
+            complete = new ToggleButton();
+            complete.setMinWidth(130);
+            complete.setOnAction(event -> {
+                if (complete.isSelected()) {
+                    if (!m.markComplete(task)) { // Refused while a subTask is incomplete
+                        show(task);
                     }
-                    subsBox.getChildren().add(taskBox);
                 }
-                bPane.setBottom(subsBox);
-                showSubs.setText(HIDE_SUBTASKS_BUTTON_TEXT);
+                else {
+                    m.markIncomplete(task);
+                }
+            });
+            showDescription = new ToggleButton();
+            description = new Label();
+            showDescription.setOnAction(event -> {
+                if (showDescription.isSelected()) {
+                    shownDescriptions.add(task);
+                }
+                else {
+                    shownDescriptions.remove(task);
+                }
+                show(task);
+            });
+            curr.getChildren().addAll(subTask, complete, showDescription);
+            if (task != null) {
+                show(task);
             }
-            else {
-                bPane.setBottom(null);
-                showSubs.setText(SHOW_SUBTASKS_BUTTON_TEXT);
+        }
+
+        /*Points the row at the Task its cell now shows, null for none */
+        void bind(Task t) {
+            if (task != null && shownRows.get(task) == this) {
+                shownRows.remove(task);
             }
-        });
-        return showSubs;
+            task = t;
+            if (t != null) {
+                shownRows.put(t, this);
+                show(t);
+            }
+        }
+
+        void show(Task t) {
+            task = t;
+            title.setText(t.getTitle());
+            date.setText("" + t.getDate());
+            curr.setStyle(t.isComplete() ? COMPLETE_TASK_COLOR : INCOMPLETE_TASK_COLOR);
+            boolean described = shownDescriptions.contains(t);
+            if (described) {
+                buildControls();
+            }
+            if (complete == null) {
+                return;
+            }
+            complete.setSelected(t.isComplete());
+            complete.setText(t.isComplete() ? MARK_INCOMPLETE_BUTTON_TEXT : MARK_COMPLETE_BUTTON_TEXT);
+            showDescription.setSelected(described);
+            showDescription.setText(described ? HIDE_DESCRIPTION_BUTTON_TEXT : SHOW_DESCRIPTION_BUTTON_TEXT);
+            description.setText(t.getDescription());
+            pane.setCenter(described ? description : null);
+        }
     }
 
-    public BorderPane taskBox(Task t, boolean showComplete, boolean showOverdue, boolean subTaskView) {
-        if (t.isComplete() && (!showComplete || t.getDate().isBefore(m.date))) {
-                return null;
-            } 
-        if (!showOverdue && t.getDate().isBefore(m.date) ) {
+    /**
+     * Shows a Task in a cell, taking a row from the pool when the cell
+     * has none, and handing its row back when the cell empties.
+     * @param cell - cell being updated
+     * @param row - row the cell holds, null for none
+     * @param t - Task to show, null if the cell is empty
+     * @return row the cell now holds
+     */
+    TaskRow fillCell(IndexedCell<Task> cell, TaskRow row, Task t) {
+        if (t == null) {
+            cell.setGraphic(null);
+            if (row != null) {
+                row.bind(null);
+                if (rowPool.size() < ROW_POOL_LIMIT) {
+                    rowPool.push(row);
+                }
+            }
             return null;
         }
-        BorderPane bPane = new BorderPane();
-        bPane.setPadding(new Insets(1));
-        HBox curr = new HBox(5);
-        bPane.setTop(curr);
-        Label title = new Label(t.getTitle());
-        title.setMinWidth(200);
-        curr.getChildren().add(title);
-        ToggleButton complete = new ToggleButton(MARK_COMPLETE_BUTTON_TEXT);
-        complete.setMinWidth(130);
-        if(t.isComplete()) {
-            complete.setSelected(true);
-            complete.setText(MARK_INCOMPLETE_BUTTON_TEXT);
-            curr.setStyle(COMPLETE_TASK_COLOR);
-        }
-        complete.setOnAction(event -> {
-            if (complete.isSelected()) {
-                if (t.markComplete()) {
-                    complete.setText(MARK_INCOMPLETE_BUTTON_TEXT);
-                    curr.setStyle(COMPLETE_TASK_COLOR);
+        if (row == null) {
+            row = rowPool.poll();
+            if (row == null) {
+                row = new TaskRow();
+            }
+        }
+        row.bind(t);
+        cell.setGraphic(row.pane);
+        return row;
+    }
+
+    class TaskListCell extends ListCell<Task> {
+        TaskRow row;
+
+        TaskListCell() {
+            focusedProperty().addListener((observable, was, focused) -> {
+                if (focused && row != null) {
+                    row.buildControls();
+                }
+            });
+        }
+
+        @Override
+        protected void updateItem(Task t, boolean empty) {
+            super.updateItem(t, empty);
+            row = fillCell(this, row, empty ? null : t);
+        }
+    }
+
+    class TaskTreeCell extends TreeCell<Task> {
+        TaskRow row;
+
+        TaskTreeCell() {
+            focusedProperty().addListener((observable, was, focused) -> {
+                if (focused && row != null) {
+                    row.buildControls();
+                }
+            });
+        }
+
+        @Override
+        protected void updateItem(Task t, boolean empty) {
+            super.updateItem(t, empty);
+            row = fillCell(this, row, empty ? null : t);
+        }
+    }
+
+    /*
+     * Tree node for a Task whose subTasks are only looked at, and read if
+     * a lazy load skipped them, the first time it is expanded.
+     */
+    class TaskTreeItem extends TreeItem<Task> {
+        boolean built;
+
+        TaskTreeItem(Task t) {
+            super(t);
+            treeItems.put(t, this);
+            setExpanded(expandedTasks.contains(t));
+            expandedProperty().addListener((observable, was, expanded) -> {
+                if (expanded) {
+                    expandedTasks.add(t);
                 }
                 else {
-                    complete.setSelected(false);
+                    expandedTasks.remove(t);
                 }
+            });
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return !getValue().hasSubTasks();
+        }
+
+        @Override
+        public ObservableList<TreeItem<Task>> getChildren() {
+            if (!built) {
+                built = true;
+                List<TreeItem<Task>> items = new ArrayList<>();
+                for (Task s : getValue().getSubTasks()) {
+                    if (inTree(s)) {
+                        items.add(new TaskTreeItem(s));
+                    }
+                }
+                super.getChildren().setAll(items);
             }
-            else {
-                complete.setText(MARK_COMPLETE_BUTTON_TEXT);
-                curr.setStyle(INCOMPLETE_TASK_COLOR);
-                t.markIncomplete();
-            }
-        });
-        Label date = new Label("" + t.getDate());
-        curr.getChildren().add(date);
-        curr.getChildren().add(subTaskButton(t));
-        curr.getChildren().add(complete);
-        curr.getChildren().add(showDescription(t, bPane));
-        if (subTaskView) {
-            curr.getChildren().add(showSubTasks(t, bPane, showComplete, showOverdue));
+            return super.getChildren();
         }
-        return bPane;
     }
 
-    public ToggleButton showDescription(Task t, BorderPane pane) {
-        ToggleButton showDescription = new ToggleButton(SHOW_DESCRIPTION_BUTTON_TEXT);
-        showDescription.setOnAction(event -> {
-            if (showDescription.isSelected()) {
-                Label desc = new Label(t.getDescription());
-                pane.setCenter(desc);
-                showDescription.setText(HIDE_DESCRIPTION_BUTTON_TEXT);
+    /*
+     * Patches the views as the Manager reports changes: the list on
+     * screen, and the tree whether it is shown or not, so it can be
+     * shown again as it was. Lists are in date order, so a row is found
+     * by binary search on its date and each change costs O(log n) plus
+     * the rows it touches, however many Tasks there are. Search results
+     * are only redrawn or removed, never added to or reordered.
+     */
+    class ViewPatcher implements Manager.Listener {
+        @Override
+        public void taskAdded(Task t) {
+            if (!onFxThread()) {
+                return;
+            }
+            if (listView != null && !searching && isShown(t)) {
+                insert(listView.getItems(), t, () -> t, Function.identity());
+            }
+            treeAdd(t, null);
+        }
+
+        @Override
+        public void taskRemoved(Task t) {
+            if (!onFxThread()) {
+                return;
+            }
+            if (listView != null) {
+                remove(listView.getItems(), t, t.getDate(), Function.identity());
+            }
+            treeRemove(t, t.getDate());
+            treeItems.remove(t);
+        }
+
+        @Override
+        public void taskChanged(Task t) {
+            if (!onFxThread()) {
+                return;
+            }
+            if (listView != null) {
+                List<Task> items = listView.getItems();
+                if (!isShown(t)) {
+                    remove(items, t, t.getDate(), Function.identity());
+                }
+                else if (!searching) {
+                    insert(items, t, () -> t, Function.identity());
+                }
+            }
+            if (!inTree(t)) {
+                treeRemove(t, t.getDate());
+                treeItems.remove(t);
+            }
+            else if (!treeItems.containsKey(t)) {
+                treeAdd(t, null);
+            }
+            redraw(t);
+        }
+
+        @Override
+        public void taskMoved(Task t, LocalDate oldDate, Task oldParent) {
+            if (!onFxThread()) {
+                return;
+            }
+            if (listView != null && !searching) {
+                List<Task> items = listView.getItems();
+                remove(items, t, oldDate, Function.identity());
+                if (isShown(t)) {
+                    insert(items, t, () -> t, Function.identity());
+                }
+            }
+            treeAdd(t, treeRemove(t, oldDate));
+            redraw(t);
+        }
+
+        /*Puts t under its parent in the tree, reusing item if it is not null */
+        private void treeAdd(Task t, TaskTreeItem item) {
+            if (treeControl == null || treeControl.getRoot() == null || !inTree(t)) {
+                return;
+            }
+            List<TreeItem<Task>> siblings = treeSiblings(t.parent);
+            if (siblings != null) {
+                insert(siblings, t, () -> item != null ? item : new TaskTreeItem(t), TreeItem::getValue);
+            }
+            else if (treeView != null && t.parent.getSubTasks().size() == 1) {
+                treeView.refresh(); // Its parent's row needs an arrow to expand it
+            }
+        }
+
+        /*Takes t's tree item out from under its parent, looked for under date */
+        private TaskTreeItem treeRemove(Task t, LocalDate date) {
+            TaskTreeItem item = treeItems.get(t);
+            if (item != null && item.getParent() != null) {
+                remove(item.getParent().getChildren(), t, date, TreeItem::getValue);
+            }
+            return item;
+        }
+
+        private void redraw(Task t) {
+            TaskRow row = shownRows.get(t);
+            if (row != null) {
+                row.show(t);
+            }
+        }
+
+        /*
+         * Changes made off the JavaFX thread are not patched in one by one,
+         * as the Tasks may have changed further by the time it gets to them.
+         * The first marks the view stale and queues one rebuild for them all.
+         */
+        private boolean onFxThread() {
+            if (Platform.isFxApplicationThread()) {
+                return true;
+            }
+            if (viewStale.compareAndSet(false, true)) {
+                Platform.runLater(Main.this::rebuildView);
+            }
+            return false;
+        }
+
+        /*Children of a Task's tree item, null if they are not built or the Task is not in the tree */
+        private List<TreeItem<Task>> treeSiblings(Task parent) {
+            if (parent == null) {
+                return treeControl.getRoot().getChildren();
+            }
+            TaskTreeItem item = treeItems.get(parent);
+            return item == null || !item.built ? null : item.getChildren();
+        }
+
+        /*
+         * Adds rows in date order. When they all fall after or before the
+         * rows there, which is how streaming adds them, they go in one go.
+         */
+        private <E> void insertAll(List<E> rows, List<E> added, Function<E, Task> task) {
+            if (added.isEmpty()) {
+                return;
+            }
+            LocalDate first = task.apply(added.get(0)).getDate();
+            LocalDate last = task.apply(added.get(added.size() - 1)).getDate();
+            if (rows.isEmpty() || task.apply(rows.get(rows.size() - 1)).getDate().isBefore(first)) {
+                rows.addAll(added);
+            }
+            else if (last.isBefore(task.apply(rows.get(0)).getDate())) {
+                rows.addAll(0, added);
             }
             else {
-                pane.setCenter(null);
-                showDescription.setText(SHOW_DESCRIPTION_BUTTON_TEXT);
+                for (E row : added) {
+                    insert(rows, task.apply(row), () -> row, task);
+                }
             }
-        });
-        return showDescription;
-    }
+        }
 
-    public VBox displayAllTasks() {
-        boolean showOverdue = !((ToggleButton)operations.getChildren().get(1)).isSelected();
-        boolean showComplete = !((ToggleButton)operations.getChildren().get(2)).isSelected();
-        VBox vbox = new VBox();
-        for (Task t : m.allTasks) {
-            BorderPane bPane = taskBox(t, showComplete, showOverdue, false);
-            if (bPane == null) {
-                continue;
+        /*Inserts a row for t by date unless it has one */
+        private <E> void insert(List<E> rows, Task t, Supplier<E> row, Function<E, Task> task) {
+            int i = find(rows, t, t.getDate(), task);
+            if (i < 0) {
+                rows.add(-i - 1, row.get());
             }
-            vbox.getChildren().add(bPane);
         }
-        
-        return vbox;
-    }
 
+        /*Removes t's row, looked for under the date it was listed by */
+        private <E> boolean remove(List<E> rows, Task t, LocalDate date, Function<E, Task> task) {
+            int i = find(rows, t, date, task);
+            if (i >= 0) {
+                rows.remove(i);
+            }
+            return i >= 0;
+        }
 
-   
+        /*
+         * Index of t's row in rows, which are in date order, or -(where it
+         * would go) - 1. t is taken to be at date, as it may have moved.
+         */
+        private <E> int find(List<E> rows, Task t, LocalDate date, Function<E, Task> task) {
+            int low = 0;
+            int high = rows.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                Task curr = task.apply(rows.get(mid));
+                if ((curr == t ? date : curr.getDate()).isBefore(date)) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < rows.size(); i++) {
+                Task curr = task.apply(rows.get(i));
+                if (curr == t) {
+                    return i;
+                }
+                if (curr.getDate().isAfter(date)) {
+                    break;
+                }
+            }
+            return -low - 1;
+        }
+    }
 }
@@ -5,372 +5,2179 @@ import java.util.*;
 import java.time.LocalDate;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 /*
  * This class runs the behind the scenes aspects of the Flow Control
  * Application. Functionalities include reading from storage, writing
  * to storage and storing up-to-date lists of Tasks.
+ *
+ * A Manager can be shared between threads. Changes made through its
+ * methods hold a write lock, so they happen one at a time. Lookups of a
+ * field or two read optimistically: they run without blocking and are
+ * run again under the read lock only if a change happened meanwhile.
+ * Queries walk and copy the indexes under the read lock, which readers
+ * share, so they only wait for a change in progress. They return copies
+ * that stay valid while the Manager changes. The lock is reentrant for
+ * the thread writing, so a change can call other methods, as undo and
+ * cascades do.
+ * Tasks themselves are not guarded: change them through the Manager,
+ * whose methods are the only public way to change a Task.
  * Instance Variables:
  * LocalDate date: LocalDate to store the present date
- * List<Task> tasks: ArrayList of Task to store all of the Tasks that
+ * TaskIndex tasks: TaskIndex of Task to store all of the Tasks that
  * are not subTasks. Sorted in chronological order.
- * List<Task> allTasks: ArrayList of all Tasks, including subTasks. 
+ * TaskIndex allTasks: TaskIndex of all Tasks, including subTasks. 
  * Sorted in chronological order
+ * TaskIndex incompleteTasks, allIncompleteTasks: the incomplete Tasks of
+ * tasks and allTasks, in the same order, kept in step as Tasks are added,
+ * removed, moved, completed and reopened, so views that hide complete
+ * Tasks are copied straight out of them
  * String username: String to store username which is the File to write to and
  * from
+ * Journal journal: log of changes since the last full write to storage
+ * boolean journaling: whether saveChanges appends to the journal instead of
+ * rewriting the whole file
+ * SearchIndex searchIndex: full-text index of titles and descriptions, built
+ * by the first search and kept up to date after that, null until then
+ * History history: undo and redo steps of the changes made through this Manager
+ * boolean cascadeCompletion: whether completing a Task's last incomplete
+ * subTask completes the Task, and reopening a subTask reopens its ancestors
+ * List<Task> byId: Tasks indexed by id, null where there is no Task. Ids are
+ * stored with the Tasks, so they survive saves and restarts
+ * int taskCount: number of ids pointing at a Task, which counts every Task
+ * held, including subTasks a lazy load has not read yet
+ * int nextId: id the next new Task gets, never reused within a file
+ * boolean storedIds: whether the file being read stores ids, false for
+ * files from before ids were stored, whose Tasks are numbered in file order
+ * boolean binaryStorage: whether writeToStorage uses the BinaryStorage format
+ * boolean lazyLoading: whether readStorage leaves subTasks unread until needed
+ * boolean parallelLoading: whether readStorage splits large files across cores
+ * boolean columnarStorage: whether readStorage reads binary files into columns
+ * TaskStore columns: the Tasks as read into columns, null once they are
+ * built as Task objects, or if they never were in columns
+ * byte[] lazyData: storage file contents, kept while any subTasks are unread
+ * TaskTemplate.Pool templates: shares the templates and Strings of Tasks read
+ * from storage, dropped once nothing is left unread
+ * TaskTemplate[] storedTemplates: template table of the binary file being
+ * read, null for files without one
+ * int unreadSubtrees: number of Tasks whose subTasks are still unread
+ * List<Task> loadPath: most recently read Task at each depth while loading,
+ * null where it was dropped
+ * int loadId: id of the next Task read from a file without ids
+ * boolean deferRollOver: set while a snapshot with a journal is read, so
+ * Tasks are rolled over once, after the journal's changes are replayed
+ * boolean deferIds: set on the Managers of a parallel load, which note id
+ * assignments in loadedIds and loadedTasks for mergeParts to make
+ * int[] loadedIds, List<Task> loadedTasks, int loadedCount: those notes
+ * Set<Task> dirtyRoots: Tasks that are not subTasks and hold a change since
+ * the last save, in the order they changed
+ * boolean tasksRemoved: whether a Task was removed since the last save
+ * List<Listener> listeners: told about each change to the Tasks
+ * StampedLock lock: guards every other field, and the Tasks
+ * Thread writer: thread holding the write lock, null if none
  */
 public class Manager {
     LocalDate date;
-    List<Task> tasks;
-    List<Task> allTasks;
+    TaskIndex tasks;
+    TaskIndex allTasks;
+    TaskIndex incompleteTasks;
+    TaskIndex allIncompleteTasks;
     String username;
+    Journal journal;
+    boolean journaling;
+    SearchIndex searchIndex;
+    History history;
+    boolean cascadeCompletion;
+    List<Task> byId;
+    int taskCount;
+    int nextId;
+    boolean storedIds;
+    boolean binaryStorage;
+    boolean lazyLoading;
+    boolean parallelLoading;
+    boolean columnarStorage;
+    TaskStore columns;
+    byte[] lazyData;
+    TaskTemplate.Pool templates;
+    TaskTemplate[] storedTemplates;
+    int unreadSubtrees;
+    List<Task> loadPath;
+    int loadId;
+    boolean deferRollOver;
+    boolean deferIds;
+    int[] loadedIds;
+    List<Task> loadedTasks;
+    int loadedCount;
+    Set<Task> dirtyRoots;
+    boolean tasksRemoved;
+    List<Listener> listeners;
+    final StampedLock lock;
+    volatile Thread writer;
 
     /*Constants */
     private final static String FILE_EXTENSION = ".txt";
-    private final static String FILE_START = "Tasks:";
-    private final static String FILE_END = "end";
+    private final static String TEMP_EXTENSION = ".tmp";
+    final static String FILE_START = "Tasks:";
+    final static String FILE_END = "end";
     private final static String TRUE_STRING = "true";
+    private final static byte[] TRUE_BYTES = TRUE_STRING.getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] END_BYTES = FILE_END.getBytes(StandardCharsets.US_ASCII);
 
     private final static char FILE_DELIM = '\t';
     private final static char SUBTASK_INDICATOR = '+';
 
-    private final static int DAY_FLAG = 1;
-    private final static int WEEK_FLAG = 2;
-    private final static int MONTH_FLAG = 3;
-    
-    private final static int DATE_OFFSET = 8;
     private final static int DATE_SKIP = 9;
-    private final static int PERIOD_LENGTH = 9;
 
-    private final static int MMDD_DIGITS = 10000;
-    private final static int DD_DIGITS = 100;
-    private final static int DATE_DIGITS = 100000000;
+    /*Files smaller than this are not worth splitting for a parallel load */
+    private final static int PARALLEL_MIN_BYTES = 1 << 20;
+    private final static int CHUNKS_PER_THREAD = 4;
+
+    /*Journal is folded into a new snapshot once it outgrows this share of the Tasks */
+    private final static int COMPACT_MIN_RECORDS = 1000;
+    private final static int COMPACT_RATIO = 4;
+
+    /**
+     * Constructor to create a manager
+     * @param username - The username of user and
+     * txt file to draw from / write to. Just the part of file name
+     * before '.txt'
+     */
+    public Manager(String username) {
+        date = LocalDate.now();
+        tasks = new TaskIndex();
+        allTasks = new TaskIndex();
+        incompleteTasks = new TaskIndex();
+        allIncompleteTasks = new TaskIndex();
+        this.username = username;
+        journal = new Journal(username);
+        journaling = false;
+        searchIndex = null;
+        history = new History();
+        cascadeCompletion = false;
+        byId = new ArrayList<Task>();
+        taskCount = 0;
+        nextId = 0;
+        storedIds = false;
+        binaryStorage = false;
+        lazyLoading = false;
+        parallelLoading = false;
+        columnarStorage = false;
+        columns = null;
+        templates = new TaskTemplate.Pool();
+        storedTemplates = null;
+        loadPath = new ArrayList<Task>();
+        deferRollOver = false;
+        deferIds = false;
+        loadedIds = new int[0];
+        loadedTasks = new ArrayList<Task>();
+        loadedCount = 0;
+        dirtyRoots = new LinkedHashSet<Task>();
+        tasksRemoved = false;
+        listeners = new CopyOnWriteArrayList<Listener>();
+        lock = new StampedLock();
+        writer = null;
+    }
+
+    /*
+     * Told about each change made to the Tasks, so a view can patch the
+     * rows involved instead of reading every Task again. Changes that
+     * cascade or are undone are reported one Task at a time, like any
+     * other. Tasks read from storage are not reported, so views are built
+     * again after readStorage. Called on the thread making the change
+     * while it holds the write lock, so listeners may read the Manager
+     * but must not wait on other threads.
+     */
+    public interface Listener {
+        /**
+         * @param t - Task now in allTasks, under its parent if it has one
+         */
+        void taskAdded(Task t);
+
+        /**
+         * @param t - Task no longer in allTasks
+         */
+        void taskRemoved(Task t);
+
+        /**
+         * @param t - Task whose title, description, periodCode or
+         * completion changed
+         */
+        void taskChanged(Task t);
+
+        /**
+         * @param t - Task whose date or parent changed, its subTasks
+         * moving with it
+         * @param oldDate - date before the change
+         * @param oldParent - parent before the change, null if it had none
+         */
+        void taskMoved(Task t, LocalDate oldDate, Task oldParent);
+    }
+
+    /**
+     * @param listener - told about each later change to the Tasks
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener - listener to stop telling
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Takes the write lock, unless this thread already holds it.
+     * @return stamp to pass to unlockWrite, 0 if the lock was held already
+     */
+    long lockWrite() {
+        if (writer == Thread.currentThread()) {
+            return 0;
+        }
+        long stamp = lock.writeLock();
+        writer = Thread.currentThread();
+        return stamp;
+    }
+
+    /**
+     * @param stamp - stamp lockWrite returned
+     */
+    void unlockWrite(long stamp) {
+        if (stamp != 0) {
+            writer = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Takes the write lock for a change to the Tasks. While they are
+     * only held as columns, builds them first, since changes are made to
+     * Task objects.
+     * @return stamp to pass to unlockWrite
+     */
+    long lockChange() {
+        long stamp = lockWrite();
+        if (columns != null) {
+            try {
+                loadColumns();
+            } catch (RuntimeException | Error e) {
+                unlockWrite(stamp);
+                throw e;
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * Takes the read lock, unless this thread holds the write lock.
+     * @return stamp to pass to unlockRead, 0 if no lock was taken
+     */
+    long lockRead() {
+        return writer == Thread.currentThread() ? 0 : lock.readLock();
+    }
+
+    /**
+     * @param stamp - stamp lockRead returned
+     */
+    void unlockRead(long stamp) {
+        if (stamp != 0) {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Reads without taking a lock, then checks no change started or
+     * finished meanwhile. If one did, what was read may be torn, or the
+     * read may have thrown, so it is done again under the read lock. An
+     * exception thrown while nothing changed is the reader's own and is
+     * passed on. A torn read is only caught once reader returns, so
+     * reader may only read a field or two, such as a count or a flag:
+     * never loop over or allocate by something it read. Walks and copies
+     * use readLocked.
+     * @param reader - reads the fields, must not change anything
+     * @return what reader returned from a consistent state
+     */
+    <T> T read(Supplier<T> reader) {
+        if (writer != Thread.currentThread()) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    T result = reader.get();
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    if (lock.validate(stamp)) {
+                        throw e;
+                    }
+                    // Read a change half made, read again below
+                }
+            }
+        }
+        return readLocked(reader);
+    }
+
+    /**
+     * Reads under the read lock, for readers that walk or copy the
+     * indexes. Readers share the lock, so they only wait for a change in
+     * progress. Holding the read lock, reader must not read unread
+     * subTasks, since that takes the write lock.
+     * @param reader - reads the fields, must not change anything
+     * @return what reader returned
+     */
+    <T> T readLocked(Supplier<T> reader) {
+        long stamp = lockRead();
+        try {
+            return reader.get();
+        } finally {
+            unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Turns lazy loading on or off for the next readStorage. While on,
+     * only Tasks that are not subTasks are built at load. The byte range
+     * of each one's subTasks is recorded on the Task, and they are read
+     * the first time they are needed (see loadSubTasks). allTasks only
+     * holds the subTasks read so far until loadAllSubTasks is called.
+     * @param lazyLoading - True to load subTasks lazily
+     */
+    public void setLazyLoading(boolean lazyLoading) {
+        long stamp = lockWrite();
+        try {
+            this.lazyLoading = lazyLoading;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Turns parallel loading on or off for the next readStorage. While
+     * on, large files are split at Tasks that are not subTasks and the
+     * pieces are parsed and rolled over on the common ForkJoinPool,
+     * then merged into tasks and allTasks.
+     * @param parallelLoading - True to load large files in parallel
+     */
+    public void setParallelLoading(boolean parallelLoading) {
+        long stamp = lockWrite();
+        try {
+            this.parallelLoading = parallelLoading;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Turns columnar storage on or off for the next readStorage. While
+     * on, a binary file that stores ids and has no journal to replay is
+     * read into a TaskStore instead of Task objects, so a large store
+     * costs a few arrays rather than an object per Task and field. Until
+     * the first change, size, getTask and the date queries (between,
+     * dueOn, query, incomplete, overdue) are answered from the columns
+     * with views made on demand, and tasks and allTasks stay empty.
+     * Anything else, such as a change, a search, a roots query or a
+     * save, builds the Task objects first, taking over the views handed
+     * out so far. Other files are read as usual; the next write in the
+     * binary format makes them readable this way.
+     * @param columnarStorage - True to read binary files into columns
+     */
+    public void setColumnarStorage(boolean columnarStorage) {
+        long stamp = lockWrite();
+        try {
+            this.columnarStorage = columnarStorage;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Chooses the format writeToStorage uses. readStorage sets this to
+     * match the file it read.
+     * @param binaryStorage - True for BinaryStorage, false for tab separated text
+     */
+    public void setBinaryStorage(boolean binaryStorage) {
+        long stamp = lockWrite();
+        try {
+            this.binaryStorage = binaryStorage;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Turns journaled persistence on or off. While on, mutations made
+     * through the Manager are recorded and saveChanges appends them to
+     * the journal instead of rewriting the whole file.
+     * @param journaling - True to journal changes
+     */
+    public void setJournaling(boolean journaling) {
+        long stamp = lockWrite();
+        try {
+            this.journaling = journaling;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Turns cascading completion on or off. While on, completing the
+     * last incomplete subTask of a Task completes that Task too, and so
+     * on up, while reopening a Task or giving it an incomplete subTask
+     * reopens every complete Task above it. Each step is O(1) thanks to
+     * the incomplete subTask counts, so a cascade costs O(depth). Every
+     * Task changed this way is journaled on its own. Removing a Task
+     * never completes its parent.
+     * @param cascadeCompletion - True to cascade changes to ancestors
+     */
+    public void setCascadeCompletion(boolean cascadeCompletion) {
+        long stamp = lockWrite();
+        try {
+            this.cascadeCompletion = cascadeCompletion;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Method to add a Task to the list of Tasks. Inserts
+     * the Task in the Chronological location using binary
+     * search. Then adds the Task to list of all Tasks.
+     * @param t The Task to add
+     */
+    public void addTask(Task t) {
+        long stamp = lockChange();
+        try {
+            register(t);
+            insertTask(t);
+            t.markDirty();
+            if (journaling) {
+                journal.add(t, null);
+            }
+            indexText(t);
+            history.record(() -> delete(t, true), () -> restore(t, null));
+            notifyAdded(t);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Inserts a Task in the chronological location of the list of
+     * Tasks and the list of all Tasks, without journaling it.
+     * @param t The Task to insert
+     */
+    private void insertTask(Task t) {
+        insertRoot(t);
+        insertToAll(t);
+    }
+
+    /*Inserts a Task into tasks only, for a Task already in allTasks */
+    private void insertRoot(Task t) {
+        t.parent = null;
+        t.owner = this;
+        if (t.hasDirtySubtree()) {
+            dirtyRoots.add(t);
+        }
+        tasks.insert(t);
+        if (!t.isComplete()) {
+            incompleteTasks.insert(t);
+        }
+    }
+
+    /**
+     * Method to add a subTask to a Task. Inserts the Task
+     * to allTasks list.
+     * @param sub - The subTask
+     * @param t - The Task
+     */
+    public void addSubTask(Task sub, Task t) {
+        long stamp = lockChange();
+        try {
+            history.begin();
+            register(sub);
+            t.addSubTask(sub);
+            insertToAll(sub);
+            if (journaling) {
+                journal.add(sub, t);
+            }
+            indexText(sub);
+            history.record(() -> delete(sub, true), () -> restore(sub, t));
+            notifyAdded(sub);
+            if (!sub.isComplete()) {
+                reopenAncestors(sub);
+            }
+            history.end();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Method to insert a Task to the list allTasks. TaskIndex
+     * finds the chronlogical location to insert the Task in
+     * O(log n).
+     * @param t - Task to insert
+     */
+    public void insertToAll(Task t) {
+        long stamp = lockChange();
+        try {
+            allTasks.insert(t);
+            if (!t.isComplete()) {
+                allIncompleteTasks.insert(t);
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Finds Tasks by the words in their title or description. Each word
+     * of the query matches any word starting with it, so a word being
+     * typed still matches. The index is built by the first search, which
+     * also reads any unread subTasks, and is kept up to date from then on.
+     * Searches hold the read lock rather than reading optimistically, as
+     * a change can leave the index's TreeMap half rebalanced.
+     * @param query - words to look for, in any case
+     * @param limit - most Tasks to return
+     * @return the earliest Tasks matching every word, in date order
+     */
+    public List<Task> search(String query, int limit) {
+        if (read(() -> searchIndex) == null) {
+            long stamp = lockWrite();
+            try {
+                if (searchIndex == null) {
+                    loadAllSubTasks();
+                    searchIndex = new SearchIndex(this);
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+        long stamp = lockRead();
+        try {
+            return searchIndex.search(query, limit);
+        } finally {
+            unlockRead(stamp);
+        }
+    }
+
+    /*Lists a new Task in the SearchIndex, once there is one */
+    private void indexText(Task t) {
+        if (searchIndex != null) {
+            searchIndex.add(t);
+        }
+    }
+
+
+    /**
+     * Tasks due in a date range, subTasks included. Finding the range is
+     * O(log n), and only the Tasks in it are copied, so the copy can be
+     * used while other threads change the Manager. Reads any unread
+     * subTasks first.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     * @return the Tasks with from <= date <= to, in date order
+     */
+    public List<Task> between(LocalDate from, LocalDate to) {
+        return query(from, to, null);
+    }
+
+    /**
+     * @param day - date to look up
+     * @return the Tasks due on day
+     */
+    public List<Task> dueOn(LocalDate day) {
+        return between(day, day);
+    }
+
+    /**
+     * Incomplete Tasks due before a date. The boundary is found in
+     * O(log n) and complete Tasks are never looked at.
+     * @param asOf - date to count as today, usually date
+     * @return the overdue Tasks, in date order
+     */
+    public List<Task> overdue(LocalDate asOf) {
+        return incomplete(null, asOf == null ? null : asOf.minusDays(1));
+    }
+
+    /**
+     * @return every incomplete Task, in date order
+     */
+    public List<Task> incomplete() {
+        return incomplete(null, null);
+    }
+
+    /**
+     * Incomplete Tasks in a date range, subTasks included. They are
+     * copied out of allIncompleteTasks, so the cost is the number
+     * returned however many complete Tasks share the range. Reads any
+     * unread subTasks first.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     * @return a copy of the incomplete Tasks with from <= date <= to, in
+     * date order
+     */
+    public List<Task> incomplete(LocalDate from, LocalDate to) {
+        TaskStore store = read(() -> columns);
+        if (store != null) {
+            return store.incomplete(from, to);
+        }
+        loadAllSubTasks();
+        return copyRange(allIncompleteTasks, from, to, null);
+    }
+
+    /**
+     * Incomplete Tasks that are not subTasks in a date range, read like
+     * incomplete. Unread subTasks stay unread.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     * @return a copy of the incomplete Tasks with from <= date <= to, in
+     * date order
+     */
+    public List<Task> incompleteRoots(LocalDate from, LocalDate to) {
+        buildTasks();
+        return copyRange(incompleteTasks, from, to, null);
+    }
+
+    /**
+     * Tasks in a date range that pass a filter. The range is found in
+     * O(log n) and the filter only runs over that range, under the read
+     * lock, so it must not change the Manager.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     * @param filter - which Tasks in the range to keep, null for all
+     * @return a copy of the matching Tasks, in date order
+     */
+    public List<Task> query(LocalDate from, LocalDate to, Predicate<? super Task> filter) {
+        TaskStore store = read(() -> columns);
+        if (store != null) {
+            return store.query(from, to, filter);
+        }
+        loadAllSubTasks();
+        return copyRange(allTasks, from, to, filter);
+    }
+
+    /**
+     * Tasks that are not subTasks in a date range that pass a filter,
+     * read like query. Unread subTasks stay unread, except those of the
+     * Tasks in the range when there is a filter, which may look at them.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     * @param filter - which Tasks in the range to keep, null for all
+     * @return a copy of the matching Tasks, in date order
+     */
+    public List<Task> roots(LocalDate from, LocalDate to, Predicate<? super Task> filter) {
+        buildTasks();
+        if (filter != null) {
+            loadSubTasks(from, to); // Not while copyRange holds the read lock
+        }
+        return copyRange(tasks, from, to, filter);
+    }
+
+    private List<Task> copyRange(TaskIndex index, LocalDate from, LocalDate to,
+        Predicate<? super Task> filter) {
+        LocalDate end = dayAfter(to);
+        return readLocked(() -> {
+            List<Task> range = index.between(from, end);
+            if (filter == null) {
+                return new ArrayList<Task>(range);
+            }
+            List<Task> found = new ArrayList<Task>();
+            for (Task t : range) {
+                if (filter.test(t)) {
+                    found.add(t);
+                }
+            }
+            return found;
+        });
+    }
+
+    /*First date after to, or null if there is none */
+    private static LocalDate dayAfter(LocalDate to) {
+        return to == null || to.equals(LocalDate.MAX) ? null : to.plusDays(1);
+    }
+
+    /**
+     * Marks a Task complete and journals the change.
+     * @param t - Task to mark
+     * @return True if successful, false if a subTask was incomplete.
+     */
+    public boolean markComplete(Task t) {
+        long stamp = lockChange();
+        try {
+            if (!t.canComplete()) {
+                return false;
+            }
+            history.begin();
+            setComplete(t, true);
+            if (cascadeCompletion) {
+                Task p = t.parent;
+                while (p != null && !p.isComplete() && p.canComplete()) {
+                    setComplete(p, true);
+                    p = p.parent;
+                }
+            }
+            history.end();
+            return true;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Marks a Task incomplete and journals the change.
+     * @param t - Task to mark
+     */
+    public void markIncomplete(Task t) {
+        long stamp = lockChange();
+        try {
+            history.begin();
+            setComplete(t, false);
+            reopenAncestors(t);
+            history.end();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /*Sets whether a Task is complete, moving it in or out of the incomplete lists */
+    private void changeComplete(Task t, boolean complete) {
+        if (t.isComplete() == complete) {
+            return;
+        }
+        if (complete) {
+            allIncompleteTasks.remove(t);
+            if (t.parent == null) {
+                incompleteTasks.remove(t);
+            }
+        }
+        t.setComplete(complete);
+        if (!complete) {
+            allIncompleteTasks.insert(t);
+            if (t.parent == null) {
+                incompleteTasks.insert(t);
+            }
+        }
+    }
+
+    /*With cascadeCompletion on, reopens the complete Tasks above an incomplete one */
+    private void reopenAncestors(Task t) {
+        if (!cascadeCompletion) {
+            return;
+        }
+        Task p = t.parent;
+        while (p != null && p.isComplete()) {
+            setComplete(p, false);
+            p = p.parent;
+        }
+    }
+
+    /*Sets whether one Task is complete, even over incomplete subTasks, journaled and undoable */
+    private void setComplete(Task t, boolean complete) {
+        if (t.isComplete() == complete) {
+            return;
+        }
+        changeComplete(t, complete);
+        if (journaling) {
+            journal.edit(complete ? Journal.COMPLETE : Journal.INCOMPLETE, t, null);
+        }
+        notifyChanged(t);
+        history.record(() -> setComplete(t, !complete), () -> setComplete(t, complete));
+    }
+
+    /**
+     * Sets the title of a Task and journals the change.
+     * @param t - Task to edit
+     * @param title - new title
+     */
+    public void setTitle(Task t, String title) {
+        long stamp = lockChange();
+        try {
+            String old = t.getTitle();
+            t.setTitle(title);
+            if (journaling) {
+                journal.edit(Journal.TITLE, t, title);
+            }
+            notifyChanged(t);
+            history.record(() -> setTitle(t, old), () -> setTitle(t, title));
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the description of a Task and journals the change.
+     * @param t - Task to edit
+     * @param description - new description
+     */
+    public void setDescription(Task t, String description) {
+        long stamp = lockChange();
+        try {
+            String old = t.getDescription();
+            t.setDescription(description);
+            if (journaling) {
+                journal.edit(Journal.DESCRIPTION, t, description);
+            }
+            notifyChanged(t);
+            history.record(() -> setDescription(t, old), () -> setDescription(t, description));
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the date of a Task, moves it to its new chronological
+     * location and journals the change.
+     * @param t - Task to edit
+     * @param newDate - new date
+     */
+    public void setDate(Task t, LocalDate newDate) {
+        long stamp = lockChange();
+        try {
+            LocalDate old = t.getDate();
+            moveToDate(t, newDate);
+            if (journaling) {
+                journal.edit(Journal.DATE, t, Journal.toDigits(newDate));
+            }
+            history.record(() -> setDate(t, old), () -> setDate(t, newDate));
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the periodCode of a Task and journals the change.
+     * @param t - Task to edit
+     * @param periodCode - new periodCode
+     */
+    public void setPeriodCode(Task t, int periodCode) {
+        long stamp = lockChange();
+        try {
+            int old = t.getPeriodCode();
+            t.setPeriodCode(periodCode);
+            if (journaling) {
+                journal.edit(Journal.PERIOD, t, periodCode);
+            }
+            notifyChanged(t);
+            history.record(() -> setPeriodCode(t, old), () -> setPeriodCode(t, periodCode));
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Takes back the newest change made through this Manager. A change
+     * that cascaded is taken back whole. What is undone is journaled like
+     * any other change, so it is saved the same way.
+     * @return False if there was nothing to undo
+     */
+    public boolean undo() {
+        long stamp = lockChange();
+        try {
+            return history.undo();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Makes the most recently undone change again.
+     * @return False if there was nothing to redo
+     */
+    public boolean redo() {
+        long stamp = lockChange();
+        try {
+            return history.redo();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return True if there is a change to undo
+     */
+    public boolean canUndo() {
+        return read(() -> history.canUndo());
+    }
+
+    /**
+     * @return True if there is a change to redo
+     */
+    public boolean canRedo() {
+        return read(() -> history.canRedo());
+    }
+
+    /**
+     * @return True if any Task changed since the last save
+     */
+    public boolean hasChanges() {
+        return read(() -> !dirtyRoots.isEmpty() || tasksRemoved);
+    }
+
+    /**
+     * @return copy of the Tasks that are not subTasks and hold a change
+     * since the last save
+     */
+    public Collection<Task> getDirtyRoots() {
+        return readLocked(() -> new ArrayList<Task>(dirtyRoots));
+    }
+
+    /**
+     * Visits every Task changed since the last save, parents before
+     * subTasks. Only subtrees holding a change are walked. Holds the read
+     * lock throughout, so the visitor must not change the Manager.
+     * @param visitor - called with each dirty Task
+     */
+    public void forEachChanged(Consumer<Task> visitor) {
+        long stamp = lockRead();
+        try {
+            for (Task t : dirtyRoots) {
+                visitChanged(t, visitor);
+            }
+        } finally {
+            unlockRead(stamp);
+        }
+    }
+
+    private static void visitChanged(Task t, Consumer<Task> visitor) {
+        if (t.isDirty()) {
+            visitor.accept(t);
+        }
+        for (Task s : t.subTasks) { // Unread subTasks cannot have changed
+            if (s.hasDirtySubtree()) {
+                visitChanged(s, visitor);
+            }
+        }
+    }
+
+    /**
+     * Marks every Task as saved. Called once the changes are in storage
+     * or in the journal.
+     */
+    public void clearChanges() {
+        long stamp = lockWrite();
+        try {
+            for (Task t : dirtyRoots) {
+                t.clearDirty();
+            }
+            dirtyRoots.clear();
+            tasksRemoved = false;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Method to save changes for future runs. When journaling, only the
+     * changes made since the last save are appended to the journal, and
+     * the journal is folded into a full write once it grows too long
+     * relative to the number of Tasks. Otherwise the whole file is written.
+     * @throws IOException
+     */
+    public void saveChanges() throws IOException {
+        long stamp = lockWrite();
+        try {
+            if (needsFullWrite()) {
+                writeToStorage();
+                return;
+            }
+            journal.flush();
+            clearChanges();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return True if the next save should rewrite the whole file rather
+     * than append to the journal, which is also the case while the log
+     * is from before the journal escaped its text
+     */
+    public boolean needsFullWrite() {
+        return read(() -> !journaling || journal.unescaped || journal.recordCount >
+            Math.max(COMPACT_MIN_RECORDS, allTasks.size() / COMPACT_RATIO));
+    }
+
+    /**
+     * Gives a new Task the next id.
+     * @param t - Task being added
+     */
+    private void register(Task t) {
+        registerAt(t, nextId);
+    }
+
+    /**
+     * Gives a Task a specific id.
+     * @param t - Task to register
+     * @param id - its id
+     */
+    private void registerAt(Task t, int id) {
+        t.id = id;
+        setId(id, t);
+    }
+
+    /**
+     * Points an id at a Task. Unread subTasks point at the Task they
+     * belong to, removed and dropped Tasks at null.
+     */
+    private void setId(int id, Task t) {
+        nextId = Math.max(nextId, id + 1);
+        if (deferIds) { // Part of a parallel load, mergeParts points it
+            if (loadedCount == loadedIds.length) {
+                loadedIds = Arrays.copyOf(loadedIds, Math.max(16, loadedCount * 2));
+            }
+            loadedIds[loadedCount++] = id;
+            loadedTasks.add(t);
+            return;
+        }
+        while (byId.size() <= id) {
+            byId.add(null);
+        }
+        Task old = byId.set(id, t);
+        taskCount += (t == null ? 0 : 1) - (old == null ? 0 : 1);
+    }
+
+    /**
+     * @return number of Tasks held, counting subTasks a lazy load has
+     * not read yet
+     */
+    public int size() {
+        return read(() -> columns != null ? columns.size() : taskCount);
+    }
+
+    /**
+     * Looks a Task up by id in O(1), reading it first if a lazy load
+     * skipped it.
+     * @param id - id of the Task
+     * @return the Task, or null if there is none with that id
+     */
+    public Task getTask(int id) {
+        TaskStore store = read(() -> columns);
+        if (store != null) {
+            return store.getTask(id);
+        }
+        Task t = read(() -> id < 0 || id >= byId.size() ? null : byId.get(id));
+        if (t != null && t.id != id) { // Placeholder for an unread subTask
+            loadSubTasks(t);
+            t = read(() -> byId.get(id));
+        }
+        return t;
+    }
+
+    /**
+     * Removes a Task from the Manager and journals it. Its subTasks are
+     * either removed with it or moved up to take its place under its
+     * parent. Each Task leaves tasks and allTasks by a date lookup and
+     * its parent's subTasks through its parent pointer, so nothing is
+     * scanned.
+     * @param t - Task to remove
+     * @param withSubTasks - True to remove its subTasks too, false to
+     * move them up a level
+     */
+    public void removeTask(Task t, boolean withSubTasks) {
+        long stamp = lockChange();
+        try {
+            Task parent = t.parent;
+            List<Task> subs = withSubTasks ? null : new ArrayList<Task>(t.getSubTasks());
+            delete(t, withSubTasks);
+            history.record(() -> {
+                restore(t, parent);
+                if (subs != null) {
+                    for (Task s : subs) {
+                        relocate(s, t);
+                    }
+                }
+            }, () -> delete(t, withSubTasks));
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Moves a Task under a new parent and journals it. Its subTasks move
+     * with it.
+     * @param t - Task to move
+     * @param newParent - Task to move it under, null to make it a Task
+     * that is not a subTask
+     * @throws IllegalArgumentException if newParent is t or below it
+     */
+    public void moveTask(Task t, Task newParent) {
+        long stamp = lockChange();
+        try {
+            for (Task curr = newParent; curr != null; curr = curr.parent) {
+                if (curr == t) {
+                    throw new IllegalArgumentException("Cannot move a Task below itself");
+                }
+            }
+            history.begin();
+            Task oldParent = t.parent;
+            relocate(t, newParent);
+            history.record(() -> relocate(t, oldParent), () -> relocate(t, newParent));
+            if (!t.isComplete()) {
+                reopenAncestors(t);
+            }
+            history.end();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /*Removes a Task and journals it */
+    private void delete(Task t, boolean withSubTasks) {
+        if (journaling) {
+            journal.remove(t, withSubTasks);
+        }
+        detach(t, withSubTasks);
+    }
+
+    /*Moves a Task and journals it */
+    private void relocate(Task t, Task newParent) {
+        reparent(t, newParent);
+        if (journaling) {
+            journal.move(t, newParent);
+        }
+    }
+
+    /*
+     * Puts a removed Task back under its parent with its old id, along
+     * with whatever subTasks it still holds, journaling each as an add.
+     */
+    private void restore(Task t, Task parent) {
+        place(t, parent);
+        readd(t);
+    }
+
+    private void readd(Task t) {
+        registerAt(t, t.id);
+        insertToAll(t);
+        indexText(t);
+        if (journaling) {
+            journal.add(t, t.parent);
+        }
+        notifyAdded(t);
+        for (Task s : t.subTasks) {
+            readd(s);
+        }
+    }
+
+    /*Takes a Task out of the Manager without journaling it */
+    private void detach(Task t, boolean withSubTasks) {
+        Task parent = t.parent;
+        List<Task> subs = t.getSubTasks(); // Read any unread subTasks first
+        unlink(t);
+        removeFromAll(t);
+        setId(t.id, null);
+        if (searchIndex != null) {
+            searchIndex.removed(t);
+        }
+        notifyRemoved(t);
+        if (withSubTasks) {
+            for (Task s : subs) {
+                forget(s);
+            }
+        }
+        else {
+            for (Task s : subs) {
+                place(s, parent);
+                notifyMoved(s, s.getDate(), t);
+            }
+            subs.clear();
+            t.incompleteSubTasks = 0;
+        }
+        tasksRemoved = true;
+    }
+
+    /*Drops a subtree that went with a removed Task */
+    private void forget(Task t) {
+        removeFromAll(t);
+        setId(t.id, null);
+        if (searchIndex != null) {
+            searchIndex.removed(t);
+        }
+        notifyRemoved(t);
+        for (Task s : t.subTasks) {
+            forget(s);
+        }
+    }
+
+    /*Moves a Task and its subtree under a new parent without journaling it */
+    private void reparent(Task t, Task newParent) {
+        Task oldParent = t.parent;
+        if (t.subTaskLoader != null && newParent != null) {
+            loadSubTasks(t); // Only Tasks that are not subTasks are read lazily
+        }
+        unlink(t);
+        place(t, newParent);
+        notifyMoved(t, t.getDate(), oldParent);
+    }
+
+    /*Takes a Task out of tasks or its parent's subTasks, leaving allTasks alone */
+    private void unlink(Task t) {
+        if (t.parent == null) {
+            removeRoot(t);
+            dirtyRoots.remove(t);
+            t.owner = null;
+        }
+        else {
+            t.parent.removeSubTask(t);
+        }
+    }
+
+    /*Takes a Task out of tasks, and incompleteTasks if it is there */
+    private void removeRoot(Task t) {
+        tasks.remove(t);
+        if (!t.isComplete()) {
+            incompleteTasks.remove(t);
+        }
+    }
+
+    /*Takes a Task out of allTasks, and allIncompleteTasks if it is there */
+    private void removeFromAll(Task t) {
+        allTasks.remove(t);
+        if (!t.isComplete()) {
+            allIncompleteTasks.remove(t);
+        }
+    }
+
+    /*Puts a Task that is already in allTasks under a parent, or at the top */
+    private void place(Task t, Task parent) {
+        if (parent == null) {
+            insertRoot(t);
+            t.markDirty();
+        }
+        else {
+            parent.addSubTask(t);
+        }
+    }
+
+    /**
+     * Re-inserts a Task in its sibling list and allTasks after its date
+     * changes.
+     * @param t - Task to move
+     * @param newDate - new date
+     */
+    private void moveToDate(Task t, LocalDate newDate) {
+        Task parent = t.parent;
+        LocalDate oldDate = t.getDate();
+        removeFromAll(t);
+        if (parent == null) {
+            removeRoot(t);
+            t.setDate(newDate);
+            insertTask(t);
+        }
+        else {
+            parent.removeSubTask(t);
+            t.setDate(newDate);
+            parent.addSubTask(t);
+            insertToAll(t);
+        }
+        notifyMoved(t, oldDate, parent);
+    }
+
+    private void notifyAdded(Task t) {
+        for (Listener l : listeners) {
+            l.taskAdded(t);
+        }
+    }
+
+    private void notifyRemoved(Task t) {
+        for (Listener l : listeners) {
+            l.taskRemoved(t);
+        }
+    }
+
+    private void notifyChanged(Task t) {
+        for (Listener l : listeners) {
+            l.taskChanged(t);
+        }
+    }
+
+    private void notifyMoved(Task t, LocalDate oldDate, Task oldParent) {
+        for (Listener l : listeners) {
+            l.taskMoved(t, oldDate, oldParent);
+        }
+    }
 
     /**
-     * Constructor to create a manager
-     * @param username - The username of user and
-     * txt file to draw from / write to. Just the part of file name
-     * before '.txt'
+     * Applies a journaled add on top of the snapshot. The Task is rolled
+     * over with the rest once the whole journal is replayed.
+     * @param t - Task read from the journal
+     * @param parentId - id of its parent, -1 if not a subTask
+     * @param id - id it was given, -1 in logs from before ids were stored
      */
-    public Manager(String username) {
-        date = LocalDate.now();
-        tasks = new ArrayList<Task>();
-        allTasks = new ArrayList<Task>();
-        this.username = username;
+    void replayAdd(Task t, int parentId, int id) {
+        if (id < 0) {
+            id = nextId;
+        }
+        Task parent = parentId < 0 ? null : getTask(parentId);
+        if (parentId >= 0 && parent == null) {
+            setId(id, null);
+            return;
+        }
+        registerAt(t, id);
+        if (parent == null) {
+            insertTask(t);
+        }
+        else {
+            parent.addSubTask(t);
+            insertToAll(t);
+        }
+        indexText(t);
+        t.markDirty(); // Not in the snapshot yet
     }
 
     /**
-     * Method to add a Task to the list of Tasks. Inserts
-     * the Task in the Chronological location using binary
-     * search. Then adds the Task to list of all Tasks.
-     * @param t The Task to add
+     * Applies a journaled edit on top of the snapshot. Edits to Tasks
+     * that were dropped at load are ignored.
+     * @param type - Journal record type
+     * @param id - id of the edited Task
+     * @param value - new value, null for COMPLETE and INCOMPLETE
      */
-    public void addTask(Task t) {
-        LocalDate date = t.getDate();
-        int low = 0;
-        int high = tasks.size() - 1;
-        while (low <= high) {
-            int mid = (low + high) / 2;
-            if (!tasks.get(mid).getDate().isBefore(date)) {
-                high = mid - 1;
+    void replayEdit(char type, int id, String value) {
+        Task t = getTask(id);
+        if (t == null) {
+            return;
+        }
+        switch (type) {
+            case Journal.COMPLETE:
+                changeComplete(t, true); // As recorded, an undo may have completed it over its subTasks
+                break;
+            case Journal.INCOMPLETE:
+                changeComplete(t, false);
+                break;
+            case Journal.TITLE:
+                t.setTitle(value);
+                break;
+            case Journal.DESCRIPTION:
+                t.setDescription(value);
+                break;
+            case Journal.DATE:
+                moveToDate(t, Journal.fromDigits(value));
+                break;
+            case Journal.PERIOD:
+                t.setPeriodCode(Integer.parseInt(value));
+                break;
+            case Journal.REMOVE:
+                detach(t, Boolean.parseBoolean(value));
+                break;
+            case Journal.MOVE:
+                int parentId = Integer.parseInt(value);
+                Task parent = parentId < 0 ? null : getTask(parentId);
+                if (parentId < 0 || parent != null) {
+                    reparent(t, parent);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record " + type);
+        }
+    }
+
+    /**
+     * Method to read from Storage, using the username. Tasks are 
+     * stored in Storage separated by Tabs. The order is Title, 
+     * Description, Date, whether or not the Task is complete, periodCode
+     * and id. Files written before ids were stored have no id column and
+     * are numbered in file order. The whole file is read in one go and parsed straight from the bytes,
+     * so only the title and description Strings are allocated per line.
+     * Tasks with the same title, description and periodCode share one
+     * TaskTemplate, and equal Strings are kept once.
+     * Files starting with the BinaryStorage header are read by BinaryStorage.
+     * @return True if username file exists, false otherwise
+     * @throws IOException
+     */
+    public boolean readStorage() throws IOException{
+        long stamp = lockWrite();
+        try {
+            String fileName = username + FILE_EXTENSION;
+            File userFile = new File(fileName);
+            if (!userFile.exists()) {
+                userFile.createNewFile();
+                return false;
+            }
+
+            byte[] data = Files.readAllBytes(userFile.toPath());
+            binaryStorage = BinaryStorage.isBinary(data);
+            columns = null;
+            if (columnarStorage && binaryStorage && !journal.hasLog()) {
+                columns = TaskStore.read(data, this);
+            }
+            if (columns != null) {
+                storedIds = true;
+                nextId = Math.max(nextId, columns.nextId);
+                CRC32 checksum = new CRC32();
+                checksum.update(data);
+                journal.snapshotChecksum = checksum.getValue();
+                return true;
+            }
+            beginLoad(null);
+            deferRollOver = journal.hasLog(); // Its changes were made to Tasks as they were stored
+            int first = binaryStorage ? BinaryStorage.readHeader(this, data) : readTextHeader(data);
+            if (parallelLoading && data.length >= PARALLEL_MIN_BYTES) {
+                readParallel(data, first);
+            }
+            else if (binaryStorage) {
+                BinaryStorage.readRecords(this, data, first, data.length, lazyLoading);
             }
             else {
-                low = mid + 1;
+                readText(data, first, data.length, lazyLoading);
+            }
+            if (unreadSubtrees > 0) {
+                lazyData = data;
+            }
+
+            /*Apply changes saved since this snapshot was written */
+            CRC32 checksum = new CRC32();
+            checksum.update(data);
+            journal.snapshotChecksum = checksum.getValue();
+            List<Listener> told = listeners; // Replayed records are part of what is read, not changes
+            listeners = Collections.emptyList();
+            try {
+                journal.replay(this);
+                if (deferRollOver) {
+                    deferRollOver = false;
+                    rollOverAll();
+                }
+            } finally {
+                listeners = told;
+                deferRollOver = false;
+            }
+            if (unreadSubtrees == 0) {
+                templates = new TaskTemplate.Pool(); // Only shares with Tasks still to be read
             }
+            return true;
+        } finally {
+            unlockWrite(stamp);
         }
-        tasks.add(low, t);
-        insertToAll(t);
     }
 
     /**
-     * Method to add a subTask to a Task. Inserts the Task
-     * to allTasks list.
-     * @param sub - The subTask
-     * @param t - The Task
+     * Reads the FILE_START line of a text file. Files that store ids
+     * follow it with a tab and the next id to hand out.
+     * @param data - contents of the storage file
+     * @return index of the first Task line
      */
-    public void addSubTask(Task sub, Task t) {
-        t.addSubTask(sub);
-        insertToAll(sub);
+    private int readTextHeader(byte[] data) {
+        int first = nextLine(data, 0);
+        int index = FILE_START.length();
+        storedIds = index < data.length && data[index] == FILE_DELIM;
+        if (storedIds) {
+            int end = index + 1;
+            while (end < data.length && data[end] >= '0' && data[end] <= '9') {
+                end++;
+            }
+            nextId = Math.max(nextId, parseDigits(data, index + 1, end - index - 1));
+        }
+        return first;
     }
 
     /**
-     * Method to insert a Task to the list allTasks. Uses
-     * a binary Search to find the chronlogical location to
-     * insert the Task.
-     * @param t - Task to insert
+     * Splits the file into chunks that each start at a Task that is not
+     * a subTask, so no subtree crosses a chunk. Each chunk is read into
+     * its own Manager on the ForkJoinPool, then the chunks are merged.
+     * @param data - contents of the storage file
+     * @param first - index of the first Task record
+     * @throws IOException
      */
-    public void insertToAll(Task t) {
-        LocalDate date = t.getDate();
-        int low = 0;
-        int high = allTasks.size() - 1;
-        while (low <= high) {
-            int mid = (low + high) / 2;
-            if (!allTasks.get(mid).getDate().isBefore(date)) {
-                high = mid - 1;
+    private void readParallel(byte[] data, int first) throws IOException {
+        int chunkCount = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+        int[] starts;
+        if (binaryStorage) {
+            starts = BinaryStorage.chunkStarts(data, first, chunkCount, storedIds, storedTemplates != null);
+        }
+        else {
+            starts = textChunkStarts(data, first, chunkCount);
+        }
+
+        List<Callable<Manager>> jobs = new ArrayList<Callable<Manager>>();
+        for (int i = 0; i + 1 < starts.length; i++) {
+            int start = starts[i];
+            int end = starts[i + 1];
+            jobs.add(() -> {
+                Manager part = new Manager(username);
+                part.date = date;
+                part.binaryStorage = binaryStorage;
+                part.storedIds = storedIds;
+                part.storedTemplates = storedTemplates;
+                part.deferIds = true;
+                part.deferRollOver = deferRollOver;
+                if (binaryStorage) {
+                    BinaryStorage.readRecords(part, data, start, end, lazyLoading);
+                }
+                else {
+                    part.readText(data, start, end, lazyLoading);
+                }
+                return part;
+            });
+        }
+
+        List<Manager> parts = new ArrayList<Manager>(jobs.size());
+        try {
+            for (Future<Manager> f : ForkJoinPool.commonPool().invokeAll(jobs)) {
+                parts.add(f.get());
             }
-            else {
-                low = mid + 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + username);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new IOException(e.getCause());
         }
-        allTasks.add(low, t);
+        mergeParts(parts);
     }
 
+    /**
+     * Finds chunk boundaries in a text file. Each boundary is moved
+     * forward to the next line that starts with a tab, i.e. the next
+     * Task that is not a subTask.
+     * @param data - contents of the storage file
+     * @param first - index of the first Task line
+     * @param chunkCount - number of chunks to aim for
+     * @return start of each chunk, followed by the end of the last chunk
+     */
+    private static int[] textChunkStarts(byte[] data, int first, int chunkCount) {
+        int target = Math.max(1, (data.length - first) / chunkCount);
+        List<Integer> starts = new ArrayList<Integer>();
+        starts.add(first);
+        int index = first + target;
+        while (index < data.length) {
+            index = nextLine(data, index - 1); // Start of the line at or after index
+            while (index < data.length && data[index] != FILE_DELIM) {
+                index = nextLine(data, index);
+            }
+            if (index >= data.length) {
+                break;
+            }
+            starts.add(index);
+            index += target;
+        }
+        starts.add(data.length);
+        int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
 
     /**
-     * Method to read from Storage, using the username. Tasks are 
-     * stored in Storage separated by Tabs. The order is Title, 
-     * Description, Date, whether or not the Task is complete and periodCode
-     * @return True if username file exists, false otherwise
-     * @throws IOException
+     * Merges chunks read in parallel. Every chunk's lists are already
+     * sorted, so tasks and allTasks are filled by one k-way merge each.
+     * Tasks with equal dates come out in the order sequential loading
+     * would give them, later chunks first. Ids the chunks noted are
+     * pointed here; in files without ids they are offset by the number
+     * of Tasks in earlier chunks.
+     * @param parts - Managers holding each chunk, in file order
      */
-    public boolean readStorage() throws IOException{
-        String fileName = username + FILE_EXTENSION;
-        File userFile = new File(fileName);
-        if (!userFile.exists()) {
-            userFile.createNewFile();
-            return false;
+    private void mergeParts(List<Manager> parts) {
+        int offset = loadId;
+        for (Manager part : parts) {
+            int shift = storedIds ? 0 : offset;
+
+            /*
+             * Backwards, so a Task's unread subTasks (which point at it) are
+             * seen while its id is still the chunk's own.
+             */
+            for (int i = part.loadedCount - 1; i >= 0; i--) {
+                int id = part.loadedIds[i];
+                Task t = part.loadedTasks.get(i);
+                if (t != null && t.id == id) {
+                    t.id = id + shift;
+                    if (t.subTaskLoader == part) {
+                        t.subTaskLoader = this;
+                    }
+                    if (t.owner == part) {
+                        t.owner = this;
+                    }
+                }
+                setId(id + shift, t);
+            }
+            offset += part.loadId;
+            unreadSubtrees += part.unreadSubtrees;
+            dirtyRoots.addAll(part.dirtyRoots);
+        }
+        loadId = offset;
+
+        /*After the ids are final, since TaskIndex keeps a copy of each */
+        List<List<Task>> taskLists = new ArrayList<List<Task>>();
+        List<List<Task>> allLists = new ArrayList<List<Task>>();
+        List<List<Task>> incompleteLists = new ArrayList<List<Task>>();
+        List<List<Task>> allIncompleteLists = new ArrayList<List<Task>>();
+        for (Manager part : parts) {
+            taskLists.add(part.tasks);
+            allLists.add(part.allTasks);
+            incompleteLists.add(part.incompleteTasks);
+            allIncompleteLists.add(part.allIncompleteTasks);
+        }
+        mergeSorted(taskLists, tasks);
+        mergeSorted(allLists, allTasks);
+        mergeSorted(incompleteLists, incompleteTasks);
+        mergeSorted(allIncompleteLists, allIncompleteTasks);
+    }
+
+    /*
+     * Merges lists sorted by date through a heap of their next Tasks, in
+     * O(total log k) for k lists. Among equal dates the later list's Task
+     * goes first, as if each list had been inserted after the one before.
+     */
+    private static void mergeSorted(List<List<Task>> lists, List<Task> into) {
+        PriorityQueue<Head> heads = new PriorityQueue<Head>(Math.max(1, lists.size()));
+        for (int i = 0; i < lists.size(); i++) {
+            Iterator<Task> rest = lists.get(i).iterator();
+            if (rest.hasNext()) {
+                heads.add(new Head(rest, i));
+            }
+        }
+        while (!heads.isEmpty()) {
+            Head head = heads.poll();
+            into.add(head.task);
+            if (head.rest.hasNext()) {
+                head.task = head.rest.next();
+                heads.add(head);
+            }
         }
+    }
+
+    /*Next Task of one of the lists mergeSorted is merging */
+    private static class Head implements Comparable<Head> {
+        final Iterator<Task> rest;
+        final int list;
+        Task task;
 
-        /*Buffered Reader to read line by line */
-        BufferedReader creator = new BufferedReader(new FileReader(fileName));
+        Head(Iterator<Task> rest, int list) {
+            this.rest = rest;
+            this.list = list;
+            task = rest.next();
+        }
 
-        String currLine = creator.readLine();
-        currLine = creator.readLine();
+        @Override
+        public int compareTo(Head other) {
+            int byDate = task.getDate().compareTo(other.task.getDate());
+            return byDate != 0 ? byDate : Integer.compare(other.list, list);
+        }
+    }
 
-        /*StringBuilder to store each part of the Line as it is read */
-        StringBuilder sb = new StringBuilder();
+    /**
+     * Parses the tab separated storage format.
+     * @param data - contents of the storage file
+     * @param index - start of the first line to read
+     * @param limit - index to stop at
+     * @param lazy - True to skip over subTasks, recording where they are
+     */
+    private void readText(byte[] data, int index, int limit, boolean lazy) {
+        /*While loop to iterate through every line until limit or FILE_END */
+        while (index < limit && !isFileEnd(data, index)) {
+            int lineStart = index;
 
-        /*While loop to iterate through every line until null */
-        while(!(currLine == null || currLine.equals(FILE_END))) {
-            
             /*
              * Every task that is not a subTask starts with a tab. If it
              * is a subTask, it starts with '+' characters indicating the depth.
              */
-            int index = 0;
             int currDepth = 0;
-            /*Calculates the depth*/
-            while (currLine.charAt(index) != FILE_DELIM) {
+            while (data[index] != FILE_DELIM) {
                 currDepth++;
                 index++;
             }
             index++;
-            Task t = new Task();
-
-            sb.setLength(0); // Clear the StringBuilder
-
-            /*Iterate until next tab to get Title */
-            while (currLine.charAt(index) != FILE_DELIM) {
-                sb.append(currLine.charAt(index));
-                index++;
-            }
-            t.setTitle(sb.toString());
-            index++;
 
-            sb.setLength(0);
-
-            /*Iterate until next tab to get Description */
-            while (currLine.charAt(index) != FILE_DELIM) {
-                sb.append(currLine.charAt(index));
-                index++;
+            if (lazy && currDepth > 0) {
+                index = nextLine(data, index);
+                skipTask(lineStart, index, storedIds ? lastNumber(data, index) : -1);
+                continue;
             }
-            t.setDescription(sb.toString());
-            index++;
-
-            sb.setLength(0);
+            /*Title and Description are the only Strings built per line */
+            int end = indexOf(data, FILE_DELIM, index);
+            String title = new String(data, index, end - index, StandardCharsets.UTF_8);
+            index = end + 1;
 
-            /*
-             * Date is stored in format YYYYMMDD. To get the date from storage,
-             * mod and division operations are used to get the necessary characters.
-             */
-            int date = Integer.parseInt(currLine.substring(index, index + DATE_OFFSET));
-            t.setDate(LocalDate.of(date / MMDD_DIGITS, (date % MMDD_DIGITS) / DD_DIGITS, 
-                date % DD_DIGITS));
+            end = indexOf(data, FILE_DELIM, index);
+            String description = new String(data, index, end - index, StandardCharsets.UTF_8);
+            index = end + 1;
 
+            /*Date is stored in format YYYYMMDD */
+            LocalDate taskDate = LocalDate.of(parseDigits(data, index, 4), parseDigits(data, index + 4, 2),
+                parseDigits(data, index + 6, 2));
             index += DATE_SKIP;
 
-            sb.setLength(0);
+            end = indexOf(data, FILE_DELIM, index);
+            boolean complete = end - index == TRUE_BYTES.length && regionMatches(data, index, TRUE_BYTES);
+            index = end + 1;
 
-            /*Iterate until next tab to get true / false*/
-            while (currLine.charAt(index) != FILE_DELIM) {
-                sb.append(currLine.charAt(index));
-                index++;
+            /*Period code runs until the end of the line */
+            end = index;
+            while (end < data.length && data[end] >= '0' && data[end] <= '9') {
+                end++;
             }
-            if (sb.toString().equals(TRUE_STRING)) {
+            int periodCode = parseDigits(data, index, end - index);
+            Task t = new Task(templates.share(title, description, periodCode), taskDate);
+            if (complete) {
                 t.markComplete();
             }
-            index++;
-
-            /*
-             * Period Code:
-             * If 0, non-recurring Task. Else:
-             * Period Code Structure (9 digits):
-             * First number: 1 if daily Task, 2 if weekly, 3 if monthly, 4 if yearly.
-             * Next 8 numbers: Date task recurs until in format YYYYMMDD
-             */
+            int id = -1;
+            if (storedIds) { // Id follows the period code
+                index = end + 1;
+                end = index;
+                while (end < data.length && data[end] >= '0' && data[end] <= '9') {
+                    end++;
+                }
+                id = parseDigits(data, index, end - index);
+            }
+            index = nextLine(data, end);
 
-            int periodCode = Integer.parseInt(currLine.substring(index, index + 1));
-            
-            if (periodCode != 0) { // If recurring
-                periodCode = Integer.parseInt(currLine.substring(index, index + PERIOD_LENGTH));
-                t.setPeriodCode(periodCode);
-                int MSB = (int) (periodCode / DATE_DIGITS); // Most Significant Bit
+            loadTask(t, currDepth, id);
+        }
+    }
 
-                /*Date task repeats until */
-                LocalDate until = LocalDate.of((periodCode % DATE_DIGITS) / MMDD_DIGITS, 
-                        periodCode % MMDD_DIGITS / DD_DIGITS, periodCode % DD_DIGITS);
+    /**
+     * Registers a Task read from storage, rolls it over unless that is
+     * deferred and places it in the Task tree. Tasks are stored in DFS order, so a subTask's
+     * parent is the Task most recently read one level up. Dropped Tasks
+     * take their subTasks with them.
+     * @param t - freshly read Task
+     * @param depth - depth read from storage, 0 if not a subTask
+     * @param id - id read from storage, -1 to number it in file order
+     */
+    void loadTask(Task t, int depth, int id) {
+        t.dirty = false; // Matches storage until rolled over
+        t.subtreeDirty = false;
+        if (id < 0) {
+            id = loadId++;
+        }
+        Task parent = depth == 0 || depth > loadPath.size() ? null : loadPath.get(depth - 1);
+        if ((depth > 0 && parent == null) || (!deferRollOver && !rollOver(t))) {
+            setId(id, null);
+            setLoadPath(depth, null);
+            return;
+        }
+        registerAt(t, id);
+        setLoadPath(depth, t);
+        if (depth == 0) { // If not a subTask
+            insertTask(t);
+        }
+        else {
+            parent.attachSubTask(t);
+            insertToAll(t);
+        }
+    }
 
-                if (MSB == DAY_FLAG) { //If daily
+    /**
+     * Skips a subTask during a lazy load. Its bytes are added to the
+     * unread range of the Task it belongs to, and its id points at that
+     * Task until it is read.
+     * @param start - index of the subTask's first byte
+     * @param end - index just past its last byte
+     * @param id - id read from storage, -1 to number it in file order
+     */
+    void skipTask(int start, int end, int id) {
+        Task owner = loadPath.isEmpty() ? null : loadPath.get(0);
+        setId(id < 0 ? loadId++ : id, owner);
+        if (owner == null) { // Belongs to a dropped Task
+            return;
+        }
+        if (owner.subTaskLoader == null) {
+            owner.subTaskLoader = this;
+            owner.unreadStart = start;
+            unreadSubtrees++;
+        }
+        owner.unreadEnd = end;
+    }
 
-                    /*If the task is no longer recurring, continue*/
-                    if (this.date.isAfter(until)) {
-                        currLine = creator.readLine();
-                        continue;
-                    }
+    /**
+     * Reads the subTasks of a Task that were skipped by a lazy load.
+     * Called by the Task the first time its subTasks are needed.
+     * @param owner - Task whose subTasks are unread
+     */
+    void loadSubTasks(Task owner) {
+        long stamp = lockWrite();
+        try {
+            if (columns != null) { // A view, whose subTasks come with the rest
+                loadColumns();
+            }
+            if (owner.subTaskLoader == null) { // Another thread read them first
+                return;
+            }
+            owner.subTaskLoader = null;
+            beginLoad(owner);
+            if (binaryStorage) {
+                BinaryStorage.readRecords(this, lazyData, owner.unreadStart, owner.unreadEnd, false);
+            }
+            else {
+                readText(lazyData, owner.unreadStart, owner.unreadEnd, false);
+            }
+            unreadSubtrees--;
+            if (unreadSubtrees == 0) {
+                lazyData = null;
+                templates = new TaskTemplate.Pool();
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-                    /*If the task has not been completed today, mark incomplete*/
-                    else if (this.date.isAfter(t.getDate())){
-                        t.setDate(this.date);
-                        t.markIncomplete();
-                    }
+    /**
+     * Reads the unread subTasks of the Tasks in a date range.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     */
+    private void loadSubTasks(LocalDate from, LocalDate to) {
+        if (read(() -> unreadSubtrees) == 0) {
+            return;
+        }
+        long stamp = lockWrite();
+        try {
+            for (Task t : new ArrayList<Task>(tasks.between(from, dayAfter(to)))) {
+                if (t.subTaskLoader != null) {
+                    loadSubTasks(t);
                 }
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-                else if (MSB == WEEK_FLAG) {// If weekly
+    /**
+     * Reads every subTask left unread by a lazy load, so allTasks holds
+     * every Task.
+     */
+    public void loadAllSubTasks() {
+        if (read(() -> unreadSubtrees == 0 && columns == null)) {
+            return;
+        }
+        long stamp = lockWrite();
+        try {
+            if (columns != null) {
+                loadColumns();
+            }
+            for (Task t : tasks) {
+                if (t.subTaskLoader != null) {
+                    loadSubTasks(t);
+                }
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-                    LocalDate newDate = t.getDate();
+    /**
+     * Builds the Tasks if they are only held as columns, for reads the
+     * columns cannot answer.
+     */
+    private void buildTasks() {
+        if (read(() -> columns) == null) {
+            return;
+        }
+        long stamp = lockWrite();
+        try {
+            if (columns != null) {
+                loadColumns();
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-                    /*Boolean to see if any weeks were jumped */
-                    boolean jumpedFlag = false;
+    /**
+     * Builds the Tasks held as columns, in the order they were read. The
+     * views handed out so far become the Manager's Tasks, so a caller
+     * holding one can go on to change it. They were rolled over when
+     * read, so they are not rolled over again.
+     */
+    private void loadColumns() {
+        TaskStore store = columns;
+        columns = null;
+        beginLoad(null);
+        deferRollOver = true;
+        try {
+            for (int i = 0; i < store.size(); i++) {
+                Task t = store.view(i);
+                t.subTaskLoader = null;
+                loadTask(t, store.depth(i), store.getId(i));
+            }
+        } finally {
+            deferRollOver = false;
+        }
+    }
 
-                    /*
-                     * Loop until current date is passed. If loop is not 
-                     * entered, jumpedFlag will remain false.
-                     */
-                    while (newDate.isBefore(this.date)) {
-                        newDate = newDate.plusWeeks(1);
-                        jumpedFlag = true;
-                    }
+    /**
+     * Resets the load state before reading Tasks from storage.
+     * @param owner - Task whose subTasks are about to be read, null when
+     * reading the whole file
+     */
+    private void beginLoad(Task owner) {
+        loadPath.clear();
+        if (owner == null) {
+            loadId = byId.size();
+        }
+        else {
+            loadPath.add(owner);
+            loadId = owner.id + 1; // Only used by files without ids
+        }
+    }
 
-                    /*
-                     * If there was a jump and the task is not complete, set it
-                     * to the previous week and make it overdue
-                     */
-                    if (jumpedFlag && !t.isComplete()) {
-                        newDate = newDate.minusWeeks(1);
-                    }
+    private void setLoadPath(int depth, Task t) {
+        while (loadPath.size() > depth) {
+            loadPath.remove(loadPath.size() - 1);
+        }
+        while (loadPath.size() < depth) {
+            loadPath.add(null);
+        }
+        loadPath.add(t);
+    }
 
-                    /*If the date is after the until date, don't add the task */
-                    if (newDate.isAfter(until)) {
-                        currLine = creator.readLine();
-                        continue;
-                    }
-                    t.setDate(newDate);
+    /*
+     * Rolls every Task read so far over to today, once a journal has been
+     * replayed on top of them. Tasks that no longer recur are dropped
+     * with their subTasks, as they would have been when read.
+     */
+    private void rollOverAll() {
+        for (Task t : new ArrayList<Task>(allTasks)) {
+            Recurrence r = t.getRecurrence();
+            if (r == null || byId.get(t.id) != t) {
+                continue; // Not recurring, or dropped with its parent
+            }
+            LocalDate next = r.occurrence(t.getDate(), date, t.isComplete());
+            if (next == null) {
+                detach(t, true);
+            }
+            else if (!next.equals(t.getDate())) {
+                moveToDate(t, next);
+                if (r.getPeriod() == Recurrence.DAILY) {
+                    changeComplete(t, false);
                 }
+            }
+        }
+    }
+
+    /**
+     * Rolls a recurring Task forward to its current occurrence.
+     * @param t - freshly read Task
+     * @return False if the Task is no longer recurring and should be dropped
+     */
+    private boolean rollOver(Task t) {
+        Recurrence r = t.getRecurrence();
+        return r == null || r.rollOver(t, date);
+    }
 
-                else if (MSB == MONTH_FLAG) {
-                    LocalDate newDate = t.getDate();
+    /**
+     * Finds the next occurrence of a byte, or the end of the line.
+     * @param data - file contents
+     * @param b - byte to look for
+     * @param from - index to start at
+     * @return index of b, or of the line break / end of data if b is missing
+     */
+    private static int indexOf(byte[] data, char b, int from) {
+        while (from < data.length && data[from] != b && data[from] != '\n' && data[from] != '\r') {
+            from++;
+        }
+        return from;
+    }
 
-                    boolean jumpedFlag = false;
-                    
-                    while (newDate.isBefore(this.date)) {
-                        newDate = newDate.plusMonths(1);
-                        jumpedFlag = true;
-                    }
-                    
-                    if (jumpedFlag && !t.isComplete()) {
-                        newDate = newDate.minusMonths(1);
-                    }
-                    
-                    if (newDate.isAfter(until)) {
-                        currLine = creator.readLine();
-                        continue;
-                    }
-                    t.setDate(newDate);
-                }
+    /**
+     * Skips past the line break at or after index.
+     * @param data - file contents
+     * @param index - index within the current line
+     * @return index of the first byte of the next line
+     */
+    private static int nextLine(byte[] data, int index) {
+        while (index < data.length && data[index] != '\n') {
+            index++;
+        }
+        return index + 1;
+    }
 
-                else {
-                    LocalDate newDate = t.getDate();
-                    boolean jumpedFlag = false;
-                    while (newDate.isBefore(this.date)) {
-                        newDate = newDate.plusYears(1);
-                        jumpedFlag = true;
-                    }
-                    if (jumpedFlag && !t.isComplete()) {
-                        newDate = newDate.minusYears(1);
-                    }
-                    if (newDate.isAfter(until)) {
-                        currLine = creator.readLine();
-                        continue;
-                    }
-                    t.setDate(newDate);
-                }
+    /**
+     * Parses a run of decimal digits without building a String.
+     * @param data - file contents
+     * @param index - index of first digit
+     * @param length - number of digits
+     * @return parsed int
+     */
+    private static int parseDigits(byte[] data, int index, int length) {
+        if (length <= 0) {
+            throw new NumberFormatException("Expected digits at byte " + index);
+        }
+        int value = 0;
+        for (int i = index; i < index + length; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Expected digit at byte " + i);
             }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
 
-            else { // Not repeating
-                t.setPeriodCode(0);
-            }
+    /**
+     * @return True if the line starting at index is FILE_END
+     */
+    private static boolean isFileEnd(byte[] data, int index) {
+        int end = indexOf(data, FILE_DELIM, index);
+        return end - index == END_BYTES.length && regionMatches(data, index, END_BYTES);
+    }
 
-            if (currDepth == 0) { // If not a subTask
-                addTask(t);
-            }
+    /*Value of the digits that end the line before index, e.g. its id */
+    private static int lastNumber(byte[] data, int index) {
+        int end = index;
+        while (end > 0 && (data[end - 1] < '0' || data[end - 1] > '9')) { // Line break
+            end--;
+        }
+        int start = end;
+        while (start > 0 && data[start - 1] >= '0' && data[start - 1] <= '9') {
+            start--;
+        }
+        return parseDigits(data, start, end - start);
+    }
 
-            /*
-             * Tasks are stored in DFS order, so the Task will always be the last
-             * subTask at the read depth.
-             */
-            else { 
-                Task curr = tasks.get(tasks.size() - 1);
-                for(int i = 0; i < currDepth - 1; i++) {
-                    curr = curr.getSubTasks().get(curr.getSubTasks().size() - 1);
-                }
-                addSubTask(t,curr);
+    private static boolean regionMatches(byte[] data, int index, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (data[index + i] != expected[i]) {
+                return false;
             }
-            currLine = creator.readLine();
         }
-        creator.close();
         return true;
     }
 
     /**
      * Method to store data for future runs. Stores in the form of
      * Strings separated by Tabs. The order is Title, Description, Date,
-     * Whether or Not Complete, and periodCode. Each Task is one line. Uses
-     * repeated calls to writeTask method.
+     * Whether or Not Complete, periodCode and id. Each Task is one line,
+     * after a header holding the next id to hand out. Uses
+     * repeated calls to writeTask method. The journal is folded into the
+     * new file, so it is discarded.
      * @throws IOException
      */
     public void writeToStorage() throws IOException{
-        String fileName = username + FILE_EXTENSION;
-        File userFile = new File(fileName);
+        long stamp = lockWrite();
+        try {
+            loadAllSubTasks();
+            long checksum = writeFile(tasks, allTasks.size(), nextId, binaryStorage);
+            journal.reset(checksum);
+            clearChanges();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-        /*
-         * Just delete the file if it exists and create
-         * a new file to replace it. Too much of a pain to clear.
-         */
-        if(userFile.exists()) {
-            userFile.delete();
+    /**
+     * Copies the Task tree so it can be written on another thread while
+     * this Manager keeps changing. The journal's records are dropped since
+     * the copy already holds them. Copies are never changed once made, so
+     * a subtree that has not changed since the last snapshot is shared
+     * with it rather than copied again: a snapshot costs the Tasks that
+     * are not subTasks plus the paths down to each change.
+     * @return copy of tasks, including subTasks
+     */
+    List<Task> beginSnapshot() {
+        long stamp = lockWrite();
+        try {
+            loadAllSubTasks();
+            List<Task> copy = new ArrayList<Task>(tasks.size());
+            for (Task t : tasks) {
+                copy.add(copyTask(t));
+            }
+            journal.clearPending();
+            clearChanges();
+            return copy;
+        } finally {
+            unlockWrite(stamp);
         }
-        userFile.createNewFile();
+    }
+
+    /**
+     * Writes a copy taken by beginSnapshot and starts a new journal for it.
+     * Safe to call from a background thread.
+     * @param copy - Task tree from beginSnapshot
+     * @param count - number of Tasks in the tree including subTasks
+     * @param nextId - nextId when the copy was taken
+     * @param binary - True to write the BinaryStorage format
+     * @throws IOException
+     */
+    void writeSnapshot(List<Task> copy, int count, int nextId, boolean binary) throws IOException {
+        journal.startLog(writeFile(copy, count, nextId, binary));
+    }
+
+    /**
+     * Writes a Task tree to a temporary file, syncs it to disk and then
+     * renames it over the user's file, so a valid file exists at every
+     * point even if the program dies mid-write. If writing fails, the
+     * temporary file is closed and deleted.
+     * @param roots - Tasks that are not subTasks
+     * @param count - number of Tasks including subTasks
+     * @param nextId - id the next new Task gets
+     * @param binary - True to write the BinaryStorage format
+     * @return CRC32 of the written file, for the journal header
+     * @throws IOException
+     */
+    private long writeFile(List<Task> roots, int count, int nextId, boolean binary) throws IOException {
+        File userFile = new File(username + FILE_EXTENSION);
+        File tempFile = new File(username + FILE_EXTENSION + TEMP_EXTENSION);
 
-        /* BufferedWriter to write line by line */
-        BufferedWriter saver = new BufferedWriter(new FileWriter(fileName));
+        CRC32 crc = new CRC32();
+        boolean moved = false;
+        try {
+            try (FileOutputStream file = new FileOutputStream(tempFile)) {
+                CheckedOutputStream checked = new CheckedOutputStream(file, crc);
+                if (binary) {
+                    BufferedOutputStream out = new BufferedOutputStream(checked);
+                    BinaryStorage.write(roots, count, nextId, out);
+                    out.flush();
+                }
+                else {
+                    /* BufferedWriter to write line by line */
+                    BufferedWriter saver = new BufferedWriter(new OutputStreamWriter(checked, StandardCharsets.UTF_8));
 
-        /* StringBuilder to construct the line to write */
-        StringBuilder sb = new StringBuilder();
+                    /* StringBuilder to construct the line to write */
+                    StringBuilder sb = new StringBuilder();
 
-        saver.write(FILE_START);
-        saver.newLine();
+                    saver.write(FILE_START + FILE_DELIM + nextId);
+                    saver.newLine();
 
-        /*Writes each Task using writeTask method*/
-        for(Task t : tasks) {
-            writeTask(sb, t, 0, saver);
-        }
+                    /*Writes each Task using writeTask method*/
+                    for(Task t : roots) {
+                        writeTask(sb, t, 0, saver);
+                    }
 
-        saver.write(FILE_END); //Signify end of file
+                    saver.write(FILE_END); //Signify end of file
+                    saver.flush();
+                }
+                file.getFD().sync();
+            }
+            Files.move(tempFile.toPath(), userFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) { // The user's file is untouched, only the partial copy goes
+                tempFile.delete();
+            }
+        }
+        return crc.getValue();
+    }
 
-        saver.close();
+    private static Task copyTask(Task t) {
+        if (t.snapshot != null) { // Nothing in the subtree changed since it was copied
+            return t.snapshot;
+        }
+        Task copy = new Task(t.template, t.getDate());
+        copy.complete = t.isComplete();
+        copy.id = t.id;
+        for (Task s : t.getSubTasks()) {
+            copy.subTasks.add(copyTask(s));
+        }
+        t.snapshot = copy;
+        return copy;
     }
 
-    
     /**
      * Method to write a Task to storage. Each call to this method
      * writes one Line to Storage
@@ -404,7 +2211,9 @@ public class Manager {
             d.substring(8,10) + FILE_DELIM);
 
         sb.append(Boolean.toString(t.isComplete()) + FILE_DELIM);
-        sb.append(t.periodCode);
+        sb.append(t.getPeriodCode());
+        sb.append(FILE_DELIM);
+        sb.append(t.id);
 
         /*Save task */
         saver.write(sb.toString());
@@ -0,0 +1,333 @@
+/*
+ * File for the ManagerRegistry class, which serves many users' Managers
+ * from one process.
+ */
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Hands out one Manager per username, loading it with readStorage the
+ * first time it is asked for. Loaded Managers are kept in least recently
+ * used order; once there are more than maxUsers of them, or they hold
+ * more than maxTasks Tasks between them, the coldest are saved and
+ * dropped.
+ *
+ * A user is only ever loaded once at a time: threads asking for a user
+ * that is already loading wait for that load instead of starting their
+ * own, and a user being written back on eviction is not read again until
+ * the write has finished.
+ *
+ * A Manager is pinned between acquire and release and is never evicted
+ * while pinned, so changes cannot land on a copy that was already written
+ * back. Managers lock themselves, so pinned Managers can be used from
+ * any thread; the registry holds a Manager's write lock while writing it
+ * back, so no change lands between checking and saving.
+ *
+ * Instance Variables:
+ * int maxUsers: most Managers kept loaded at once
+ * long maxTasks: most Tasks kept loaded across all Managers
+ * LinkedHashMap<String, Entry> cache: loaded Managers, coldest first
+ * Map<String, CompletableFuture<Manager>> loading: loads in progress
+ * Map<String, CompletableFuture<Void>> writingBack: evictions being saved
+ * long loadedTasks: Tasks held by the Managers in cache, as of their load
+ * or last release
+ */
+public class ManagerRegistry {
+    int maxUsers;
+    long maxTasks;
+    LinkedHashMap<String, Entry> cache;
+    Map<String, CompletableFuture<Manager>> loading;
+    Map<String, CompletableFuture<Void>> writingBack;
+    long loadedTasks;
+
+    /*A loaded Manager, the Tasks it was last counted as and its pin count */
+    static class Entry {
+        final Manager m;
+        int weight;
+        int pins;
+
+        Entry(Manager m, int weight) {
+            this.m = m;
+            this.weight = weight;
+            this.pins = 0;
+        }
+    }
+
+    /**
+     * Constructor to create a ManagerRegistry.
+     * @param maxUsers - most Managers kept loaded at once
+     * @param maxTasks - most Tasks kept loaded across all Managers
+     */
+    public ManagerRegistry(int maxUsers, long maxTasks) {
+        if (maxUsers < 1 || maxTasks < 1) {
+            throw new IllegalArgumentException("Budgets must be positive");
+        }
+        this.maxUsers = maxUsers;
+        this.maxTasks = maxTasks;
+        cache = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        loading = new HashMap<String, CompletableFuture<Manager>>();
+        writingBack = new HashMap<String, CompletableFuture<Void>>();
+        loadedTasks = 0;
+    }
+
+    /**
+     * Gets a user's Manager and pins it, loading it from storage if it is
+     * not cached. Every acquire must be followed by a release.
+     * @param username - user to get
+     * @return the user's Manager
+     * @throws IOException if the user's files could not be read
+     */
+    public Manager acquire(String username) throws IOException {
+        while (true) {
+            CompletableFuture<Manager> load;
+            CompletableFuture<Void> writeBack = null;
+            boolean loader = false;
+            synchronized (this) {
+                Entry e = cache.get(username);
+                if (e != null) {
+                    e.pins++;
+                    return e.m;
+                }
+                load = loading.get(username);
+                if (load == null) {
+                    load = new CompletableFuture<Manager>();
+                    loading.put(username, load);
+                    writeBack = writingBack.get(username);
+                    loader = true;
+                }
+            }
+            if (loader) {
+                return load(username, load, writeBack);
+            }
+            await(load); // Another thread is loading this user, then pin it
+        }
+    }
+
+    /**
+     * Unpins a Manager taken with acquire, letting it be evicted again.
+     * The Manager is counted again, since Tasks may have been added while
+     * it was pinned.
+     * @param username - user whose Manager to release
+     */
+    public void release(String username) {
+        Manager m;
+        synchronized (this) {
+            m = pinned(username).m;
+        }
+        int weight = m.size(); // Outside the lock, the Manager may be busy
+        List<Map.Entry<String, Entry>> evicted;
+        synchronized (this) {
+            Entry e = pinned(username);
+            e.pins--;
+            loadedTasks += weight - e.weight;
+            e.weight = weight;
+            evicted = evictColdest(); // Budgets may have been held up by the pin
+        }
+        try {
+            writeBack(evicted);
+        } catch (IOException e) {
+            // The Managers stay cached and are retried on the next eviction
+        }
+    }
+
+    /*Caller holds the lock. The entry of a user that is acquired */
+    private Entry pinned(String username) {
+        Entry e = cache.get(username);
+        if (e == null || e.pins == 0) {
+            throw new IllegalStateException(username + " is not acquired");
+        }
+        return e;
+    }
+
+    /*Reads a user from storage for the thread that claimed the load */
+    private Manager load(String username, CompletableFuture<Manager> load,
+        CompletableFuture<Void> writeBack) throws IOException {
+        Manager m = null;
+        IOException error = null;
+        try {
+            if (writeBack != null) {
+                writeBack.join(); // The file is only current once the write lands
+                synchronized (this) {
+                    Entry e = cache.get(username);
+                    if (e != null) { // The write failed and the Manager was kept
+                        e.pins++;
+                        loading.remove(username);
+                        load.complete(e.m);
+                        return e.m;
+                    }
+                }
+            }
+            m = new Manager(username);
+            m.setLazyLoading(true);
+            m.readStorage();
+            m.setJournaling(true);
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException("Could not load " + username, e);
+        }
+
+        List<Map.Entry<String, Entry>> evicted = Collections.emptyList();
+        synchronized (this) {
+            loading.remove(username);
+            if (error == null) {
+                Entry e = new Entry(m, m.size()); // Counts subTasks a lazy load left unread
+                e.pins = 1;
+                cache.put(username, e);
+                loadedTasks += e.weight;
+                evicted = evictColdest();
+            }
+        }
+        if (error != null) {
+            load.completeExceptionally(error);
+            throw error;
+        }
+        load.complete(m);
+        try {
+            writeBack(evicted);
+        } catch (IOException e) {
+            // Not this caller's problem, the Managers stay cached to retry later
+        }
+        return m;
+    }
+
+    /**
+     * @param username - user to check
+     * @return True if the user's Manager is loaded
+     */
+    public synchronized boolean isLoaded(String username) {
+        return cache.containsKey(username);
+    }
+
+    /**
+     * @return number of Managers loaded
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Saves and drops a user's Manager if it is loaded.
+     * @param username - user to evict
+     * @throws IOException if the Manager could not be saved
+     */
+    public void evict(String username) throws IOException {
+        List<Map.Entry<String, Entry>> evicted = new ArrayList<Map.Entry<String, Entry>>();
+        synchronized (this) {
+            Entry e = cache.get(username);
+            if (e == null) {
+                return;
+            }
+            if (e.pins > 0) {
+                throw new IllegalStateException(username + " is still acquired");
+            }
+            cache.remove(username);
+            loadedTasks -= e.weight;
+            evicted.add(new AbstractMap.SimpleEntry<String, Entry>(username, e));
+            startWriteBack(username);
+        }
+        writeBack(evicted);
+    }
+
+    /**
+     * Saves every loaded Manager without dropping any.
+     * @throws IOException if a Manager could not be saved, after trying
+     * the rest
+     */
+    public void saveAll() throws IOException {
+        List<Manager> loaded;
+        synchronized (this) {
+            loaded = new ArrayList<Manager>();
+            for (Entry e : cache.values()) {
+                loaded.add(e.m);
+            }
+        }
+        IOException error = null;
+        for (Manager m : loaded) {
+            try {
+                save(m);
+            } catch (IOException e) {
+                error = error == null ? e : error;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /*Caller holds the lock. Removes the coldest unpinned Managers */
+    private List<Map.Entry<String, Entry>> evictColdest() {
+        List<Map.Entry<String, Entry>> evicted = new ArrayList<Map.Entry<String, Entry>>();
+        Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+        while ((cache.size() > maxUsers || loadedTasks > maxTasks) && it.hasNext()) {
+            Map.Entry<String, Entry> coldest = it.next();
+            if (coldest.getValue().pins > 0) {
+                continue;
+            }
+            it.remove();
+            loadedTasks -= coldest.getValue().weight;
+            evicted.add(coldest);
+            startWriteBack(coldest.getKey());
+        }
+        return evicted;
+    }
+
+    /*Caller holds the lock. A reload waits on this until the save lands */
+    private void startWriteBack(String username) {
+        writingBack.put(username, new CompletableFuture<Void>());
+    }
+
+    /*
+     * Saves evicted Managers outside the lock, then lets their users load
+     * again. A Manager that fails to save is put back in the cache rather
+     * than losing its changes.
+     */
+    private void writeBack(List<Map.Entry<String, Entry>> evicted) throws IOException {
+        IOException error = null;
+        for (Map.Entry<String, Entry> e : evicted) {
+            boolean saved = false;
+            try {
+                save(e.getValue().m);
+                saved = true;
+            } catch (IOException ex) {
+                error = error == null ? ex : error;
+            } finally {
+                CompletableFuture<Void> done;
+                synchronized (this) {
+                    done = writingBack.remove(e.getKey());
+                    if (!saved) {
+                        cache.put(e.getKey(), e.getValue());
+                        loadedTasks += e.getValue().weight;
+                    }
+                }
+                done.complete(null);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static void save(Manager m) throws IOException {
+        long stamp = m.lockWrite();
+        try {
+            if (m.journal.hasPending() || m.needsFullWrite()) {
+                m.saveChanges();
+            }
+        } finally {
+            m.unlockWrite(stamp);
+        }
+    }
+
+    private static Manager await(CompletableFuture<Manager> load) throws IOException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * File for the Recurrence class, the rule behind a recurring Task.
+ */
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/*
+ * How often a Task recurs and the date it recurs until. Immutable.
+ * Converts to and from the periodCode stored with each Task:
+ * First number: 1 if daily Task, 2 if weekly, 3 if monthly, 4 if yearly.
+ * Next 8 numbers: Date task recurs until in format YYYYMMDD
+ *
+ * The current occurrence is computed with ChronoUnit arithmetic from
+ * the stored date, so a Task that has not been opened for years costs
+ * the same as one opened yesterday. It lands where stepping one period at
+ * a time would: a day of the month cut short by a shorter month stays
+ * cut short (Jan 31 -> Feb 28 -> Mar 28).
+ * Instance Variables:
+ * int period: DAILY, WEEKLY, MONTHLY or YEARLY
+ * long untilEpochDay: last day the Task recurs, as an epoch day
+ */
+public class Recurrence {
+    final int period;
+    final long untilEpochDay;
+
+    /*Constants */
+    public final static int DAILY = 1;
+    public final static int WEEKLY = 2;
+    public final static int MONTHLY = 3;
+    public final static int YEARLY = 4;
+
+    private final static ChronoUnit[] UNITS = {null, ChronoUnit.DAYS, ChronoUnit.WEEKS,
+        ChronoUnit.MONTHS, ChronoUnit.YEARS};
+
+    private final static int MIN_MONTH_LENGTH = 28;
+
+    private final static int DATE_DIGITS = 100000000;
+    private final static int MMDD_DIGITS = 10000;
+    private final static int DD_DIGITS = 100;
+
+    /**
+     * Constructor to create a Recurrence.
+     * @param period - DAILY, WEEKLY, MONTHLY or YEARLY
+     * @param until - last day the Task recurs
+     */
+    public Recurrence(int period, LocalDate until) {
+        this(period, until.toEpochDay());
+    }
+
+    /**
+     * Constructor to create a Recurrence from an epoch day, without
+     * building a LocalDate.
+     * @param period - DAILY, WEEKLY, MONTHLY or YEARLY
+     * @param untilEpochDay - last day the Task recurs, as an epoch day
+     */
+    public Recurrence(int period, long untilEpochDay) {
+        if (period < DAILY || period > YEARLY) {
+            throw new IllegalArgumentException("Unknown period " + period);
+        }
+        this.period = period;
+        this.untilEpochDay = untilEpochDay;
+    }
+
+    /**
+     * Decodes a periodCode. A first number above 4 is read as yearly, as
+     * files have always been.
+     * @param periodCode - code stored with a Task
+     * @return the Recurrence, or null if periodCode is 0 (not recurring)
+     */
+    public static Recurrence fromCode(int periodCode) {
+        if (periodCode == 0) {
+            return null;
+        }
+        int until = periodCode % DATE_DIGITS;
+        return new Recurrence(Math.min(periodCode / DATE_DIGITS, YEARLY), LocalDate.of(until / MMDD_DIGITS,
+            (until % MMDD_DIGITS) / DD_DIGITS, until % DD_DIGITS));
+    }
+
+    /**
+     * @return the periodCode for this Recurrence
+     */
+    public int toCode() {
+        LocalDate until = getUntil();
+        return period * DATE_DIGITS + until.getYear() * MMDD_DIGITS
+            + until.getMonthValue() * DD_DIGITS + until.getDayOfMonth();
+    }
+
+    /**
+     * @return DAILY, WEEKLY, MONTHLY or YEARLY
+     */
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return last day the Task recurs
+     */
+    public LocalDate getUntil() {
+        return LocalDate.ofEpochDay(untilEpochDay);
+    }
+
+    /**
+     * Finds the occurrence a Task is due on as of today.
+     * Daily Tasks move to today once their date has passed.
+     * Other Tasks move to the first occurrence on or after today, except
+     * that an incomplete Task stays on the last occurrence before today so
+     * it shows as overdue.
+     * @param date - date the Task was last due
+     * @param today - present date
+     * @param complete - whether the Task is complete
+     * @return date of the current occurrence, or null if it falls after
+     * the until date and the Task no longer recurs
+     */
+    public LocalDate occurrence(LocalDate date, LocalDate today, boolean complete) {
+        if (period == DAILY) {
+            if (today.toEpochDay() > untilEpochDay) {
+                return null;
+            }
+            return today.isAfter(date) ? today : date;
+        }
+
+        ChronoUnit unit = UNITS[period];
+        LocalDate next = date;
+        if (date.isBefore(today)) {
+            long steps = unit.between(date, today);
+            next = step(date, steps, unit);
+            while (next.isBefore(today)) { // Cut short days can fall behind
+                steps++;
+                next = step(date, steps, unit);
+            }
+            if (!complete) {
+                next = next.minus(1, unit);
+            }
+        }
+        if (next.toEpochDay() > untilEpochDay) {
+            return null;
+        }
+        return next;
+    }
+
+    /**
+     * Moves a recurring Task to its current occurrence. A daily Task
+     * that moves is marked incomplete for the new day.
+     * @param t - Task to roll over
+     * @param today - present date
+     * @return False if the Task no longer recurs and should be dropped
+     */
+    public boolean rollOver(Task t, LocalDate today) {
+        LocalDate next = occurrence(t.getDate(), today, t.isComplete());
+        if (next == null) {
+            return false;
+        }
+        if (!next.equals(t.getDate())) {
+            t.setDate(next);
+            if (period == DAILY) {
+                t.markIncomplete();
+            }
+        }
+        return true;
+    }
+
+    /*
+     * date moved on by steps units the way adding one unit at a time would,
+     * keeping the shortest day of the month met along the way.
+     */
+    private static LocalDate step(LocalDate date, long steps, ChronoUnit unit) {
+        LocalDate next = date.plus(steps, unit);
+        int day = date.getDayOfMonth();
+        if (day <= MIN_MONTH_LENGTH || unit == ChronoUnit.WEEKS
+            || (unit == ChronoUnit.YEARS && date.getMonthValue() != 2)) {
+            return next; // Every month met has the day
+        }
+        LocalDate month = date.withDayOfMonth(1);
+        for (long i = 0; i < steps && day > MIN_MONTH_LENGTH; i++) { // A February ends it within two years
+            month = month.plus(1, unit);
+            day = Math.min(day, month.lengthOfMonth());
+        }
+        return next.withDayOfMonth(Math.min(day, next.lengthOfMonth()));
+    }
+}
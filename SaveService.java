@@ -0,0 +1,181 @@
+/*
+ * File for the SaveService class, which saves a Manager off the UI thread.
+ */
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.*;
+
+/*
+ * Background persistence for a Manager. requestSave may run on any
+ * thread; it holds the Manager's write lock only while taking what needs
+ * saving: the journal's pending records, or a copy of the Task tree when
+ * a full write is due. The files are written on a single worker thread,
+ * so writes happen one at a time and in request order.
+ *
+ * Requests that arrive while a save is running are coalesced: only the
+ * newest copy of the tree is written, and journal records are appended
+ * in one go after it.
+ *
+ * After a failed save the journal may be missing records that later
+ * records depend on, so the next request always writes the whole tree.
+ * Any exception a save throws counts as a failure and is passed to the
+ * listener, wrapped in an IOException if it is not one, so the worker
+ * keeps taking requests.
+ *
+ * Instance Variables:
+ * Manager m: Manager being saved
+ * Executor callbackExecutor: runs listener callbacks, e.g. Platform::runLater
+ * Listener listener: told when each save finishes or fails
+ * ExecutorService worker: single thread that writes the files
+ * List<Task> nextSnapshot: newest copy of the tree waiting to be written
+ * StringBuilder nextRecords: journal records waiting to be appended
+ * boolean scheduled: whether the worker has a save queued or running
+ * boolean failed: whether the last save failed, forcing a full write
+ */
+public class SaveService {
+    Manager m;
+    Executor callbackExecutor;
+    Listener listener;
+    ExecutorService worker;
+
+    List<Task> nextSnapshot;
+    int nextCount;
+    int nextId;
+    boolean nextBinary;
+    StringBuilder nextRecords;
+    boolean scheduled;
+    boolean failed;
+
+    /*
+     * Callback for finished saves.
+     */
+    public interface Listener {
+        /**
+         * Called once a save has been written.
+         * @param error - null if the save succeeded, else the reason it failed
+         */
+        void saveFinished(IOException error);
+    }
+
+    /**
+     * Constructor to create a SaveService.
+     * @param m - Manager to save
+     * @param callbackExecutor - runs listener callbacks, e.g. Platform::runLater
+     * @param listener - told when each save finishes or fails
+     */
+    public SaveService(Manager m, Executor callbackExecutor, Listener listener) {
+        this.m = m;
+        this.callbackExecutor = callbackExecutor;
+        this.listener = listener;
+        worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread t = new Thread(runnable, "flow-control-save");
+            t.setDaemon(true);
+            return t;
+        });
+        nextRecords = new StringBuilder();
+        scheduled = false;
+        failed = false;
+    }
+
+    /**
+     * Saves the Manager in the background. Changes made on other threads
+     * while the request takes its copy or records wait for it.
+     */
+    public void requestSave() {
+        long stamp = m.lockWrite();
+        try {
+            take();
+        } finally {
+            m.unlockWrite(stamp);
+        }
+    }
+
+    /*Takes what needs saving, caller holds the Manager's write lock */
+    private void take() {
+        boolean fullWrite;
+        synchronized (this) {
+            fullWrite = failed || m.needsFullWrite();
+        }
+        if (fullWrite) {
+            List<Task> copy = m.beginSnapshot();
+            synchronized (this) {
+                failed = false;
+                /*Records taken earlier are already in the copy */
+                nextSnapshot = copy;
+                nextCount = m.allTasks.size();
+                nextId = m.nextId;
+                nextBinary = m.binaryStorage;
+                nextRecords.setLength(0);
+                schedule();
+            }
+        }
+        else {
+            String records = m.journal.takePending();
+            m.clearChanges();
+            if (records.isEmpty()) {
+                return;
+            }
+            synchronized (this) {
+                nextRecords.append(records);
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Waits for queued saves to finish and stops the worker.
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException {
+        worker.shutdown();
+        worker.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /*Caller holds the lock */
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            worker.execute(this::drain);
+        }
+    }
+
+    /*Writes whatever has been requested, until nothing is left */
+    private void drain() {
+        while (true) {
+            List<Task> snapshot;
+            int count;
+            int id;
+            boolean binary;
+            String records;
+            synchronized (this) {
+                if (nextSnapshot == null && nextRecords.length() == 0) {
+                    scheduled = false;
+                    return;
+                }
+                snapshot = nextSnapshot;
+                count = nextCount;
+                id = nextId;
+                binary = nextBinary;
+                records = nextRecords.toString();
+                nextSnapshot = null;
+                nextRecords.setLength(0);
+            }
+            IOException error = null;
+            try {
+                if (snapshot != null) {
+                    m.writeSnapshot(snapshot, count, id, binary);
+                }
+                m.journal.append(records);
+            } catch (Throwable e) { // Anything let through would stop the worker with scheduled still set
+                error = e instanceof IOException ? (IOException) e : new IOException("Save failed", e);
+                synchronized (this) {
+                    /*Queued records may refer to what was lost, the next full write covers them */
+                    failed = true;
+                    nextRecords.setLength(0);
+                }
+            }
+            IOException result = error;
+            callbackExecutor.execute(() -> listener.saveFinished(result));
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * File for the SearchIndex class, the full-text index over Task titles
+ * and descriptions.
+ */
+import java.util.*;
+
+/*
+ * Inverted index from each word in a title or description to the Tasks
+ * using it. Words are runs of letters and digits, compared without case.
+ * They are kept sorted, so every word starting with a prefix is one
+ * range of the map and type-ahead queries need no extra structure.
+ *
+ * The index is only ever added to: a Task is listed under the words it
+ * gains, and words it loses or Tasks that leave the Manager are left in
+ * place. Every Task a search finds is checked against its current text
+ * and against the Manager, so those stale entries are simply skipped,
+ * and once they outnumber the live ones the index is rebuilt.
+ *
+ * A search starts from the query word with the fewest entries. If those
+ * are few it checks each one; if the words are common it is cheaper to
+ * walk the Tasks in date order and stop once enough have matched.
+ * Either way the cost depends on how many Tasks are looked at, not on
+ * how many there are. Each Task also has a 64 bit signature with bits
+ * for the first letters of its words, so most Tasks that cannot match
+ * are turned away without looking at their text.
+ *
+ * Instance Variables:
+ * Manager m: Manager whose Tasks are indexed
+ * TreeMap<String, Postings> words: ids of the Tasks listed under each word
+ * int live: entries for words their Tasks still have
+ * int stale: entries known to be outdated
+ * long[] signatures: signature of each Task, by id
+ */
+public class SearchIndex {
+    Manager m;
+    TreeMap<String, Postings> words;
+    int live;
+    int stale;
+    long[] signatures;
+
+    /*Constants */
+    private final static int INITIAL_POSTINGS = 4;
+    private final static int SIGNATURE_PREFIX = 3;
+    private final static int MIN_REBUILD = 1024;
+
+    /*
+     * Ids in date order are scattered, so looking up their signatures
+     * misses the cache far more often than for an entry list, which is in
+     * id order. Rough ratio of the two costs.
+     */
+    private final static int SCAN_COST = 4;
+
+    /*
+     * Ids of the Tasks listed under one word, in the order they were added,
+     * with a copy of each one's signature so they can be checked in order
+     */
+    static class Postings {
+        int[] ids = new int[INITIAL_POSTINGS];
+        long[] signatures = new long[INITIAL_POSTINGS];
+        int size;
+
+        void add(int id, long signature) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                signatures = Arrays.copyOf(signatures, size * 2);
+            }
+            ids[size] = id;
+            signatures[size++] = signature;
+        }
+    }
+
+    /**
+     * Constructor to create the index of every Task a Manager holds.
+     * @param m - Manager to index, with every subTask read
+     */
+    public SearchIndex(Manager m) {
+        this.m = m;
+        rebuild();
+    }
+
+    /**
+     * Lists a Task that was just added under every word of its text.
+     * @param t - Task added to the Manager
+     */
+    void add(Task t) {
+        Set<String> all = words(t.getTitle(), t.getDescription());
+        sign(t, all);
+        for (String word : all) {
+            post(word, t);
+        }
+    }
+
+    /**
+     * Lists a Task under the words its new title or description brought
+     * in. Words it no longer has are left to go stale. If its signature
+     * changed, the copies kept with its entries are outdated, so it is
+     * listed under every word again.
+     * @param t - Task whose text changed
+     * @param oldTitle - title before the change
+     * @param oldDescription - description before the change
+     */
+    void update(Task t, String oldTitle, String oldDescription) {
+        Set<String> before = words(oldTitle, oldDescription);
+        Set<String> after = words(t.getTitle(), t.getDescription());
+        long oldSignature = signatures[t.id];
+        sign(t, after);
+        boolean resign = signatures[t.id] != oldSignature;
+        for (String word : after) {
+            if (!before.remove(word) || resign) {
+                post(word, t);
+            }
+        }
+        outdated(resign ? words(oldTitle, oldDescription).size() : before.size());
+    }
+
+    /**
+     * Counts the entries of a Task that left the Manager as stale.
+     * @param t - removed Task
+     */
+    void removed(Task t) {
+        outdated(words(t.getTitle(), t.getDescription()).size());
+    }
+
+    /**
+     * Finds the Tasks whose title or description has a word starting
+     * with each word of the query. The last word is usually still being
+     * typed, so every word is matched as a prefix.
+     * @param query - words to look for, in any case
+     * @param limit - most Tasks to return
+     * @return the earliest matching Tasks, in date order, at most limit
+     */
+    public List<Task> search(String query, int limit) {
+        List<String> terms = new ArrayList<String>(words(query, ""));
+        List<Task> found = new ArrayList<Task>();
+        if (terms.isEmpty() || limit <= 0) {
+            return found;
+        }
+
+        /*Count each term's entries, then check the rarest first */
+        Map<String, Long> counts = new HashMap<String, Long>();
+        long needed = 0;
+        for (String term : terms) {
+            long count = 0;
+            for (Postings p : prefixRange(term).values()) {
+                count += p.size;
+            }
+            counts.put(term, count);
+            needed |= signatureBits(term);
+        }
+        terms.sort(Comparator.comparing(counts::get));
+        long rarestCount = counts.get(terms.get(0));
+        if (rarestCount == 0) {
+            return found;
+        }
+
+        /*
+         * When the rarest term has more entries than are wanted, walking
+         * allTasks in date order may find enough of them sooner, and stops
+         * there without sorting. Terms that rarely go together would make
+         * that walk long, so it gives up once it has cost about as much as
+         * checking the rarest term's entries would.
+         */
+        long need = needed;
+        long budget = rarestCount / SCAN_COST;
+        if (budget > limit) {
+            int looked = m.allTasks.scanIds(id -> (signatures[id] & need) == need, t -> {
+                if (matches(t, terms)) {
+                    found.add(t);
+                }
+                return found.size() < limit;
+            }, (int) Math.min(Integer.MAX_VALUE, budget));
+            if (found.size() == limit || looked < budget) {
+                return found;
+            }
+            found.clear();
+        }
+
+        Set<Task> seen = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+        for (Postings p : prefixRange(terms.get(0)).values()) {
+            for (int i = 0; i < p.size; i++) {
+                if ((p.signatures[i] & need) != need) {
+                    continue;
+                }
+                int id = p.ids[i];
+                Task t = m.byId.get(id); // Null once removed
+                if (t != null && t.id == id && seen.add(t) && matches(t, terms)) {
+                    found.add(t);
+                }
+            }
+        }
+        found.sort(Comparator.comparing(Task::getDate));
+        return found.size() > limit ? new ArrayList<Task>(found.subList(0, limit)) : found;
+    }
+
+    /**
+     * @return number of index entries, live and stale
+     */
+    public int size() {
+        return live + stale;
+    }
+
+    /*Every indexed word starting with prefix */
+    private SortedMap<String, Postings> prefixRange(String prefix) {
+        return words.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private void post(String word, Task t) {
+        Postings p = words.get(word);
+        if (p == null) {
+            p = new Postings();
+            words.put(word, p);
+        }
+        p.add(t.id, signatures[t.id]);
+        live++;
+    }
+
+    /*Moves entries from live to stale, rebuilding once they outnumber the current ones */
+    private void outdated(int entries) {
+        live -= entries;
+        stale += entries;
+        if (stale > MIN_REBUILD && stale > live) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        words = new TreeMap<String, Postings>();
+        signatures = new long[m.byId.size()];
+        live = 0;
+        stale = 0;
+        for (Task t : m.allTasks) {
+            add(t);
+        }
+    }
+
+    private void sign(Task t, Set<String> taskWords) {
+        if (t.id >= signatures.length) {
+            signatures = Arrays.copyOf(signatures, Math.max(t.id + 1, signatures.length * 2));
+        }
+        long signature = 0;
+        for (String word : taskWords) {
+            signature |= signatureBits(word);
+        }
+        signatures[t.id] = signature;
+    }
+
+    /*
+     * Bits for the first three and first four letters of a word. A Task
+     * sets both for each of its words, and a term needs those its own
+     * length allows, so a longer term narrows the check further. A term
+     * shorter than three letters could be the start of many words, so it
+     * has no bits and is only checked against the text.
+     */
+    private static long signatureBits(String word) {
+        long bits = 0;
+        int hash = 0;
+        for (int i = 0; i < word.length() && i < SIGNATURE_PREFIX + 1; i++) {
+            hash = hash * 31 + word.charAt(i);
+            if (i >= SIGNATURE_PREFIX - 1) {
+                bits |= 1L << ((hash * 0x9E3779B9) >>> 26);
+            }
+        }
+        return bits;
+    }
+
+    private static boolean matches(Task t, List<String> terms) {
+        for (String term : terms) {
+            if (!hasWordStarting(t.getTitle(), term) && !hasWordStarting(t.getDescription(), term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*Checks for a word starting with term without splitting text up */
+    private static boolean hasWordStarting(String text, String term) {
+        if (text == null) {
+            return false;
+        }
+        char first = term.charAt(0);
+        int last = text.length() - term.length();
+        for (int i = 0; i <= last; i++) {
+            if (Character.toLowerCase(text.charAt(i)) == first
+                && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+                && text.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits.
+     * @param title - first text to split, may be null
+     * @param description - second text to split, may be null
+     * @return the distinct words of both
+     */
+    static Set<String> words(String title, String description) {
+        Set<String> words = new HashSet<String>();
+        split(title, words);
+        split(description, words);
+        return words;
+    }
+
+    private static void split(String text, Set<String> words) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            }
+            else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * File for the StartupMetrics class, which times the phases of startup.
+ */
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/*
+ * Records how long after startup began each phase was reached, e.g. the
+ * first frame, the storage file read, the first Tasks painted and the
+ * view fully loaded, so they can be reported and compared between runs.
+ * Phases may be marked from any thread. A phase is only timed the first
+ * time it is marked. The report goes to this class's Logger, so it can be
+ * silenced or redirected like any other log output.
+ * Instance Variables:
+ * long start: System.nanoTime() when startup began
+ * Map<String, Long> marks: nanoseconds from start to each phase, in the
+ * order they were reached
+ */
+public class StartupMetrics {
+    long start;
+    Map<String, Long> marks;
+
+    /*Constants */
+    private final static Logger LOG = Logger.getLogger(StartupMetrics.class.getName());
+
+    /**
+     * Constructor to create StartupMetrics, timing from now.
+     */
+    public StartupMetrics() {
+        start = System.nanoTime();
+        marks = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     * Notes that a phase was reached now.
+     * @param phase - name of the phase
+     */
+    public synchronized void mark(String phase) {
+        marks.putIfAbsent(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * @param phase - name of the phase
+     * @return milliseconds from start to the phase, -1 if not reached
+     */
+    public synchronized long millis(String phase) {
+        Long nanos = marks.get(phase);
+        return nanos == null ? -1 : nanos / 1_000_000;
+    }
+
+    /**
+     * @return each phase reached and its time, e.g.
+     * "Startup: first frame 40 ms, storage read 900 ms"
+     */
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder("Startup:");
+        String separator = " ";
+        for (Map.Entry<String, Long> e : marks.entrySet()) {
+            sb.append(separator).append(e.getKey()).append(' ').append(e.getValue() / 1_000_000).append(" ms");
+            separator = ", ";
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Logs the report at INFO.
+     */
+    public void log() {
+        LOG.info(report());
+    }
+}
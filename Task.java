@@ -8,30 +8,87 @@ import java.time.LocalDate;
  * Task class. 
  * Instance variables:
  * List<Task> subTasks - list of subTask prerequisites of the Task.
- * String title - Task title.
- * String description - description of Task.
+ * TaskTemplate template - title, description and periodCode, possibly
+ * shared with other Tasks.
  * boolean complete - whether or not Task is complete.
  * LocalDate date - stores the date of expected completion of the Task.
- * int periodCode - a code of a certain structure to store recurring Tasks.
+ * int id - stable id the Manager, its Journal and storage refer to the Task by.
+ * Manager subTaskLoader - set while subTasks are still unread after a lazy load.
+ * int unreadStart, unreadEnd - byte range of the unread subTasks in storage.
+ * Task parent - Task this is a subTask of, null if not a subTask.
+ * int incompleteSubTasks - number of direct subTasks that are not complete.
+ * Task snapshot - copy of this Task and its subTasks made for the last
+ * snapshot, null once either has changed.
+ * Manager owner - Manager holding this Task, set on Tasks that are not subTasks.
+ * boolean dirty - whether the Task changed since it was last saved.
+ * boolean subtreeDirty - whether this Task or any Task below it is dirty.
+ *
+ * The setters, markComplete, markIncomplete, addSubTask and removeSubTask
+ * are package-private. They fill in a Task before it is added and are
+ * used by the Manager, which makes every change to the Tasks it holds so
+ * that its indexes, journal, history and listeners stay in step.
  */
 public class Task implements Cloneable{
     /*
      * Instance Variables
      */
 
-    String title;
-    String description;
     boolean complete;
     LocalDate date;
     List<Task> subTasks;
 
     /**
-     * If 0, non-recurring Task. Else:
+     * Title, description and periodCode. Immutable and shared by Tasks
+     * with the same ones, e.g. the days of a weekly Task; the setters
+     * swap in a new one. periodCode is 0 if non-recurring. Else:
      * Period Code Structure (9 digits):
      * First number: 1 if daily Task, 2 if weekly, 3 if monthly, 4 if yearly.
      * Next 8 numbers: Date task recurs until in format YYYYMMDD
      */
-    int periodCode;
+    TaskTemplate template;
+
+    /**
+     * Assigned by Manager when the Task is first added and stored with
+     * it, so it stays the same across saves and restarts. -1 until the
+     * Task is in a Manager.
+     */
+    int id = -1;
+
+    /**
+     * Lazy loading: if not null, subTasks is empty and the subTasks
+     * stored in bytes unreadStart to unreadEnd are read by this Manager
+     * the first time they are needed.
+     */
+    Manager subTaskLoader;
+    int unreadStart;
+    int unreadEnd;
+
+    Task parent;
+    Manager owner;
+
+    /**
+     * Kept up to date as subTasks are added, removed, completed and
+     * reopened, so whether the Task can be completed is known without
+     * looking at its subTasks.
+     */
+    int incompleteSubTasks;
+
+    /**
+     * Snapshots taken for background saves share the copies of subtrees
+     * that did not change. A change drops the copy held by the Task and
+     * each ancestor, so only that path is copied again next time.
+     */
+    Task snapshot;
+
+    /**
+     * Dirty tracking: setters mark the Task dirty and every ancestor as
+     * holding a dirty Task, stopping at the first one already marked.
+     * A Task that is not a subTask reports to its owner the first time
+     * its subtree turns dirty, so changes can be found without walking
+     * the whole forest.
+     */
+    boolean dirty;
+    boolean subtreeDirty;
     
     /**
      * Default constructor, no parameters. Creates Task with
@@ -39,10 +96,8 @@ public class Task implements Cloneable{
      */
     public Task() {
         subTasks = new ArrayList<Task>();
-        title = null;
-        description = "";
+        template = new TaskTemplate(null, "", 0);
         complete = false;
-        periodCode = 0;
     }
 
     /**
@@ -53,12 +108,7 @@ public class Task implements Cloneable{
      * @param date - Task completion date
      */
     public Task(String title, String description, LocalDate date) {
-        subTasks = new ArrayList<Task>();
-        this.title = title;
-        this.description = description;
-        complete = false;
-        this.date = date;
-        periodCode = 0;
+        this(new TaskTemplate(title, description, 0), date);
     }
 
     /**
@@ -69,12 +119,7 @@ public class Task implements Cloneable{
      * @param date - Task completion date
      */
     public Task(String title, LocalDate date) {
-        subTasks = new ArrayList<Task>();
-        this.title = title;
-        this.description = "";
-        complete = false;
-        this.date = date;
-        periodCode = 0;
+        this(new TaskTemplate(title, "", 0), date);
     }
 
     /**
@@ -87,12 +132,7 @@ public class Task implements Cloneable{
      * @param periodCode - Task periodCode
      */
     public Task(String title, String description, LocalDate date, int periodCode) {
-        subTasks = new ArrayList<Task>();
-        this.title = title;
-        this.description = description;
-        complete = false;
-        this.date = date;
-        this.periodCode = periodCode;
+        this(new TaskTemplate(title, description, periodCode), date);
     }
 
     /**
@@ -104,44 +144,72 @@ public class Task implements Cloneable{
      * @param periodCode - Task periodCode
      */
     public Task(String title, LocalDate date, int periodCode) {
+        this(new TaskTemplate(title, "", periodCode), date);
+    }
+
+    /**
+     * 2 Argument constructor for one occurrence of a TaskTemplate. Tasks
+     * made from the same template share its title, description and
+     * periodCode until one of them is changed.
+     * @param template - title, description and periodCode
+     * @param date - Task completion date
+     */
+    public Task(TaskTemplate template, LocalDate date) {
         subTasks = new ArrayList<Task>();
-        this.title = title;
-        this.description = "";
+        this.template = template;
         complete = false;
         this.date = date;
-        this.periodCode = periodCode;
     }
 
     /**
      * Sets title of Task to specified String.
      * @param newTitle - new title of Task
      */
-    public void setTitle(String newtitle) {
-        this.title = newtitle;
+    void setTitle(String newtitle) {
+        String oldTitle = template.title;
+        template = template.withTitle(newtitle);
+        markDirty();
+        textChanged(oldTitle, template.description);
     }
 
     /**
      * Sets description of Task to specified String
      * @param newDescription - new description of Task
      */
-    public void setDescription(String newDescription) {
-        this.description = newDescription;
+    void setDescription(String newDescription) {
+        String oldDescription = template.description;
+        template = template.withDescription(newDescription);
+        markDirty();
+        textChanged(template.title, oldDescription);
+    }
+
+    /*Tells the SearchIndex of the Manager holding this Task, if it has one */
+    private void textChanged(String oldTitle, String oldDescription) {
+        Task root = this;
+        while (root.parent != null) {
+            root = root.parent;
+        }
+        if (root.owner != null && root.owner.searchIndex != null) {
+            root.owner.searchIndex.update(this, oldTitle, oldDescription);
+        }
     }
 
     /**
      * Sets date of Task to specified String
      * @param newDate - new date of Task.
      */
-    public void setDate(LocalDate newdate) {
+    void setDate(LocalDate newdate) {
         this.date = newdate;
+        markDirty();
     }
 
     /**
      * sets periodCode of Task to specified int
      * @param newPeriodCode - new periodCode of Task
      */
-    public void setPeriodCode (int newPeriodCode) {
-        this.periodCode = newPeriodCode;
+    void setPeriodCode (int newPeriodCode) {
+        template = template.withPeriodCode(newPeriodCode);
+        markDirty();
     }
 
     /**
@@ -149,7 +217,7 @@ public class Task implements Cloneable{
      * @return Task's title
      */
     public String getTitle() {
-        return title;
+        return template.title;
     }
 
     /**
@@ -157,7 +225,7 @@ public class Task implements Cloneable{
      * @return Task's description
      */
     public String getDescription() {
-        return description;
+        return template.description;
     }
 
     /**
@@ -173,15 +241,51 @@ public class Task implements Cloneable{
      * @return ArrayList of subTasks
      */
     public List<Task> getSubTasks() {
+        if (subTaskLoader != null) {
+            subTaskLoader.loadSubTasks(this);
+        }
         return subTasks;
     }
 
+    /**
+     * Checks for subTasks without reading any a lazy load skipped.
+     * @return True if the Task has subTasks, read or not
+     */
+    public boolean hasSubTasks() {
+        return subTaskLoader != null || !subTasks.isEmpty();
+    }
+
     /**
      * Method to get the periodCode of Task
      * @return Task's periodCode
      */
     public int getPeriodCode () {
-        return periodCode;
+        return template.periodCode;
+    }
+
+    /**
+     * Method to get the Task's title, description and periodCode, which
+     * other Tasks may share
+     * @return Task's TaskTemplate
+     */
+    public TaskTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Method to get how the Task recurs, decoded from its periodCode
+     * @return Task's Recurrence, or null if it does not recur
+     */
+    public Recurrence getRecurrence() {
+        return Recurrence.fromCode(template.periodCode);
+    }
+
+    /**
+     * Sets how the Task recurs
+     * @param recurrence - new Recurrence, or null if it does not recur
+     */
+    void setRecurrence(Recurrence recurrence) {
+        setPeriodCode(recurrence == null ? 0 : recurrence.toCode());
     }
 
     /**
@@ -197,29 +301,169 @@ public class Task implements Cloneable{
      * mark the Task complete if any of its subTasks are incomplete.
      * @return True if successful, false if a subTask was incomplete.
      */
-    public boolean markComplete() {
-        for(Task t: subTasks) {
-            if (!t.isComplete()) {
-                return false;
-            }
+    boolean markComplete() {
+        if (!canComplete()) {
+            return false;
         }
-        complete = true;
+        setComplete(true);
         return true;
     }
 
     /**
      * Mark the Task as incomplete.
      */
-    public void markIncomplete() {
-        complete = false;
+    void markIncomplete() {
+        setComplete(false);
+    }
+
+    /**
+     * Sets whether the Task is complete without checking its subTasks,
+     * for undo and journal replay.
+     * @param newComplete - True to mark complete
+     */
+    void setComplete(boolean newComplete) {
+        if (complete == newComplete) {
+            return;
+        }
+        complete = newComplete;
+        if (parent != null) {
+            parent.incompleteSubTasks += newComplete ? -1 : 1;
+        }
+        markDirty();
+    }
+
+    /**
+     * Checks whether markComplete would succeed, in O(1) once any unread
+     * subTasks have been read.
+     * @return True if every subTask is complete
+     */
+    public boolean canComplete() {
+        getSubTasks(); // Unread subTasks are not counted yet
+        return incompleteSubTasks == 0;
+    }
+
+    /**
+     * @return number of direct subTasks that are not complete
+     */
+    public int getIncompleteSubTaskCount() {
+        getSubTasks();
+        return incompleteSubTasks;
+    }
+
+    /**
+     * @return the Task's stable id, -1 if it is not in a Manager
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the Task this is a subTask of, null if not a subTask
+     */
+    public Task getParent() {
+        return parent;
+    }
+
+    /**
+     * @return True if the Task changed since it was last saved
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * @return True if this Task or any of its subTasks, at any depth,
+     * changed since they were last saved
+     */
+    public boolean hasDirtySubtree() {
+        return subtreeDirty;
+    }
+
+    /**
+     * Marks the Task as changed since it was last saved.
+     */
+    void markDirty() {
+        dirty = true;
+        markSubtreeDirty();
+        snapshot = null;
+        for (Task curr = parent; curr != null && curr.snapshot != null; curr = curr.parent) {
+            curr.snapshot = null; // Above the first Task without a copy, none have one
+        }
+    }
+
+    /*Marks this Task and its ancestors as holding a change */
+    private void markSubtreeDirty() {
+        Task curr = this;
+        while (!curr.subtreeDirty) {
+            curr.subtreeDirty = true;
+            if (curr.parent == null) {
+                if (curr.owner != null) {
+                    curr.owner.dirtyRoots.add(curr);
+                }
+                return;
+            }
+            curr = curr.parent;
+        }
+    }
+
+    /**
+     * Marks this Task and every Task below it as saved. Only descends
+     * into subtrees holding a change.
+     */
+    void clearDirty() {
+        if (!subtreeDirty) {
+            return;
+        }
+        dirty = false;
+        subtreeDirty = false;
+        for (Task s : subTasks) {
+            s.clearDirty();
+        }
     }
 
     /**
      * Adds subTask to appropriate place in subTask List chronogically.
+     * The subTask is marked dirty.
      * @param sub - subTask to add to Task. If subTask does not have an
      * assigned date an error will be thrown.
      */
-    public void addSubTask(Task sub) {
+    void addSubTask(Task sub) {
+        attachSubTask(sub);
+        sub.markDirty();
+    }
+
+    /**
+     * Removes a subTask. This Task is marked dirty since its list of
+     * subTasks changed.
+     * @param sub - subTask to remove
+     * @return True if sub was a subTask of this Task
+     */
+    boolean removeSubTask(Task sub) {
+        if (!getSubTasks().remove(sub)) {
+            return false;
+        }
+        if (!sub.complete) {
+            incompleteSubTasks--;
+        }
+        sub.parent = null;
+        markDirty();
+        return true;
+    }
+
+    /**
+     * Adds subTask to appropriate place in subTask List chronogically
+     * without marking it dirty, for subTasks read from storage.
+     * @param sub - subTask to add to Task
+     */
+    void attachSubTask(Task sub) {
+        getSubTasks(); // Read any unread subTasks first so sub lands in order
+        sub.parent = this;
+        if (!sub.complete) {
+            incompleteSubTasks++;
+        }
+        if (sub.subtreeDirty) {
+            markSubtreeDirty();
+        }
         LocalDate subDate = sub.getDate();
         int low = 0;
         int high = subTasks.size() - 1;
@@ -235,14 +479,22 @@ public class Task implements Cloneable{
         subTasks.add(low, sub);
     }
 
+    /**
+     * Deep copy of the Task and its subTasks, with every field but the
+     * id. The copy is in no Manager. subTasks are already in order, so
+     * they are appended rather than sorted in again.
+     * @return the copy
+     */
     @Override
     public Task clone() throws CloneNotSupportedException {
-        Task t = new Task();
-        t.setTitle(title);
-        t.setDescription(description);
-        for(Task s : subTasks) {
-            t.addSubTask(s.clone());
+        Task t = new Task(template, date);
+        t.complete = complete;
+        for (Task s : getSubTasks()) {
+            Task copy = s.clone();
+            copy.parent = t;
+            t.subTasks.add(copy);
         }
+        t.incompleteSubTasks = incompleteSubTasks;
         return t;
     }
 }
\ No newline at end of file
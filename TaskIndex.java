@@ -0,0 +1,672 @@
+/*
+ * File for the TaskIndex class, the date ordered list behind
+ * Manager.tasks and Manager.allTasks.
+ */
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/*
+ * A list of Tasks kept in date order, stored as a run of small sorted
+ * chunks instead of one array. Inserting by date binary searches the
+ * chunks, then the chunk, and only shifts the Tasks in that one chunk,
+ * so loading N Tasks no longer moves O(N^2) references. A full chunk is
+ * split in half, unless the new Task goes at its very end: then the chunk
+ * stays full and the Task starts the next one, so Tasks added in date
+ * order leave every chunk full. An emptied chunk is dropped.
+ *
+ * A Fenwick tree over the chunk sizes turns a position into a chunk in
+ * O(log n), so get(i) stays cheap for code that indexes the list.
+ * Iterating walks the chunks directly. The tree has room for about twice
+ * as many chunks as there are, the spare slots holding empty chunks, so a
+ * chunk added at the end only moves sizes along O(log n) nodes. One added
+ * or dropped in the middle, which shifts the chunks after it anyway, has
+ * the nodes from there on recomputed; the tree is only rebuilt when it
+ * runs out of room.
+ *
+ * Every chunk keeps the epoch day of each Task's date in an int array
+ * alongside the Tasks, and lastDays holds the last day of every chunk,
+ * so searches compare contiguous ints instead of following a Task and
+ * then a LocalDate per probe. The day is taken when a Task is inserted;
+ * Manager takes a Task out before changing its date and puts it back
+ * after.
+ *
+ * Each chunk also keeps every Task's id, which never changes while the
+ * Task is in a Manager, so a walk that can rule Tasks out by id alone
+ * (see scanIds) never has to follow them.
+ *
+ * Tasks with equal dates keep the order Manager has always given them:
+ * a new Task goes before every Task already on its date.
+ *
+ * Instance Variables:
+ * List<Chunk> chunks: the chunks in date order, none of them empty
+ * int[] sizeTree: Fenwick tree of chunk sizes, 1 based, with spare slots
+ * int[] lastDays: epoch day of the last Task in each chunk
+ * int size: number of Tasks in the list
+ */
+public class TaskIndex extends AbstractList<Task> implements RandomAccess {
+    List<Chunk> chunks;
+    int[] sizeTree;
+    int[] lastDays;
+    int size;
+
+    /*Constants */
+    private final static int CHUNK_CAPACITY = 512;
+    private final static int MERGE_THRESHOLD = CHUNK_CAPACITY / 4;
+    private final static int MIN_CHUNK_SLOTS = 16;
+
+    /*A sorted run of Tasks, the epoch day of each one's date and its id */
+    static class Chunk {
+        Task[] items;
+        int[] days;
+        int[] ids;
+        int size;
+
+        Chunk() {
+            items = new Task[CHUNK_CAPACITY];
+            days = new int[CHUNK_CAPACITY];
+            ids = new int[CHUNK_CAPACITY];
+            size = 0;
+        }
+    }
+
+    /**
+     * Constructor to create an empty TaskIndex.
+     */
+    public TaskIndex() {
+        chunks = new ArrayList<Chunk>();
+        sizeTree = new int[1];
+        lastDays = new int[0];
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Task get(int index) {
+        checkIndex(index, size);
+        int c = chunkAt(index);
+        return chunks.get(c).items[index - sizeBefore(c)];
+    }
+
+    @Override
+    public Task set(int index, Task t) {
+        checkIndex(index, size);
+        int c = chunkAt(index);
+        Chunk chunk = chunks.get(c);
+        int offset = index - sizeBefore(c);
+        Task old = chunk.items[offset];
+        chunk.items[offset] = t;
+        chunk.days[offset] = epochDay(t.getDate());
+        chunk.ids[offset] = t.id;
+        if (offset == chunk.size - 1) {
+            lastDays[c] = chunk.days[offset];
+        }
+        return old;
+    }
+
+    /**
+     * Inserts a Task at a position. Callers keep the list in date order;
+     * use insert to have the position found by date.
+     */
+    @Override
+    public void add(int index, Task t) {
+        checkIndex(index, size + 1);
+        if (chunks.isEmpty()) {
+            chunks.add(new Chunk());
+            chunkAdded(0);
+        }
+        int c = index == size ? chunks.size() - 1 : chunkAt(index);
+        insertAt(c, index - sizeBefore(c), t);
+    }
+
+    /**
+     * Inserts a Task before every Task on or after its date.
+     * @param t - Task to insert
+     */
+    public void insert(Task t) {
+        int day = epochDay(t.getDate());
+        if (chunks.isEmpty()) {
+            add(0, t);
+            return;
+        }
+        int c = firstChunkEndingOnOrAfter(day);
+        if (c == chunks.size()) { // Later than everything, append to the last chunk
+            c--;
+            insertAt(c, chunks.get(c).size, t);
+            return;
+        }
+        insertAt(c, lowerBound(chunks.get(c), day), t);
+    }
+
+    /**
+     * @param date - date to look for
+     * @return position of the first Task on or after date, or size() if
+     * every Task is before it. Tasks before the position are exactly the
+     * ones due before date.
+     */
+    public int lowerBound(LocalDate date) {
+        int day = epochDay(date);
+        int c = firstChunkEndingOnOrAfter(day);
+        if (c == chunks.size()) {
+            return size;
+        }
+        return sizeBefore(c) + lowerBound(chunks.get(c), day);
+    }
+
+    /**
+     * @param index - position of a Task
+     * @return epoch day of the Task's date when it was inserted
+     */
+    public int epochDayAt(int index) {
+        checkIndex(index, size);
+        int c = chunkAt(index);
+        return chunks.get(c).days[index - sizeBefore(c)];
+    }
+
+    @Override
+    public Task remove(int index) {
+        checkIndex(index, size);
+        int c = chunkAt(index);
+        return removeAt(c, index - sizeBefore(c));
+    }
+
+    /**
+     * Removes a Task, looking it up by its date first. A Task whose date
+     * changed since it was inserted is still found, by a full scan.
+     */
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Task) || ((Task) o).getDate() == null) {
+            return super.indexOf(o);
+        }
+        Task t = (Task) o;
+        int day = epochDay(t.getDate());
+        int c = firstChunkEndingOnOrAfter(day);
+        if (c < chunks.size()) {
+            int before = sizeBefore(c);
+            for (int i = lowerBound(chunks.get(c), day); c < chunks.size(); i = 0, c++) {
+                Chunk chunk = chunks.get(c);
+                for (; i < chunk.size && chunk.days[i] == day; i++) {
+                    if (chunk.items[i] == t) {
+                        return before + i;
+                    }
+                }
+                if (i < chunk.size) {
+                    break;
+                }
+                before += chunk.size;
+            }
+        }
+        return super.indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public void clear() {
+        chunks.clear();
+        rebuildSizeTree();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Removes every Task matching a filter in one pass, repacking the
+     * chunks as it goes.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super Task> filter) {
+        List<Chunk> packed = new ArrayList<Chunk>();
+        Chunk curr = null;
+        int kept = 0;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.size; i++) {
+                Task t = chunk.items[i];
+                if (filter.test(t)) {
+                    continue;
+                }
+                if (curr == null || curr.size == CHUNK_CAPACITY / 2) {
+                    curr = new Chunk();
+                    packed.add(curr);
+                }
+                curr.items[curr.size] = t;
+                curr.ids[curr.size] = chunk.ids[i];
+                curr.days[curr.size++] = chunk.days[i];
+                kept++;
+            }
+        }
+        if (kept == size) {
+            return false;
+        }
+        chunks = packed;
+        size = kept;
+        rebuildSizeTree();
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Iterates from a position to the end without looking up each Task.
+     * @param from - position of the first Task to return
+     * @return iterator over the Tasks from that position on
+     */
+    public Iterator<Task> iterator(int from) {
+        checkIndex(from, size + 1);
+        int start = from == size ? chunks.size() : chunkAt(from);
+        int offset = from == size ? 0 : from - sizeBefore(start);
+        return new Iterator<Task>() {
+            int c = start;
+            int i = offset;
+            int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return c < chunks.size();
+            }
+
+            @Override
+            public Task next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (c >= chunks.size()) {
+                    throw new NoSuchElementException();
+                }
+                Chunk chunk = chunks.get(c);
+                Task t = chunk.items[i++];
+                if (i == chunk.size) {
+                    c++;
+                    i = 0;
+                }
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Walks the Tasks in order, reading only their ids until one passes,
+     * so Tasks ruled out by id are never followed.
+     * @param wanted - tests an id without its Task
+     * @param visit - given each Task whose id passed, returns False to stop
+     * @param budget - most Tasks to look at
+     * @return number of Tasks looked at
+     */
+    public int scanIds(IntPredicate wanted, Predicate<? super Task> visit, int budget) {
+        int looked = 0;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.size; i++) {
+                if (looked++ == budget) {
+                    return budget;
+                }
+                if (wanted.test(chunk.ids[i]) && !visit.test(chunk.items[i])) {
+                    return looked;
+                }
+            }
+        }
+        return looked;
+    }
+
+    /**
+     * A read-only view of the Tasks between two positions. Built in
+     * O(log n) and iterated without looking up each Task. Every change to
+     * the list moves Tasks, so the view does not follow changes: once the
+     * list changes, using the view or an iterator over it throws
+     * ConcurrentModificationException. Copy it to keep it.
+     */
+    @Override
+    public List<Task> subList(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + size);
+        }
+        return new Range(from, to);
+    }
+
+    /**
+     * A read-only view of the Tasks in a date range, good until the list
+     * next changes, like subList.
+     * @param from - first date to include, or null for no lower bound
+     * @param until - first date to leave out, or null for no upper bound
+     * @return the Tasks with from <= date < until, in date order
+     */
+    public List<Task> between(LocalDate from, LocalDate until) {
+        int start = from == null ? 0 : lowerBound(from);
+        int end = until == null ? size : lowerBound(until);
+        return subList(start, Math.max(start, end));
+    }
+
+    /**
+     * Lazily filters Tasks. Nothing is tested until the result is
+     * iterated, and each iteration tests each Task once.
+     * @param tasks - Tasks to filter, e.g. a range from between
+     * @param filter - which Tasks to keep
+     * @return the Tasks that pass, in the order given
+     */
+    public static Iterable<Task> select(Iterable<Task> tasks, Predicate<? super Task> filter) {
+        return () -> new Iterator<Task>() {
+            Iterator<Task> source = tasks.iterator();
+            Task next = advance();
+
+            private Task advance() {
+                while (source.hasNext()) {
+                    Task t = source.next();
+                    if (filter.test(t)) {
+                        return t;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Task next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Task t = next;
+                next = advance();
+                return t;
+            }
+        };
+    }
+
+    /*Positions from to to of this TaskIndex */
+    class Range extends AbstractList<Task> implements RandomAccess {
+        final int from;
+        final int to;
+        final int expectedModCount;
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+            this.expectedModCount = TaskIndex.this.modCount;
+        }
+
+        @Override
+        public int size() {
+            checkForChanges();
+            return to - from;
+        }
+
+        @Override
+        public Task get(int index) {
+            checkForChanges();
+            checkIndex(index, to - from);
+            return TaskIndex.this.get(from + index);
+        }
+
+        @Override
+        public Iterator<Task> iterator() {
+            checkForChanges();
+            Iterator<Task> all = TaskIndex.this.iterator(from);
+            return new Iterator<Task>() {
+                int remaining = to - from;
+
+                @Override
+                public boolean hasNext() {
+                    return remaining > 0;
+                }
+
+                @Override
+                public Task next() {
+                    if (remaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    remaining--;
+                    return all.next();
+                }
+            };
+        }
+
+        @Override
+        public List<Task> subList(int start, int end) {
+            checkForChanges();
+            if (start < 0 || end > to - from || start > end) {
+                throw new IndexOutOfBoundsException("From: " + start + ", To: " + end);
+            }
+            return new Range(from + start, from + end);
+        }
+
+        private void checkForChanges() {
+            if (TaskIndex.this.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /*Index of the first chunk whose last Task is on or after day */
+    private int firstChunkEndingOnOrAfter(int day) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) / 2;
+            if (lastDays[mid] >= day) {
+                high = mid - 1;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /*Index in chunk of the first Task on or after day */
+    private static int lowerBound(Chunk chunk, int day) {
+        int low = 0;
+        int high = chunk.size - 1;
+        while (low <= high) {
+            int mid = (low + high) / 2;
+            if (chunk.days[mid] >= day) {
+                high = mid - 1;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private void insertAt(int c, int offset, Task t) {
+        Chunk chunk = chunks.get(c);
+        if (chunk.size == CHUNK_CAPACITY) {
+            /*Split in half, or keep the chunk full when t goes at its end */
+            int keep = offset == CHUNK_CAPACITY ? CHUNK_CAPACITY : CHUNK_CAPACITY / 2;
+            Chunk upper = new Chunk();
+            chunks.add(c + 1, upper);
+            chunkAdded(c + 1);
+            if (keep < CHUNK_CAPACITY) {
+                int moved = CHUNK_CAPACITY - keep;
+                System.arraycopy(chunk.items, keep, upper.items, 0, moved);
+                System.arraycopy(chunk.days, keep, upper.days, 0, moved);
+                System.arraycopy(chunk.ids, keep, upper.ids, 0, moved);
+                Arrays.fill(chunk.items, keep, CHUNK_CAPACITY, null);
+                upper.size = moved;
+                chunk.size = keep;
+                lastDays[c] = chunk.days[keep - 1];
+                lastDays[c + 1] = upper.days[moved - 1];
+                addToSizeTree(c, -moved);
+                addToSizeTree(c + 1, moved);
+            }
+            if (offset > keep || keep == CHUNK_CAPACITY) {
+                chunk = upper;
+                offset -= keep;
+                c++;
+            }
+        }
+        System.arraycopy(chunk.items, offset, chunk.items, offset + 1, chunk.size - offset);
+        System.arraycopy(chunk.days, offset, chunk.days, offset + 1, chunk.size - offset);
+        System.arraycopy(chunk.ids, offset, chunk.ids, offset + 1, chunk.size - offset);
+        chunk.items[offset] = t;
+        chunk.days[offset] = epochDay(t.getDate());
+        chunk.ids[offset] = t.id;
+        chunk.size++;
+        lastDays[c] = chunk.days[chunk.size - 1];
+        addToSizeTree(c, 1);
+        size++;
+        modCount++;
+    }
+
+    private Task removeAt(int c, int offset) {
+        Chunk chunk = chunks.get(c);
+        Task old = chunk.items[offset];
+        System.arraycopy(chunk.items, offset + 1, chunk.items, offset, chunk.size - offset - 1);
+        System.arraycopy(chunk.days, offset + 1, chunk.days, offset, chunk.size - offset - 1);
+        System.arraycopy(chunk.ids, offset + 1, chunk.ids, offset, chunk.size - offset - 1);
+        chunk.items[--chunk.size] = null;
+        size--;
+        modCount++;
+        if (chunk.size == 0) {
+            addToSizeTree(c, -1);
+            chunks.remove(c);
+            chunkRemoved(c);
+        }
+        else if (chunk.size < MERGE_THRESHOLD && c + 1 < chunks.size()
+            && chunk.size + chunks.get(c + 1).size <= CHUNK_CAPACITY / 2) {
+            Chunk next = chunks.get(c + 1);
+            System.arraycopy(next.items, 0, chunk.items, chunk.size, next.size);
+            System.arraycopy(next.days, 0, chunk.days, chunk.size, next.size);
+            System.arraycopy(next.ids, 0, chunk.ids, chunk.size, next.size);
+            chunk.size += next.size;
+            lastDays[c] = chunk.days[chunk.size - 1];
+            addToSizeTree(c, next.size - 1);
+            addToSizeTree(c + 1, -next.size);
+            chunks.remove(c + 1);
+            chunkRemoved(c + 1);
+        }
+        else {
+            lastDays[c] = chunk.days[chunk.size - 1];
+            addToSizeTree(c, -1);
+        }
+        return old;
+    }
+
+    /*Chunk holding the Task at index */
+    private int chunkAt(int index) {
+        int pos = 0;
+        int remaining = index;
+        for (int step = Integer.highestOneBit(sizeTree.length - 1); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next < sizeTree.length && sizeTree[next] <= remaining) {
+                pos = next;
+                remaining -= sizeTree[next];
+            }
+        }
+        return pos; // pos chunks hold at most index Tasks, so index is in chunk pos
+    }
+
+    /*Number of Tasks in the chunks before chunk c */
+    private int sizeBefore(int c) {
+        int sum = 0;
+        for (int i = c; i > 0; i -= i & -i) {
+            sum += sizeTree[i];
+        }
+        return sum;
+    }
+
+    private void addToSizeTree(int c, int delta) {
+        for (int i = c + 1; i < sizeTree.length; i += i & -i) {
+            sizeTree[i] += delta;
+        }
+    }
+
+    /*
+     * Makes room in sizeTree and lastDays for an empty chunk just added to
+     * chunks at c. Its sizes are moved in with addToSizeTree.
+     */
+    private void chunkAdded(int c) {
+        if (chunks.size() >= sizeTree.length) {
+            rebuildSizeTree();
+            return;
+        }
+        System.arraycopy(lastDays, c, lastDays, c + 1, chunks.size() - 1 - c);
+        if (c < chunks.size() - 1) {
+            recomputeSizeTree(c);
+        } // At the end it takes a spare slot, already empty
+    }
+
+    /*Closes up sizeTree and lastDays after an empty chunk at c left chunks */
+    private void chunkRemoved(int c) {
+        System.arraycopy(lastDays, c + 1, lastDays, c, chunks.size() - c);
+        if (c < chunks.size()) {
+            recomputeSizeTree(c);
+        }
+    }
+
+    /*
+     * Recomputes the nodes of sizeTree for chunks c on, in place, each from
+     * its chunk and the nodes below it.
+     */
+    private void recomputeSizeTree(int c) {
+        for (int i = c + 1; i < sizeTree.length; i++) {
+            int sum = i <= chunks.size() ? chunks.get(i - 1).size : 0;
+            for (int j = i - 1; j > i - (i & -i); j -= j & -j) {
+                sum += sizeTree[j];
+            }
+            sizeTree[i] = sum;
+        }
+    }
+
+    /*
+     * Rebuilds sizeTree and lastDays with room for about twice as many
+     * chunks. Called when they run out of room or the chunks are replaced.
+     */
+    private void rebuildSizeTree() {
+        int slots = Math.max(MIN_CHUNK_SLOTS, chunks.size() * 2);
+        sizeTree = new int[slots + 1];
+        lastDays = new int[slots];
+        for (int c = 0; c < chunks.size(); c++) {
+            Chunk chunk = chunks.get(c);
+            if (chunk.size > 0) {
+                lastDays[c] = chunk.days[chunk.size - 1];
+            }
+            int i = c + 1;
+            sizeTree[i] += chunk.size;
+            int parent = i + (i & -i);
+            if (parent < sizeTree.length) {
+                sizeTree[parent] += sizeTree[i];
+            }
+        }
+        for (int i = chunks.size() + 1; i < sizeTree.length; i++) { // Spare slots still carry the sums below them
+            int parent = i + (i & -i);
+            if (parent < sizeTree.length) {
+                sizeTree[parent] += sizeTree[i];
+            }
+        }
+    }
+
+    private static int epochDay(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + bound);
+        }
+    }
+}
@@ -0,0 +1,756 @@
+/*
+ * File for the TaskStore class, a columnar copy of a user's Tasks for
+ * stores too large to keep as Task objects.
+ */
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+
+/*
+ * Holds Tasks as columns of primitives instead of objects: one slot per
+ * Task in each array, so a million Tasks are a handful of arrays rather
+ * than millions of Tasks, ArrayLists and LocalDates for the GC to trace.
+ * The tree is kept as parent, first child and next sibling indexes.
+ * Title, description and periodCode are a TaskTemplate index, and the
+ * text of every template is UTF-8 in one packed byte array.
+ *
+ * Read-only: a Manager with columnar storage on answers lookups and
+ * date queries from one until the first change, then builds its Tasks
+ * from it (see Manager.setColumnarStorage). Tasks are handed out as
+ * views made on demand. While a view is in use, the same Task object is
+ * handed out for its index, so the Manager can take the views over as
+ * its Tasks. Views of Tasks with subTasks leave them unread until the
+ * Manager has built its Tasks. Changing a view changes nothing here.
+ *
+ * Tasks are indexed in the order they were read, i.e. DFS order. A
+ * second index sorted by date answers the same range queries as
+ * Manager, in the same order: Tasks with equal dates are last read
+ * first, as a Manager's TaskIndex holds them after a load.
+ *
+ * Instance Variables:
+ * int size: number of Tasks
+ * int[] ids, int[] days, byte[] flags: each Task's id, date as an epoch
+ * day and flags (COMPLETE)
+ * int[] templates: each Task's template index
+ * int[] parents, int[] firstChildren, int[] nextSiblings: tree links, -1
+ * where there is none
+ * int firstRoot: index of the first Task that is not a subTask, -1 if empty
+ * int templateCount, int[] templateTitles, int[] templateDescriptions,
+ * int[] templatePeriodCodes: the templates, with their text as indexes
+ * into the packed text
+ * byte[] text, int textLength, int[] textStarts, int textCount: packed
+ * UTF-8 of every distinct String; String i runs from textStarts[i] to
+ * textStarts[i + 1]
+ * TaskTemplate[] decoded, int[] decodedIndexes: small cache of templates
+ * whose text was decoded for a view, by template index
+ * WeakReference<Task>[] views: view handed out for each index, while in use
+ * Manager loader: Manager reading the subTasks of views, null for a store
+ * read on its own
+ * int[] byDate: Task indexes sorted by date
+ * int[] byId: Task index of each id, -1 where there is none
+ * int nextId: id the next new Task would get
+ * LocalDate date: date recurring Tasks are rolled over to while reading
+ * int[] path: last Task read at each depth while reading, DROPPED if it
+ * was dropped
+ * int[] lastChildren, int lastRoot: last subTask of each Task and the
+ * last root so far, while reading
+ * Map<String, Integer> textIds, Map<TaskTemplate, Integer> templateIds,
+ * Recurrence[] rules: dedupe and rollover state while reading, null after
+ */
+public class TaskStore {
+    int size;
+    int[] ids;
+    int[] days;
+    byte[] flags;
+    int[] templates;
+    int[] parents;
+    int[] firstChildren;
+    int[] nextSiblings;
+    int firstRoot;
+
+    int templateCount;
+    int[] templateTitles;
+    int[] templateDescriptions;
+    int[] templatePeriodCodes;
+
+    byte[] text;
+    int textLength;
+    int[] textStarts;
+    int textCount;
+
+    TaskTemplate[] decoded;
+    int[] decodedIndexes;
+    WeakReference<Task>[] views;
+    Manager loader;
+
+    int[] byDate;
+    int[] byId;
+    int nextId;
+    LocalDate date;
+
+    int[] path;
+    int[] lastChildren;
+    int lastRoot;
+    Map<String, Integer> textIds;
+    Map<TaskTemplate, Integer> templateIds;
+    Recurrence[] rules;
+
+    /*Constants */
+    final static byte COMPLETE = 1;
+
+    private final static int NONE = -1;
+    private final static int DROPPED = -2;
+    private final static int INITIAL_CAPACITY = 16;
+
+    /*
+     * Views of Tasks sharing a template share its decoded text while it
+     * stays in this many slots, so the heap saved is not given back
+     */
+    private final static int DECODED_SLOTS = 4096;
+    private final static String FILE_EXTENSION = ".txt";
+    private final static String LOG_EXTENSION = ".log";
+
+    /**
+     * Constructor to create an empty TaskStore to read into.
+     * @param date - date recurring Tasks are rolled over to
+     */
+    TaskStore(LocalDate date) {
+        this.date = date;
+        size = 0;
+        ids = new int[INITIAL_CAPACITY];
+        days = new int[INITIAL_CAPACITY];
+        flags = new byte[INITIAL_CAPACITY];
+        templates = new int[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        firstChildren = new int[INITIAL_CAPACITY];
+        nextSiblings = new int[INITIAL_CAPACITY];
+        firstRoot = NONE;
+        templateCount = 0;
+        templateTitles = new int[INITIAL_CAPACITY];
+        templateDescriptions = new int[INITIAL_CAPACITY];
+        templatePeriodCodes = new int[INITIAL_CAPACITY];
+        text = new byte[INITIAL_CAPACITY];
+        textLength = 0;
+        textStarts = new int[INITIAL_CAPACITY + 1];
+        textCount = 0;
+        nextId = 0;
+        path = new int[INITIAL_CAPACITY];
+        lastChildren = new int[INITIAL_CAPACITY];
+        lastRoot = NONE;
+        textIds = new HashMap<String, Integer>();
+        templateIds = new HashMap<TaskTemplate, Integer>();
+        rules = new Recurrence[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Reads a user's storage file into a TaskStore. Binary files that
+     * store ids are decoded straight into the columns without building
+     * any Tasks. Text files, older binary files and files with a pending
+     * journal are read by a Manager first and copied.
+     * @param username - user whose file to read
+     * @return the Tasks, rolled over to today, empty if there is no file
+     * @throws IOException
+     */
+    public static TaskStore read(String username) throws IOException {
+        File userFile = new File(username + FILE_EXTENSION);
+        TaskStore store = new TaskStore(LocalDate.now());
+        if (!userFile.exists()) {
+            store.finish();
+            return store;
+        }
+        if (!new File(username + LOG_EXTENSION).exists()) {
+            byte[] data = Files.readAllBytes(userFile.toPath());
+            if (BinaryStorage.isBinary(data) && store.readColumns(data)) {
+                store.finish();
+                return store;
+            }
+        }
+        Manager m = new Manager(username);
+        m.readStorage();
+        return of(m);
+    }
+
+    /**
+     * Reads the contents of a binary storage file into a TaskStore for a
+     * Manager, without building any Tasks.
+     * @param data - contents of the storage file
+     * @param m - Manager the store stands in for, whose date Tasks are
+     * rolled over to
+     * @return the Tasks, or null if the file is text or too old to be
+     * read into columns
+     */
+    static TaskStore read(byte[] data, Manager m) {
+        TaskStore store = new TaskStore(m.date);
+        if (!BinaryStorage.isBinary(data) || !store.readColumns(data)) {
+            return null;
+        }
+        store.loader = m;
+        store.finish();
+        return store;
+    }
+
+    /**
+     * Decodes a whole binary storage file into the columns, without
+     * building any Tasks. Only versions that store ids can be read this
+     * way, since older files are numbered by the Manager. Uses
+     * BinaryStorage's decoder, so the format is only described there.
+     * @param data - contents of the storage file
+     * @return False if the file is too old to be read into columns
+     */
+    private boolean readColumns(byte[] data) {
+        BinaryStorage in = new BinaryStorage(data);
+        in.index = BinaryStorage.MAGIC.length;
+        int version = data[in.index++];
+        if (version < BinaryStorage.VERSION_WITHOUT_TEMPLATES || version > BinaryStorage.VERSION) {
+            return false;
+        }
+        in.readVarint(); // Task count
+        nextId = in.readVarint();
+        int[] table = null;
+        if (version == BinaryStorage.VERSION) {
+            table = new int[in.readVarint()];
+            for (int i = 0; i < table.length; i++) {
+                int period = in.readVarint();
+                int periodCode = 0;
+                if (period != 0) {
+                    periodCode = new Recurrence(period, in.readSignedVarint()).toCode();
+                }
+                String title = in.readString();
+                table[i] = template(title, in.readString(), periodCode);
+            }
+        }
+        while (in.index < data.length) {
+            int depth = in.readVarint();
+            int id = in.readVarint();
+            int flags = data[in.index++];
+            long day = in.readSignedVarint();
+            int template;
+            if (table != null) {
+                template = table[in.readVarint()];
+            }
+            else {
+                int period = (flags >> BinaryStorage.PERIOD_SHIFT) & BinaryStorage.PERIOD_MASK;
+                int periodCode = 0;
+                if (period != 0) {
+                    periodCode = new Recurrence(period, in.readSignedVarint()).toCode();
+                }
+                String title = in.readString();
+                template = template(title, in.readString(), periodCode);
+            }
+            load(id, depth, day, (flags & BinaryStorage.COMPLETE_FLAG) != 0, template);
+        }
+        return true;
+    }
+
+    /**
+     * Copies every Task of a Manager, subTasks included, into a TaskStore.
+     * @param m - Manager to copy, whose unread subTasks are read first
+     * @return the copy
+     */
+    public static TaskStore of(Manager m) {
+        m.loadAllSubTasks();
+        TaskStore store = new TaskStore(m.date);
+        store.nextId = m.nextId;
+        for (Task t : m.tasks) {
+            store.copy(t, 0);
+        }
+        store.finish();
+        return store;
+    }
+
+    private void copy(Task t, int depth) {
+        add(t.id, depth, (int) t.getDate().toEpochDay(), t.isComplete() ? COMPLETE : 0,
+            template(t.template), false);
+        for (Task s : t.getSubTasks()) {
+            copy(s, depth + 1);
+        }
+    }
+
+    /**
+     * Adds a Task read from storage, rolling it over first. Tasks come
+     * in DFS order, so a subTask's parent is the Task most recently read
+     * one level up. A dropped Task takes its subTasks with it. As in
+     * Task.addSubTask, a subTask goes before the first sibling due on or
+     * after it, since rolling over may have moved it.
+     * @param id - its id
+     * @param depth - its depth, 0 if not a subTask
+     * @param day - its date as an epoch day
+     * @param complete - whether it is complete
+     * @param template - index returned by template
+     */
+    void load(int id, int depth, long day, boolean complete, int template) {
+        int parent = depth == 0 ? NONE : depth > path.length ? DROPPED : path[depth - 1];
+        if (depth > 0 && parent < 0) {
+            parent = DROPPED;
+        }
+        Recurrence rule = rules[template];
+        if (parent != DROPPED && rule != null) {
+            LocalDate current = LocalDate.ofEpochDay(day);
+            LocalDate next = rule.occurrence(current, date, complete);
+            if (next == null) {
+                parent = DROPPED;
+            }
+            else if (!next.equals(current)) {
+                day = next.toEpochDay();
+                complete = complete && rule.getPeriod() != Recurrence.DAILY;
+            }
+        }
+        if (parent == DROPPED) {
+            setPath(depth, DROPPED);
+            return;
+        }
+        add(id, depth, (int) day, complete ? COMPLETE : 0, template, true);
+    }
+
+    /*
+     * Appends a Task to the columns and links it in among its siblings:
+     * last, or by date if sort is set
+     */
+    private void add(int id, int depth, int day, byte flag, int template, boolean sort) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            days = Arrays.copyOf(days, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            templates = Arrays.copyOf(templates, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+        }
+        int index = size++;
+        int parent = depth == 0 ? NONE : path[depth - 1];
+        ids[index] = id;
+        days[index] = day;
+        flags[index] = flag;
+        templates[index] = template;
+        parents[index] = parent;
+        firstChildren[index] = NONE;
+        nextSiblings[index] = NONE;
+        lastChildren[index] = NONE;
+
+        int previous = parent == NONE ? lastRoot : lastChildren[parent];
+        if (sort && parent != NONE && previous != NONE && days[previous] >= day) {
+            /*Goes before a sibling, so not last */
+            previous = NONE;
+            for (int s = firstChildren[parent]; days[s] < day; s = nextSiblings[s]) {
+                previous = s;
+            }
+            int next = previous == NONE ? firstChildren[parent] : nextSiblings[previous];
+            nextSiblings[index] = next;
+            if (previous == NONE) {
+                firstChildren[parent] = index;
+            }
+            else {
+                nextSiblings[previous] = index;
+            }
+        }
+        else {
+            if (previous != NONE) {
+                nextSiblings[previous] = index;
+            }
+            else if (parent != NONE) {
+                firstChildren[parent] = index;
+            }
+            else {
+                firstRoot = index;
+            }
+            if (parent == NONE) {
+                lastRoot = index;
+            }
+            else {
+                lastChildren[parent] = index;
+            }
+        }
+        setPath(depth, index);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    private void setPath(int depth, int index) {
+        if (depth >= path.length) {
+            path = Arrays.copyOf(path, Math.max(depth + 1, path.length * 2));
+        }
+        path[depth] = index;
+        Arrays.fill(path, depth + 1, path.length, NONE); // Deeper Tasks belong to an earlier parent
+    }
+
+    /**
+     * Finds or adds the template with this text and periodCode.
+     * @param title - Task title
+     * @param description - Task description
+     * @param periodCode - Task periodCode, 0 if not recurring
+     * @return its index
+     */
+    int template(String title, String description, int periodCode) {
+        return template(new TaskTemplate(title, description, periodCode));
+    }
+
+    private int template(TaskTemplate t) {
+        Integer index = templateIds.get(t);
+        if (index != null) {
+            return index;
+        }
+        if (templateCount == templateTitles.length) {
+            int capacity = templateCount * 2;
+            templateTitles = Arrays.copyOf(templateTitles, capacity);
+            templateDescriptions = Arrays.copyOf(templateDescriptions, capacity);
+            templatePeriodCodes = Arrays.copyOf(templatePeriodCodes, capacity);
+            rules = Arrays.copyOf(rules, capacity);
+        }
+        templateTitles[templateCount] = text(t.title);
+        templateDescriptions[templateCount] = text(t.description);
+        templatePeriodCodes[templateCount] = t.periodCode;
+        rules[templateCount] = Recurrence.fromCode(t.periodCode);
+        templateIds.put(t, templateCount);
+        return templateCount++;
+    }
+
+    /*Packs a String once, returning its index; null is kept as -1 */
+    private int text(String s) {
+        if (s == null) {
+            return NONE;
+        }
+        Integer index = textIds.get(s);
+        if (index != null) {
+            return index;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (textLength + bytes.length > text.length) {
+            text = Arrays.copyOf(text, Math.max(textLength + bytes.length, text.length * 2));
+        }
+        System.arraycopy(bytes, 0, text, textLength, bytes.length);
+        textLength += bytes.length;
+        if (textCount + 1 == textStarts.length) {
+            textStarts = Arrays.copyOf(textStarts, textStarts.length * 2);
+        }
+        textStarts[++textCount] = textLength;
+        textIds.put(s, textCount - 1);
+        return textCount - 1;
+    }
+
+    /*Trims every column, drops the reading state and builds the indexes */
+    @SuppressWarnings("unchecked")
+    private void finish() {
+        ids = Arrays.copyOf(ids, size);
+        days = Arrays.copyOf(days, size);
+        flags = Arrays.copyOf(flags, size);
+        templates = Arrays.copyOf(templates, size);
+        parents = Arrays.copyOf(parents, size);
+        firstChildren = Arrays.copyOf(firstChildren, size);
+        nextSiblings = Arrays.copyOf(nextSiblings, size);
+        templateTitles = Arrays.copyOf(templateTitles, templateCount);
+        templateDescriptions = Arrays.copyOf(templateDescriptions, templateCount);
+        templatePeriodCodes = Arrays.copyOf(templatePeriodCodes, templateCount);
+        text = Arrays.copyOf(text, textLength);
+        textStarts = Arrays.copyOf(textStarts, textCount + 1);
+        decoded = new TaskTemplate[DECODED_SLOTS];
+        decodedIndexes = new int[DECODED_SLOTS];
+        Arrays.fill(decodedIndexes, NONE);
+        views = new WeakReference[size];
+        path = null;
+        lastChildren = null;
+        textIds = null;
+        templateIds = null;
+        rules = null;
+
+        /*Date in the high half and index counted back in the low half: by date, then last read first */
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (long) days[i] << 32 | (size - 1 - i);
+        }
+        Arrays.sort(keys);
+        byDate = new int[size];
+        for (int i = 0; i < size; i++) {
+            byDate[i] = size - 1 - (int) keys[i];
+        }
+
+        byId = new int[nextId];
+        Arrays.fill(byId, NONE);
+        for (int i = 0; i < size; i++) {
+            byId[ids[i]] = i;
+        }
+    }
+
+    /**
+     * @return number of Tasks, subTasks included
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param id - stable id of a Task
+     * @return its index, -1 if no Task has that id
+     */
+    public int indexOf(int id) {
+        return id >= 0 && id < byId.length ? byId[id] : NONE;
+    }
+
+    /**
+     * @param id - stable id of a Task
+     * @return a view of the Task, null if no Task has that id
+     */
+    public Task getTask(int id) {
+        int index = indexOf(id);
+        return index == NONE ? null : view(index);
+    }
+
+    /**
+     * Makes a Task holding the fields of one stored Task, or hands out
+     * the one made before if it is still in use. Its subTasks are not
+     * filled in; see firstChild and subTasks. For a Manager's store,
+     * reading them builds the Manager's Tasks.
+     * @param index - index of the Task
+     * @return the view, not in any Manager until the Manager builds its
+     * Tasks
+     */
+    public synchronized Task view(int index) {
+        Task t = views[index] == null ? null : views[index].get();
+        if (t == null) {
+            t = new Task(decode(templates[index]), LocalDate.ofEpochDay(days[index]));
+            t.complete = (flags[index] & COMPLETE) != 0;
+            t.id = ids[index];
+            if (firstChildren[index] != NONE) {
+                t.subTaskLoader = loader;
+            }
+            views[index] = new WeakReference<Task>(t);
+        }
+        return t;
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return views of its subTasks, in the order they were read
+     */
+    public List<Task> subTasks(int index) {
+        List<Task> subTasks = new ArrayList<Task>();
+        for (int s = firstChildren[index]; s != NONE; s = nextSiblings[s]) {
+            subTasks.add(view(s));
+        }
+        return subTasks;
+    }
+
+    /**
+     * @return index of the first Task that is not a subTask, -1 if empty;
+     * the rest follow through nextSibling
+     */
+    public int firstRoot() {
+        return firstRoot;
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return index of its first subTask, -1 if it has none
+     */
+    public int firstChild(int index) {
+        return firstChildren[index];
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return index of the next subTask of the same parent, or the next
+     * root for a root, -1 if it is the last
+     */
+    public int nextSibling(int index) {
+        return nextSiblings[index];
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return index of the Task it is a subTask of, -1 if none
+     */
+    public int parent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return its depth, 0 if not a subTask
+     */
+    public int depth(int index) {
+        int depth = 0;
+        for (int p = parents[index]; p != NONE; p = parents[p]) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return its stable id
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return its title
+     */
+    public String getTitle(int index) {
+        return decode(templates[index]).title;
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return its description
+     */
+    public String getDescription(int index) {
+        return decode(templates[index]).description;
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return its due date
+     */
+    public LocalDate getDate(int index) {
+        return LocalDate.ofEpochDay(days[index]);
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return True if it is complete
+     */
+    public boolean isComplete(int index) {
+        return (flags[index] & COMPLETE) != 0;
+    }
+
+    /**
+     * @param index - index of a Task
+     * @return its periodCode, 0 if it does not recur
+     */
+    public int getPeriodCode(int index) {
+        return templatePeriodCodes[templates[index]];
+    }
+
+    /**
+     * Tasks due in a date range, subTasks included. Finding the range is
+     * O(log n), and each Task is made as it is read from the list.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     * @return views of the Tasks with from <= date <= to, in date order
+     */
+    public List<Task> between(LocalDate from, LocalDate to) {
+        int start = from == null ? 0 : firstOnOrAfter(from.toEpochDay());
+        int end = to == null ? size : firstOnOrAfter(to.toEpochDay() + 1);
+        return new AbstractList<Task>() {
+            @Override
+            public Task get(int i) {
+                if (i < 0 || i >= end - start) {
+                    throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (end - start));
+                }
+                return view(byDate[start + i]);
+            }
+
+            @Override
+            public int size() {
+                return Math.max(0, end - start);
+            }
+        };
+    }
+
+    /**
+     * Tasks in a date range that pass a filter, copied so the list does
+     * not hold the store.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     * @param filter - which Tasks in the range to keep, null for all
+     * @return views of the matching Tasks, in date order
+     */
+    public List<Task> query(LocalDate from, LocalDate to, Predicate<? super Task> filter) {
+        List<Task> range = between(from, to);
+        List<Task> found = new ArrayList<Task>(filter == null ? range.size() : 0);
+        for (Task t : range) {
+            if (filter == null || filter.test(t)) {
+                found.add(t);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Incomplete Tasks in a date range. Complete ones are skipped by
+     * their flags, without being made.
+     * @param from - first date to include, or null for no lower bound
+     * @param to - last date to include, or null for no upper bound
+     * @return views of the incomplete Tasks, in date order
+     */
+    public List<Task> incomplete(LocalDate from, LocalDate to) {
+        List<Task> incomplete = new ArrayList<Task>();
+        int start = from == null ? 0 : firstOnOrAfter(from.toEpochDay());
+        int end = to == null ? size : firstOnOrAfter(to.toEpochDay() + 1);
+        for (int i = start; i < end; i++) {
+            int index = byDate[i];
+            if ((flags[index] & COMPLETE) == 0) {
+                incomplete.add(view(index));
+            }
+        }
+        return incomplete;
+    }
+
+    /**
+     * @param day - date to look up
+     * @return views of the Tasks due on day
+     */
+    public List<Task> dueOn(LocalDate day) {
+        return between(day, day);
+    }
+
+    /**
+     * @param asOf - date to count as today
+     * @return views of the incomplete Tasks due before asOf, in date order
+     */
+    public List<Task> overdue(LocalDate asOf) {
+        return incomplete(null, asOf.minusDays(1));
+    }
+
+    /**
+     * @return number of Tasks that are not complete
+     */
+    public int incompleteCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += ~flags[i] & COMPLETE;
+        }
+        return count;
+    }
+
+    /*Position in byDate of the first Task due on or after day */
+    private int firstOnOrAfter(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[byDate[mid]] < day) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*Template with its text decoded, from the cache if it is there */
+    private synchronized TaskTemplate decode(int template) {
+        int slot = template & (DECODED_SLOTS - 1);
+        if (decodedIndexes[slot] != template) {
+            decoded[slot] = new TaskTemplate(string(templateTitles[template]),
+                string(templateDescriptions[template]), templatePeriodCodes[template]);
+            decodedIndexes[slot] = template;
+        }
+        return decoded[slot];
+    }
+
+    private String string(int index) {
+        if (index == NONE) {
+            return null;
+        }
+        int start = textStarts[index];
+        return new String(text, start, textStarts[index + 1] - start, StandardCharsets.UTF_8);
+    }
+}
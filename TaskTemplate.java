@@ -0,0 +1,128 @@
+/*
+ * File for the TaskTemplate class, the part of a Task its occurrences
+ * can share.
+ */
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Title, description and periodCode of a Task. Immutable, so any number
+ * of Tasks can point at one TaskTemplate: the days of a weekly Task
+ * created together, or every Task read from storage with the same text
+ * and rule. Changing a Task's title, description or periodCode gives
+ * that Task a new TaskTemplate and leaves the others as they were.
+ *
+ * Templates are equal when all three fields are, which is what Pool and
+ * the binary storage format use to store each one once.
+ * Instance Variables:
+ * String title: Task title
+ * String description: Task description
+ * int periodCode: Task periodCode, 0 if not recurring
+ */
+public class TaskTemplate {
+    final String title;
+    final String description;
+    final int periodCode;
+
+    /**
+     * Constructor to create a TaskTemplate.
+     * @param title - Task title
+     * @param description - Task description
+     * @param periodCode - Task periodCode, 0 if not recurring
+     */
+    public TaskTemplate(String title, String description, int periodCode) {
+        this.title = title;
+        this.description = description;
+        this.periodCode = periodCode;
+    }
+
+    /**
+     * @return the title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return the description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the periodCode, 0 if not recurring
+     */
+    public int getPeriodCode() {
+        return periodCode;
+    }
+
+    /**
+     * @param newTitle - title of the copy
+     * @return a TaskTemplate like this one with a different title
+     */
+    TaskTemplate withTitle(String newTitle) {
+        return new TaskTemplate(newTitle, description, periodCode);
+    }
+
+    /**
+     * @param newDescription - description of the copy
+     * @return a TaskTemplate like this one with a different description
+     */
+    TaskTemplate withDescription(String newDescription) {
+        return new TaskTemplate(title, newDescription, periodCode);
+    }
+
+    /**
+     * @param newPeriodCode - periodCode of the copy
+     * @return a TaskTemplate like this one with a different periodCode
+     */
+    TaskTemplate withPeriodCode(int newPeriodCode) {
+        return new TaskTemplate(title, description, newPeriodCode);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TaskTemplate)) {
+            return false;
+        }
+        TaskTemplate other = (TaskTemplate) o;
+        return periodCode == other.periodCode && Objects.equals(title, other.title)
+            && Objects.equals(description, other.description);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Objects.hashCode(title) * 31 + Objects.hashCode(description)) * 31 + periodCode;
+    }
+
+    /*
+     * Hands out one TaskTemplate per distinct title, description and
+     * periodCode while a file is read, and one String per distinct title
+     * or description, so repeated text is held once however many Tasks
+     * use it. Not thread safe; each Manager reading a chunk has its own.
+     */
+    static class Pool {
+        final Map<TaskTemplate, TaskTemplate> templates = new HashMap<TaskTemplate, TaskTemplate>();
+        final Map<String, String> strings = new HashMap<String, String>();
+
+        TaskTemplate share(String title, String description, int periodCode) {
+            TaskTemplate t = new TaskTemplate(title, description, periodCode);
+            TaskTemplate shared = templates.get(t);
+            if (shared == null) {
+                shared = new TaskTemplate(share(title), share(description), periodCode);
+                templates.put(shared, shared);
+            }
+            return shared;
+        }
+
+        String share(String s) {
+            if (s == null) {
+                return null;
+            }
+            String shared = strings.putIfAbsent(s, s);
+            return shared == null ? s : shared;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * File for the ConcurrencyBenchmark, which checks that a Manager stays
+ * consistent under concurrent readers and a writer, and measures how its
+ * read throughput grows with the number of reader threads.
+ */
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Fills a Manager with TaskGenerator, then for each number of reader
+ * threads runs them for a while next to one writer thread. Readers look
+ * Tasks up by id and query days and weeks; the writer retitles, moves,
+ * completes, reopens, adds and removes Tasks at a fixed rate, the way a
+ * UI, autosave and reminder threads would share one Manager.
+ *
+ * Every run is done twice: once through the Manager's own locking, and
+ * once with every call synchronized on one monitor, which is what
+ * callers had to do before and lets only one reader in at a time.
+ *
+ * Once the threads stop the Manager is checked: allTasks and tasks in
+ * date order, every Task reachable from tasks, byId pointing at each,
+ * and the incomplete lists holding exactly the incomplete Tasks. Any exception in a thread or a broken check ends the benchmark.
+ * Reads per second only grow with readers while there are free cores,
+ * so the cores the JVM sees are printed with the results.
+ * Usage: mvn -P jmh compile, then java -cp target/classes ConcurrencyBenchmark
+ * [tasks] [readerCounts] [seconds] [writesPerSecond]
+ * where readerCounts is comma separated, e.g. 1,2,4,8
+ */
+public class ConcurrencyBenchmark {
+    private static final int DEFAULT_TASKS = 100000;
+    private static final String DEFAULT_READERS = "1,2,4,8";
+    private static final double DEFAULT_SECONDS = 2;
+    private static final int DEFAULT_WRITES_PER_SECOND = 2000;
+    private static final double WARMUP_SECONDS = 1;
+    private static final int MAX_DEPTH = 2;
+    private static final int RECURRING_PERCENT = 0;
+    private static final int DAYS = 730;
+    private static final long SEED = 42;
+
+    /*Reads and writes done by one run */
+    static class Result {
+        long reads;
+        long writes;
+        double seconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASKS;
+        String[] readerCounts = (args.length > 1 ? args[1] : DEFAULT_READERS).split(",");
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_SECONDS;
+        int writesPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_WRITES_PER_SECOND;
+
+        Manager m = new Manager("concurrency-bench"); // Never read or written
+        new TaskGenerator(SEED, MAX_DEPTH, RECURRING_PERCENT).fill(m, size);
+        check(m);
+        System.out.println(m.allTasks.size() + " tasks, " + Runtime.getRuntime().availableProcessors()
+            + " cores, " + writesPerSecond + " writes/s");
+
+        run(m, 1, WARMUP_SECONDS, writesPerSecond, false);
+        run(m, 1, WARMUP_SECONDS, writesPerSecond, true);
+        for (String countArg : readerCounts) {
+            int readers = Integer.parseInt(countArg.trim());
+            for (boolean exclusive : new boolean[] {false, true}) {
+                Result r = run(m, readers, seconds, writesPerSecond, exclusive);
+                check(m);
+                System.out.printf("%-12s %3d readers %12.0f reads/s %12.0f reads/s/reader %8.0f writes/s%n",
+                    exclusive ? "synchronized" : "Manager", readers, r.reads / r.seconds,
+                    r.reads / r.seconds / readers, r.writes / r.seconds);
+            }
+        }
+    }
+
+    /**
+     * Runs readers and one writer against a Manager for a while.
+     * @param m - Manager to share
+     * @param readers - number of reader threads
+     * @param seconds - how long to run
+     * @param writesPerSecond - rate the writer changes Tasks at
+     * @param exclusive - True to synchronize every call on one monitor
+     * @return reads and writes done
+     */
+    private static Result run(Manager m, int readers, double seconds, int writesPerSecond,
+        boolean exclusive) throws Exception {
+        Object monitor = new Object();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(readers + 1);
+        List<Future<Long>> reads = new ArrayList<Future<Long>>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < readers; i++) {
+            long seed = SEED + i;
+            reads.add(pool.submit(() -> {
+                start.await();
+                return read(m, new Random(seed), stop, exclusive ? monitor : null);
+            }));
+        }
+        Future<Long> writes = pool.submit(() -> {
+            start.await();
+            return write(m, new Random(SEED - 1), stop, writesPerSecond, exclusive ? monitor : null);
+        });
+
+        long began = System.nanoTime();
+        start.countDown();
+        Thread.sleep((long) (seconds * 1000));
+        stop.set(true);
+        Result r = new Result();
+        for (Future<Long> f : reads) {
+            r.reads += f.get(); // Rethrows whatever a reader threw
+        }
+        r.writes = writes.get();
+        r.seconds = (System.nanoTime() - began) / 1e9;
+        pool.shutdown();
+        return r;
+    }
+
+    /*Looks Tasks up until told to stop, returning how many reads it made */
+    private static long read(Manager m, Random rand, AtomicBoolean stop, Object monitor) {
+        LocalDate first = LocalDate.now().minusDays(DAYS / 2);
+        long count = 0;
+        long found = 0;
+        while (!stop.get()) {
+            int kind = rand.nextInt(10);
+            int id = rand.nextInt(m.nextId);
+            LocalDate day = first.plusDays(rand.nextInt(DAYS));
+            if (monitor == null) {
+                found += lookUp(m, kind, id, day);
+            }
+            else {
+                synchronized (monitor) {
+                    found += lookUp(m, kind, id, day);
+                }
+            }
+            count++;
+        }
+        if (found < 0) {
+            throw new IllegalStateException();
+        }
+        return count;
+    }
+
+    /*Half lookups by id, the rest queries of a day or a week */
+    private static int lookUp(Manager m, int kind, int id, LocalDate day) {
+        if (kind < 5) {
+            Task t = m.getTask(id);
+            if (t != null && t.id != id) {
+                throw new IllegalStateException("Task " + id + " found as " + t.id);
+            }
+            return t == null ? 0 : 1;
+        }
+        return (kind < 9 ? m.dueOn(day) : m.between(day, day.plusDays(6))).size();
+    }
+
+    /*Changes Tasks at a fixed rate until told to stop, returning how many changes it made */
+    private static long write(Manager m, Random rand, AtomicBoolean stop, int writesPerSecond,
+        Object monitor) {
+        TaskGenerator generator = new TaskGenerator(rand.nextLong(), 0, RECURRING_PERCENT);
+        long interval = 1_000_000_000L / Math.max(1, writesPerSecond);
+        long next = System.nanoTime();
+        long count = 0;
+        while (!stop.get()) {
+            if (monitor == null) {
+                change(m, rand, generator);
+            }
+            else {
+                synchronized (monitor) {
+                    change(m, rand, generator);
+                }
+            }
+            count++;
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+        return count;
+    }
+
+    private static void change(Manager m, Random rand, TaskGenerator generator) {
+        Task t = m.getTask(rand.nextInt(m.nextId));
+        if (t == null) {
+            return;
+        }
+        switch (rand.nextInt(5)) {
+            case 0:
+                m.setTitle(t, t.getTitle() + "!");
+                break;
+            case 1:
+                m.setDate(t, t.getDate().plusDays(rand.nextInt(15) - 7));
+                break;
+            case 2:
+                if (t.isComplete()) {
+                    m.markIncomplete(t);
+                }
+                else {
+                    m.markComplete(t);
+                }
+                break;
+            case 3:
+                m.addTask(generator.nextTask());
+                break;
+            default:
+                m.removeTask(t, rand.nextBoolean());
+                break;
+        }
+    }
+
+    /*Throws if the Manager's lists and ids disagree */
+    private static void check(Manager m) {
+        checkOrder(m.tasks, "tasks");
+        checkOrder(m.allTasks, "allTasks");
+        checkIncomplete(m.tasks, m.incompleteTasks, "incompleteTasks");
+        checkIncomplete(m.allTasks, m.allIncompleteTasks, "allIncompleteTasks");
+        int ids = 0;
+        for (Task t : m.byId) {
+            if (t != null) {
+                ids++;
+            }
+        }
+        int reachable = 0;
+        Deque<Task> stack = new ArrayDeque<Task>();
+        for (Task t : m.tasks) {
+            if (t.parent != null) {
+                throw new IllegalStateException("Task " + t.id + " in tasks has a parent");
+            }
+            stack.push(t);
+        }
+        while (!stack.isEmpty()) {
+            Task t = stack.pop();
+            reachable++;
+            if (m.byId.get(t.id) != t) {
+                throw new IllegalStateException("byId does not point at Task " + t.id);
+            }
+            for (Task s : t.getSubTasks()) {
+                stack.push(s);
+            }
+        }
+        if (reachable != m.allTasks.size() || ids != reachable) {
+            throw new IllegalStateException(reachable + " Tasks reachable, " + m.allTasks.size()
+                + " in allTasks, " + ids + " ids");
+        }
+    }
+
+    /*Throws unless incomplete holds exactly the incomplete Tasks of all, in date order */
+    private static void checkIncomplete(List<Task> all, List<Task> incomplete, String name) {
+        checkOrder(incomplete, name);
+        Set<Task> expected = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+        for (Task t : all) {
+            if (!t.isComplete()) {
+                expected.add(t);
+            }
+        }
+        for (Task t : incomplete) {
+            if (!expected.remove(t)) {
+                throw new IllegalStateException("Task " + t.id + " in " + name + " is complete, gone or listed twice");
+            }
+        }
+        if (!expected.isEmpty()) {
+            throw new IllegalStateException(expected.size() + " incomplete Tasks missing from " + name);
+        }
+    }
+
+    private static void checkOrder(Iterable<Task> list, String name) {
+        LocalDate last = LocalDate.MIN;
+        for (Task t : list) {
+            if (t.getDate().isBefore(last)) {
+                throw new IllegalStateException(name + " out of date order at Task " + t.id);
+            }
+            last = t.getDate();
+        }
+    }
+}
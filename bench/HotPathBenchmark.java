@@ -0,0 +1,316 @@
+/*
+ * File for the HotPathBenchmark, which times the Manager and Task
+ * operations the UI leans on across store sizes and shapes.
+ */
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+
+/*
+ * For every combination of store size, subTask depth and share of
+ * recurring Tasks, builds a store with TaskGenerator and times each hot
+ * path: a few warmup iterations, then measured ones, each doing a batch
+ * of operations so the timer is not read per call. Bytes allocated by
+ * the timed part are counted too. Anything an operation
+ * adds to the store is taken back out untimed, through the Manager, so
+ * every iteration sees a store of the same size.
+ *
+ * Results are written as CSV, one row per benchmark and parameter set,
+ * so runs can be kept and diffed to spot regressions. A benchmark that
+ * throws gets a row with NaN timings and the exception in the note.
+ * Usage: mvn -P jmh compile, then java -cp target/classes HotPathBenchmark
+ * [sizes] [depths] [recurringPercents] [out.csv]
+ * where the first three are comma separated, e.g. 1000,10000 0,2 0,25
+ */
+public class HotPathBenchmark {
+    private static final String DEFAULT_SIZES = "1000,10000,100000,1000000";
+    private static final String DEFAULT_DEPTHS = "0,2";
+    private static final String DEFAULT_RECURRING = "0,25";
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final int BATCH = 1000;
+    private static final int VIEW_BATCH = 100;
+    private static final int VIEW_DAYS = 7;
+    private static final long SEED = 42;
+    private static final String CSV_HEADER = "benchmark,size,depth,recurringPercent,"
+        + "opsPerIteration,iterations,meanNsPerOp,stdevNsPerOp,minNsPerOp,bytesPerOp,note";
+
+    /*Timed part of one iteration */
+    interface Body {
+        void run() throws Exception;
+    }
+
+    /*Untimed set up for one iteration, returning what to time */
+    interface Setup {
+        Body prepare() throws Exception;
+    }
+
+    /*Untimed clean up after one iteration */
+    interface Teardown {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = parseList(args.length > 0 ? args[0] : DEFAULT_SIZES);
+        int[] depths = parseList(args.length > 1 ? args[1] : DEFAULT_DEPTHS);
+        int[] recurring = parseList(args.length > 2 ? args[2] : DEFAULT_RECURRING);
+        PrintStream out = args.length > 3 ? new PrintStream(new FileOutputStream(args[3]), true, "UTF-8")
+            : System.out;
+
+        File dir = Files.createTempDirectory("flow-control-bench").toFile();
+        out.println(CSV_HEADER);
+        for (int size : sizes) {
+            for (int depth : depths) {
+                for (int percent : recurring) {
+                    String username = new File(dir, "bench-" + size + "-" + depth + "-" + percent).getPath();
+                    runAll(out, username, size, depth, percent);
+                    new File(username + ".txt").delete();
+                    new File(username + ".log").delete();
+                }
+            }
+        }
+        dir.delete();
+        if (out != System.out) {
+            out.close();
+        }
+    }
+
+    private static void runAll(PrintStream out, String username, int size, int depth, int percent)
+        throws IOException {
+        TaskGenerator gen = new TaskGenerator(SEED, depth, percent);
+        Manager m = new Manager(username);
+        gen.fill(m, size);
+        m.writeToStorage();
+        Random rand = new Random(SEED);
+        String params = size + "," + depth + "," + percent;
+
+        List<Task> batch = new ArrayList<Task>();
+        run(out, "Manager.addTask", params, BATCH, () -> {
+            fresh(gen, batch);
+            return () -> {
+                for (Task t : batch) {
+                    m.addTask(t);
+                }
+            };
+        }, () -> removeAll(m, batch));
+
+        List<Task> parents = new ArrayList<Task>();
+        run(out, "Task.addSubTask", params, BATCH, () -> {
+            fresh(gen, batch);
+            pick(m.tasks, rand, parents);
+            return () -> {
+                for (int i = 0; i < BATCH; i++) {
+                    parents.get(i).addSubTask(batch.get(i));
+                }
+            };
+        }, () -> {
+            for (int i = 0; i < BATCH; i++) {
+                parents.get(i).removeSubTask(batch.get(i));
+            }
+            m.clearChanges();
+        });
+
+        /*Through insertToAll, which places the subTask in allTasks */
+        run(out, "Manager.addSubTask", params, BATCH, () -> {
+            fresh(gen, batch);
+            pick(m.tasks, rand, parents);
+            return () -> {
+                for (int i = 0; i < BATCH; i++) {
+                    m.addSubTask(batch.get(i), parents.get(i));
+                }
+            };
+        }, () -> removeAll(m, batch));
+
+        /*A week of incomplete Tasks, filtered out of every Task, then copied from the incomplete list */
+        List<LocalDate> dates = new ArrayList<LocalDate>();
+        run(out, "Manager.query incomplete", params, VIEW_BATCH, () -> {
+            pickDates(gen, VIEW_BATCH, dates);
+            return () -> {
+                int sink = 0;
+                for (LocalDate d : dates) {
+                    sink += m.query(d, d.plusDays(VIEW_DAYS - 1), t -> !t.isComplete()).size();
+                }
+                if (sink < 0) {
+                    throw new IllegalStateException();
+                }
+            };
+        }, () -> {});
+
+        run(out, "Manager.incomplete", params, VIEW_BATCH, () -> {
+            pickDates(gen, VIEW_BATCH, dates);
+            return () -> {
+                int sink = 0;
+                for (LocalDate d : dates) {
+                    sink += m.incomplete(d, d.plusDays(VIEW_DAYS - 1)).size();
+                }
+                if (sink < 0) {
+                    throw new IllegalStateException();
+                }
+            };
+        }, () -> {});
+
+        List<Task> picked = new ArrayList<Task>();
+        run(out, "Task.markComplete", params, BATCH, () -> {
+            pick(m.allTasks, rand, picked);
+            for (Task t : picked) {
+                t.markIncomplete();
+            }
+            return () -> {
+                for (Task t : picked) {
+                    t.markComplete();
+                }
+            };
+        }, m::clearChanges);
+
+        Task[] clones = new Task[BATCH]; // Kept so the copies are not optimised away
+        run(out, "Task.clone", params, BATCH, () -> {
+            pick(m.tasks, rand, picked);
+            return () -> {
+                for (int i = 0; i < BATCH; i++) {
+                    clones[i] = picked.get(i).clone();
+                }
+            };
+        }, () -> Arrays.fill(clones, null));
+
+        run(out, "TaskIndex.lowerBound", params, BATCH, () -> {
+            pickDates(gen, BATCH, dates);
+            return () -> {
+                int sink = 0;
+                for (LocalDate d : dates) {
+                    sink += m.allTasks.lowerBound(d);
+                }
+                if (sink < 0) {
+                    throw new IllegalStateException();
+                }
+            };
+        }, () -> {});
+
+        run(out, "Manager.undo", params, BATCH, () -> {
+            pick(m.allTasks, rand, picked);
+            for (Task t : picked) {
+                m.setTitle(t, t.getTitle());
+            }
+            return () -> {
+                for (int i = 0; i < BATCH; i++) {
+                    m.undo();
+                }
+            };
+        }, () -> {
+            m.history.clear();
+            m.clearChanges();
+        });
+
+        m.search("", 1); // Builds the index untimed
+        List<String> queries = new ArrayList<String>();
+        run(out, "Manager.search", params, BATCH, () -> {
+            queries.clear();
+            for (int i = 0; i < BATCH; i++) {
+                String title = gen.nextTask().getTitle();
+                queries.add(i % 2 == 0 ? title : title.substring(0, 2)); // Whole words, then type-ahead
+            }
+            return () -> {
+                for (String q : queries) {
+                    m.search(q, 50);
+                }
+            };
+        }, () -> {});
+
+        m.beginSnapshot(); // Later snapshots share what did not change
+        run(out, "Manager.beginSnapshot", params, 1, () -> {
+            Task t = m.allTasks.get(rand.nextInt(m.allTasks.size()));
+            m.setTitle(t, t.getTitle());
+            return m::beginSnapshot;
+        }, () -> m.history.clear());
+
+        run(out, "Manager.readStorage", params, 1, () -> () -> new Manager(username).readStorage(),
+            () -> {});
+
+        run(out, "Manager.writeToStorage", params, 1, () -> m::writeToStorage, () -> {});
+    }
+
+    /*
+     * Runs warmup and measured iterations and prints one CSV row. The
+     * mean, spread and best are per operation.
+     */
+    private static void run(PrintStream out, String name, String params, int ops, Setup setup,
+        Teardown teardown) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        double[] samples = new double[MEASURED_ITERATIONS];
+        long allocated = 0;
+        try {
+            System.gc();
+            for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+                Body body = setup.prepare();
+                long startBytes = threads.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                body.run();
+                long elapsed = System.nanoTime() - start;
+                long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+                teardown.run();
+                if (i >= WARMUP_ITERATIONS) {
+                    samples[i - WARMUP_ITERATIONS] = (double) elapsed / ops;
+                    allocated += bytes;
+                }
+            }
+        } catch (Exception e) {
+            out.println(name + "," + params + "," + ops + ",0,NaN,NaN,NaN,NaN,\""
+                + e.toString().replace("\"", "\"\"") + "\"");
+            return;
+        }
+        double mean = 0;
+        double min = Double.MAX_VALUE;
+        for (double s : samples) {
+            mean += s / samples.length;
+            min = Math.min(min, s);
+        }
+        double variance = 0;
+        for (double s : samples) {
+            variance += (s - mean) * (s - mean) / (samples.length - 1);
+        }
+        out.printf(Locale.ROOT, "%s,%s,%d,%d,%.1f,%.1f,%.1f,%.1f,%n", name, params, ops,
+            samples.length, mean, Math.sqrt(variance), min, (double) allocated / ops / samples.length);
+    }
+
+    private static void fresh(TaskGenerator gen, List<Task> batch) {
+        batch.clear();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(gen.nextTask());
+        }
+    }
+
+    /*Dates spread like the store's */
+    private static void pickDates(TaskGenerator gen, int count, List<LocalDate> dates) {
+        dates.clear();
+        for (int i = 0; i < count; i++) {
+            dates.add(gen.nextTask().getDate());
+        }
+    }
+
+    private static void pick(List<Task> from, Random rand, List<Task> picked) {
+        picked.clear();
+        for (int i = 0; i < BATCH; i++) {
+            picked.add(from.get(rand.nextInt(from.size())));
+        }
+    }
+
+    /*Takes Tasks a benchmark added back out through the Manager, forgetting the undo steps */
+    private static void removeAll(Manager m, List<Task> added) {
+        for (Task t : added) {
+            m.removeTask(t, true);
+        }
+        m.history.clear();
+        m.clearChanges();
+    }
+
+    private static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * File for HotPathOps, the app side of the JMH benchmarks.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+
+/*
+ * Runs the hot paths in benchmarks.HotPaths against a TaskGenerator store,
+ * the same way HotPathBenchmark does. Made by name from the benchmarks,
+ * which cannot name classes in the default package.
+ *
+ * Instance Variables:
+ * File dir: temporary directory holding the store's files
+ * String username: path of the store's file, without its extension
+ * TaskGenerator gen: makes the store and the Tasks added to it
+ * Manager m: the store
+ * LocalDate[] dates, Task[] picked, String[] queries: inputs to pick from
+ * Recurrence[] rules, LocalDate[] lastDue, boolean[] complete: recurring
+ * Tasks to roll over, spread over the last five years
+ * Random rand: picks parents and Tasks to complete
+ * List<Task> batch: Tasks made for the next batch
+ * List<Task> parents: parent of each Task in batch, for subTasks
+ * List<Task> completing: Tasks for the next markComplete
+ */
+public class HotPathOps implements benchmarks.HotPaths {
+    File dir;
+    String username;
+    TaskGenerator gen;
+    Manager m;
+    LocalDate[] dates;
+    Task[] picked;
+    String[] queries;
+    Recurrence[] rules;
+    LocalDate[] lastDue;
+    boolean[] complete;
+    Random rand;
+    List<Task> batch;
+    List<Task> parents;
+    List<Task> completing;
+
+    /*Constants */
+    private final static long SEED = 42;
+    private final static int VIEW_DAYS = 7;
+    private final static int SEARCH_LIMIT = 50;
+    private final static int YEARS_BACK = 5;
+
+    @Override
+    public void setUp(int size, int depth, int recurringPercent) throws IOException {
+        dir = Files.createTempDirectory("flow-control-jmh").toFile();
+        username = new File(dir, "bench").getPath();
+        gen = new TaskGenerator(SEED, depth, recurringPercent);
+        m = new Manager(username);
+        gen.fill(m, size);
+        m.writeToStorage();
+        m.search("", 1); // Builds the index
+
+        rand = new Random(SEED);
+        LocalDate today = LocalDate.now();
+        dates = new LocalDate[PICKS];
+        picked = new Task[PICKS];
+        queries = new String[PICKS];
+        rules = new Recurrence[PICKS];
+        lastDue = new LocalDate[PICKS];
+        complete = new boolean[PICKS];
+        for (int i = 0; i < PICKS; i++) {
+            dates[i] = gen.nextTask().getDate();
+            picked[i] = m.tasks.get(rand.nextInt(m.tasks.size()));
+            String title = gen.nextTask().getTitle();
+            queries[i] = i % 2 == 0 ? title : title.substring(0, 2); // Whole words, then type-ahead
+            rules[i] = new Recurrence(Recurrence.DAILY + rand.nextInt(Recurrence.YEARLY), today.plusYears(2));
+            lastDue[i] = today.minusDays(rand.nextInt(365 * YEARS_BACK));
+            complete[i] = rand.nextBoolean();
+        }
+        batch = new ArrayList<Task>();
+        parents = new ArrayList<Task>();
+        completing = new ArrayList<Task>();
+    }
+
+    @Override
+    public void tearDown() {
+        new File(username + ".txt").delete();
+        new File(username + ".log").delete();
+        dir.delete();
+    }
+
+    @Override
+    public void prepareBatch() {
+        batch.clear();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(gen.nextTask());
+        }
+    }
+
+    @Override
+    public void addBatch() {
+        for (Task t : batch) {
+            m.addTask(t);
+        }
+    }
+
+    @Override
+    public void removeBatch() {
+        for (Task t : batch) {
+            m.removeTask(t, true);
+        }
+        m.history.clear();
+        m.clearChanges();
+    }
+
+    @Override
+    public void prepareSubTasks() {
+        prepareBatch();
+        parents.clear();
+        for (int i = 0; i < BATCH; i++) {
+            parents.add(m.tasks.get(rand.nextInt(m.tasks.size())));
+        }
+    }
+
+    @Override
+    public void addSubTasks() {
+        for (int i = 0; i < BATCH; i++) {
+            m.addSubTask(batch.get(i), parents.get(i));
+        }
+    }
+
+    @Override
+    public void attachSubTasks() {
+        for (int i = 0; i < BATCH; i++) {
+            parents.get(i).addSubTask(batch.get(i));
+        }
+    }
+
+    @Override
+    public void detachSubTasks() {
+        for (int i = 0; i < BATCH; i++) {
+            parents.get(i).removeSubTask(batch.get(i));
+        }
+        m.clearChanges();
+    }
+
+    @Override
+    public void prepareComplete() {
+        completing.clear();
+        for (int i = 0; i < BATCH; i++) {
+            Task t = m.allTasks.get(rand.nextInt(m.allTasks.size()));
+            t.markIncomplete();
+            completing.add(t);
+        }
+    }
+
+    @Override
+    public int markComplete() {
+        int completed = 0;
+        for (Task t : completing) {
+            if (t.markComplete()) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    @Override
+    public void clearChanges() {
+        m.clearChanges();
+    }
+
+    @Override
+    public int queryIncomplete(int pick) {
+        LocalDate d = dates[pick];
+        return m.query(d, d.plusDays(VIEW_DAYS - 1), t -> !t.isComplete()).size();
+    }
+
+    @Override
+    public int incomplete(int pick) {
+        LocalDate d = dates[pick];
+        return m.incomplete(d, d.plusDays(VIEW_DAYS - 1)).size();
+    }
+
+    @Override
+    public int lowerBound(int pick) {
+        return m.allTasks.lowerBound(dates[pick]);
+    }
+
+    @Override
+    public Object cloneTask(int pick) throws CloneNotSupportedException {
+        return picked[pick].clone();
+    }
+
+    @Override
+    public Object search(int pick) {
+        return m.search(queries[pick], SEARCH_LIMIT);
+    }
+
+    @Override
+    public Object occurrence(int pick) {
+        return rules[pick].occurrence(lastDue[pick], m.date, complete[pick]);
+    }
+
+    @Override
+    public Object readStorage() throws IOException {
+        Manager loaded = new Manager(username);
+        loaded.readStorage();
+        return loaded;
+    }
+
+    @Override
+    public void writeStorage() throws IOException {
+        m.writeToStorage();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * File for the LoaderBenchmark. Compares the byte level loader in
+ * Manager.readStorage against the original line by line loader.
+ */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+
+/*
+ * Writes a synthetic user file, then loads it repeatedly with each
+ * loader and prints the average time and allocation per load.
+ * Allocation is only counted on the calling thread, so the parallel
+ * loader's figure leaves out its worker threads.
+ * Usage: mvn -P jmh compile, then
+ * java -cp target/classes LoaderBenchmark [taskCount] [iterations]
+ */
+public class LoaderBenchmark {
+    private static final int DEFAULT_TASKS = 200000;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MAX_SUBTASKS = 3;
+    private static final char FILE_DELIM = '\t';
+    private static final String TRUE_STRING = "true";
+    private static final int DATE_OFFSET = 8;
+    private static final int DATE_SKIP = 9;
+    private static final int MMDD_DIGITS = 10000;
+    private static final int DD_DIGITS = 100;
+
+    public static void main(String[] args) throws IOException {
+        int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASKS;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+        File dir = Files.createTempDirectory("flow-control-bench").toFile();
+        String username = new File(dir, "bench").getPath();
+        writeSample(username, taskCount);
+        System.out.println("File size: " + new File(username + ".txt").length() + " bytes");
+
+        /*Both loaders must agree before timing means anything */
+        Manager lines = new Manager(username);
+        readStorageLines(lines);
+        Manager bytes = new Manager(username);
+        bytes.readStorage();
+        if (!sameTasks(lines.allTasks, bytes.allTasks) || lines.tasks.size() != bytes.tasks.size()) {
+            throw new IllegalStateException("Loaders disagree");
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            readStorageLines(new Manager(username));
+            new Manager(username).readStorage();
+        }
+        report("readStorageLines", username, iterations, LoaderBenchmark::readStorageLines);
+        report("readStorage", username, iterations, m -> m.readStorage());
+        report("readStorage lazy", username, iterations, m -> {
+            m.setLazyLoading(true);
+            m.readStorage();
+        });
+        report("readStorage parallel", username, iterations, m -> {
+            m.setParallelLoading(true);
+            m.readStorage();
+        });
+
+        new File(username + ".txt").delete();
+        dir.delete();
+    }
+
+    /**
+     * Writes a file of roughly taskCount Tasks, a mix of recurring and
+     * one time Tasks with a few levels of subTasks.
+     * @param username - path of the file to write, without '.txt'
+     * @param taskCount - number of Tasks to generate
+     * @throws IOException
+     */
+    static void writeSample(String username, int taskCount) throws IOException {
+        Manager m = new Manager(username);
+        Random rand = new Random(42);
+        LocalDate start = m.date.minusYears(1);
+        int written = 0;
+        while (written < taskCount) {
+            LocalDate d = start.plusDays(rand.nextInt(730));
+            int periodCode = 0;
+            if (rand.nextInt(4) == 0) {
+                LocalDate until = d.plusYears(2);
+                periodCode = (1 + rand.nextInt(4)) * 100000000 + until.getYear() * 10000
+                    + until.getMonthValue() * 100 + until.getDayOfMonth();
+            }
+            Task t = new Task("Task " + written, "Description of task " + written, d, periodCode);
+            if (rand.nextBoolean()) {
+                t.markComplete();
+            }
+            m.addTask(t);
+            written++;
+            int subs = rand.nextInt(MAX_SUBTASKS + 1);
+            for (int i = 0; i < subs && written < taskCount; i++) {
+                m.addSubTask(new Task("Sub " + written, d.minusDays(i)), t);
+                written++;
+            }
+        }
+        m.writeToStorage();
+    }
+
+    /**
+     * Original line by line loader that readStorage replaced. Builds
+     * every field through a StringBuilder and Integer.parseInt. Does not
+     * replay the journal.
+     * @param m - Manager to load, freshly made
+     * @return True if username file exists, false otherwise
+     * @throws IOException
+     */
+    static boolean readStorageLines(Manager m) throws IOException {
+        long stamp = m.lockWrite();
+        try {
+            String fileName = m.username + ".txt";
+            File userFile = new File(fileName);
+            if (!userFile.exists()) {
+                userFile.createNewFile();
+                return false;
+            }
+
+            /*Buffered Reader to read line by line */
+            BufferedReader creator = new BufferedReader(new FileReader(fileName, StandardCharsets.UTF_8));
+
+            String currLine = creator.readLine();
+            currLine = creator.readLine();
+
+            /*StringBuilder to store each part of the Line as it is read */
+            StringBuilder sb = new StringBuilder();
+
+            /*As Manager.beginLoad does before reading a whole file */
+            m.loadPath.clear();
+            m.loadId = m.byId.size();
+
+            /*While loop to iterate through every line until null */
+            while(!(currLine == null || currLine.equals(Manager.FILE_END))) {
+
+                int index = 0;
+                int currDepth = 0;
+                /*Calculates the depth*/
+                while (currLine.charAt(index) != FILE_DELIM) {
+                    currDepth++;
+                    index++;
+                }
+                index++;
+                Task t = new Task();
+
+                sb.setLength(0); // Clear the StringBuilder
+
+                /*Iterate until next tab to get Title */
+                while (currLine.charAt(index) != FILE_DELIM) {
+                    sb.append(currLine.charAt(index));
+                    index++;
+                }
+                t.setTitle(sb.toString());
+                index++;
+
+                sb.setLength(0);
+
+                /*Iterate until next tab to get Description */
+                while (currLine.charAt(index) != FILE_DELIM) {
+                    sb.append(currLine.charAt(index));
+                    index++;
+                }
+                t.setDescription(sb.toString());
+                index++;
+
+                sb.setLength(0);
+
+                int date = Integer.parseInt(currLine.substring(index, index + DATE_OFFSET));
+                t.setDate(LocalDate.of(date / MMDD_DIGITS, (date % MMDD_DIGITS) / DD_DIGITS,
+                    date % DD_DIGITS));
+
+                index += DATE_SKIP;
+
+                /*Iterate until next tab to get true / false*/
+                while (currLine.charAt(index) != FILE_DELIM) {
+                    sb.append(currLine.charAt(index));
+                    index++;
+                }
+                if (sb.toString().equals(TRUE_STRING)) {
+                    t.markComplete();
+                }
+                index++;
+
+                int id = -1;
+                int idStart = currLine.indexOf(FILE_DELIM, index);
+                if (idStart < 0) {
+                    t.setPeriodCode(Integer.parseInt(currLine.substring(index)));
+                }
+                else {
+                    t.setPeriodCode(Integer.parseInt(currLine.substring(index, idStart)));
+                    id = Integer.parseInt(currLine.substring(idStart + 1));
+                }
+
+                m.loadTask(t, currDepth, id);
+                currLine = creator.readLine();
+            }
+            creator.close();
+            return true;
+        } finally {
+            m.unlockWrite(stamp);
+        }
+    }
+
+    /*One way of loading a Manager */
+    interface Loader {
+        void load(Manager m) throws IOException;
+    }
+
+    private static void report(String name, String username, int iterations, Loader loader)
+        throws IOException {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            loader.load(new Manager(username));
+        }
+        long elapsed = System.nanoTime() - startTime;
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+        System.out.printf("%-22s %10.2f ms/load %12d bytes allocated/load%n", name,
+            elapsed / 1e6 / iterations, allocated / iterations);
+    }
+
+    private static boolean sameTasks(List<Task> a, List<Task> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            Task x = a.get(i);
+            Task y = b.get(i);
+            if (!x.getTitle().equals(y.getTitle()) || !x.getDescription().equals(y.getDescription())
+                || !x.getDate().equals(y.getDate()) || x.isComplete() != y.isComplete()
+                || x.getPeriodCode() != y.getPeriodCode()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * File for the RecurrenceBenchmark. Compares Recurrence.occurrence against
+ * the step by step loops readStorage used to roll recurring Tasks over.
+ */
+import java.time.LocalDate;
+import java.util.Random;
+
+/*
+ * Rolls the same random recurring Tasks over with both approaches, checks
+ * they agree and prints the average time per Task for each period.
+ * Usage: mvn -P jmh compile, then
+ * java -cp target/classes RecurrenceBenchmark [tasks] [yearsBack]
+ */
+public class RecurrenceBenchmark {
+    private static final int DEFAULT_TASKS = 100000;
+    private static final int DEFAULT_YEARS_BACK = 5;
+    private static final int ROUNDS = 5;
+    private static final String[] PERIOD_NAMES = {"", "daily", "weekly", "monthly", "yearly"};
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASKS;
+        int yearsBack = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_YEARS_BACK;
+        LocalDate today = LocalDate.now();
+        Random rand = new Random(42);
+
+        for (int period = Recurrence.DAILY; period <= Recurrence.YEARLY; period++) {
+            LocalDate[] dates = new LocalDate[count];
+            boolean[] complete = new boolean[count];
+            Recurrence[] rules = new Recurrence[count];
+            for (int i = 0; i < count; i++) {
+                dates[i] = today.minusDays(rand.nextInt(365 * yearsBack));
+                complete[i] = rand.nextBoolean();
+                rules[i] = new Recurrence(period, today.plusDays(rand.nextInt(365 * 2) - 30));
+            }
+
+            for (int i = 0; i < count; i++) {
+                LocalDate expected = loopOccurrence(rules[i], dates[i], today, complete[i]);
+                LocalDate actual = rules[i].occurrence(dates[i], today, complete[i]);
+                if (expected == null ? actual != null : !expected.equals(actual)) {
+                    throw new IllegalStateException(PERIOD_NAMES[period] + " from " + dates[i]
+                        + ": loop gives " + expected + ", Recurrence gives " + actual);
+                }
+            }
+
+            long loopNanos = Long.MAX_VALUE;
+            long closedNanos = Long.MAX_VALUE;
+            int sink = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    LocalDate d = loopOccurrence(rules[i], dates[i], today, complete[i]);
+                    sink += d == null ? 0 : d.getDayOfMonth();
+                }
+                loopNanos = Math.min(loopNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    LocalDate d = rules[i].occurrence(dates[i], today, complete[i]);
+                    sink += d == null ? 0 : d.getDayOfMonth();
+                }
+                closedNanos = Math.min(closedNanos, System.nanoTime() - start);
+            }
+            System.out.printf("%-8s loop %8.1f ns/task   Recurrence %8.1f ns/task   (%d)%n",
+                PERIOD_NAMES[period], (double) loopNanos / count, (double) closedNanos / count, sink);
+        }
+    }
+
+    /**
+     * The rollover readStorage used before Recurrence, one period at a time.
+     * @return date of the current occurrence, or null if the Task no longer recurs
+     */
+    static LocalDate loopOccurrence(Recurrence r, LocalDate date, LocalDate today, boolean complete) {
+        LocalDate until = r.getUntil();
+        if (r.getPeriod() == Recurrence.DAILY) {
+            if (today.isAfter(until)) {
+                return null;
+            }
+            return today.isAfter(date) ? today : date;
+        }
+        LocalDate newDate = date;
+        boolean jumpedFlag = false;
+        while (newDate.isBefore(today)) {
+            newDate = step(newDate, r.getPeriod(), 1);
+            jumpedFlag = true;
+        }
+        if (jumpedFlag && !complete) {
+            newDate = step(newDate, r.getPeriod(), -1);
+        }
+        if (newDate.isAfter(until)) {
+            return null;
+        }
+        return newDate;
+    }
+
+    private static LocalDate step(LocalDate d, int period, int amount) {
+        if (period == Recurrence.WEEKLY) {
+            return d.plusWeeks(amount);
+        }
+        if (period == Recurrence.MONTHLY) {
+            return d.plusMonths(amount);
+        }
+        return d.plusYears(amount);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * File for the TaskGenerator, which builds synthetic Task stores for the
+ * benchmarks.
+ */
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Random;
+
+/*
+ * Fills a Manager with realistic looking Tasks: dates spread a year either
+ * side of today, about half of them complete, a share of them recurring
+ * with a mix of periods, and subTask trees down to a given depth with
+ * fewer subTasks at each level. The same seed always gives the same Tasks.
+ * Usage: mvn -P jmh compile, then java -cp target/classes TaskGenerator
+ * username [tasks] [maxDepth] [recurringPercent] [binary]
+ *
+ * Instance Variables:
+ * Random rand: source of every choice, seeded for repeatable stores
+ * int maxDepth: deepest level of subTasks, 0 for none
+ * int recurringPercent: share of Tasks that recur, 0 to 100
+ * LocalDate today: date the generated dates are spread around
+ */
+public class TaskGenerator {
+    Random rand;
+    int maxDepth;
+    int recurringPercent;
+    LocalDate today;
+
+    /*Constants */
+    private final static int DEFAULT_TASKS = 10000;
+    private final static int DEFAULT_DEPTH = 2;
+    private final static int DEFAULT_RECURRING_PERCENT = 25;
+    private final static int DATE_SPREAD_DAYS = 730;
+    private final static int MAX_SUBTASKS = 4;
+    private final static String[] VERBS = {"Review", "Write", "Call", "Plan", "Fix", "Send",
+        "Clean", "Pay", "Book", "Read", "Update", "Prepare"};
+    private final static String[] OBJECTS = {"report", "groceries", "dentist", "budget",
+        "homework", "slides", "laundry", "rent", "flights", "chapter 3", "resume", "taxes"};
+
+    /**
+     * Constructor to create a TaskGenerator.
+     * @param seed - seed for the random choices
+     * @param maxDepth - deepest level of subTasks, 0 for none
+     * @param recurringPercent - share of Tasks that recur, 0 to 100
+     */
+    public TaskGenerator(long seed, int maxDepth, int recurringPercent) {
+        this.rand = new Random(seed);
+        this.maxDepth = maxDepth;
+        this.recurringPercent = recurringPercent;
+        this.today = LocalDate.now();
+    }
+
+    /**
+     * Makes one Task that is not yet in any Manager.
+     * @return the new Task
+     */
+    public Task nextTask() {
+        LocalDate date = today.minusDays(DATE_SPREAD_DAYS / 2).plusDays(rand.nextInt(DATE_SPREAD_DAYS));
+        String title = VERBS[rand.nextInt(VERBS.length)] + " " + OBJECTS[rand.nextInt(OBJECTS.length)];
+        String description = rand.nextInt(3) == 0 ? "" : "Remember to " + title.toLowerCase()
+            + " before " + date.getDayOfWeek().toString().toLowerCase();
+        int periodCode = 0;
+        if (rand.nextInt(100) < recurringPercent) {
+            periodCode = new Recurrence(Recurrence.DAILY + rand.nextInt(Recurrence.YEARLY),
+                date.plusDays(rand.nextInt(DATE_SPREAD_DAYS))).toCode();
+        }
+        Task t = new Task(title, description, date, periodCode);
+        if (rand.nextBoolean()) {
+            t.markComplete();
+        }
+        return t;
+    }
+
+    /**
+     * Adds count Tasks to a Manager, subTasks included.
+     * @param m - Manager to fill
+     * @param count - number of Tasks to add
+     */
+    public void fill(Manager m, int count) {
+        int[] remaining = {count};
+        while (remaining[0] > 0) {
+            Task t = nextTask();
+            m.addTask(t);
+            remaining[0]--;
+            addSubTasks(m, t, 1, remaining);
+        }
+    }
+
+    private void addSubTasks(Manager m, Task parent, int depth, int[] remaining) {
+        if (depth > maxDepth) {
+            return;
+        }
+        int subs = rand.nextInt(MAX_SUBTASKS - depth / 2 + 1);
+        for (int i = 0; i < subs && remaining[0] > 0; i++) {
+            Task sub = nextTask();
+            if (parent.isComplete()) {
+                sub.markComplete(); // A complete Task has no incomplete subTasks
+            }
+            m.addSubTask(sub, parent);
+            remaining[0]--;
+            addSubTasks(m, sub, depth + 1, remaining);
+        }
+    }
+
+    /**
+     * Writes a synthetic <username>.txt, replacing any file and journal
+     * already there.
+     * @param username - path of the file to write, without '.txt'
+     * @param count - number of Tasks to write
+     * @param binary - True to write the BinaryStorage format
+     * @throws IOException
+     */
+    public void write(String username, int count, boolean binary) throws IOException {
+        Manager m = new Manager(username);
+        fill(m, count);
+        m.setBinaryStorage(binary);
+        m.writeToStorage();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java -cp target/classes TaskGenerator username [tasks] "
+                + "[maxDepth] [recurringPercent] [binary]");
+            return;
+        }
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TASKS;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+        int recurring = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_RECURRING_PERCENT;
+        boolean binary = args.length > 4 && Boolean.parseBoolean(args[4]);
+        new TaskGenerator(42, depth, recurring).write(args[0], count, binary);
+    }
+}
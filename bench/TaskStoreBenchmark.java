@@ -0,0 +1,184 @@
+/*
+ * File for the TaskStoreBenchmark. Compares the heap and GC cost of a
+ * store held as Task objects by a Manager with the same store held in
+ * the columns of a TaskStore, behind a Manager with columnar storage on.
+ */
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+
+/*
+ * For each store size, writes a binary file with TaskGenerator and loads
+ * it both ways. For each layout it prints:
+ * heap per Task once loaded, measured after a full collection
+ * load time, and the collections and GC time the loads caused
+ * time of a full collection while the loaded store is live, which is
+ * what tracing every object costs
+ * time of a month long between query, reading every title in it
+ * Both layouts must hold the same Tasks before anything is timed.
+ * Usage: mvn -P jmh compile, then
+ * java -cp target/classes TaskStoreBenchmark [sizes] [iterations]
+ * where sizes is comma separated, e.g. 100000,1000000
+ */
+public class TaskStoreBenchmark {
+    private static final String DEFAULT_SIZES = "100000,1000000";
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int QUERIES = 1000;
+    private static final int MAX_DEPTH = 2;
+    private static final int RECURRING_PERCENT = 25;
+    private static final long SEED = 42;
+
+    /*One way of loading a user's file */
+    interface Loader {
+        Object load(String username) throws IOException;
+    }
+
+    /*A month long range query against a loaded store */
+    interface Query {
+        List<Task> between(Object store, LocalDate from, LocalDate to);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String[] sizes = (args.length > 0 ? args[0] : DEFAULT_SIZES).split(",");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+        File dir = Files.createTempDirectory("flow-control-bench").toFile();
+        for (String sizeArg : sizes) {
+            int size = Integer.parseInt(sizeArg.trim());
+            String username = new File(dir, "store" + size).getPath();
+            new TaskGenerator(SEED, MAX_DEPTH, RECURRING_PERCENT).write(username, size, true);
+
+            Manager m = new Manager(username);
+            m.readStorage();
+            Manager columnar = readColumnar(username);
+            if (columnar.columns == null || !sameTasks(m, columnar)) {
+                throw new IllegalStateException("Manager and TaskStore disagree");
+            }
+            int tasks = columnar.size();
+            m = null;
+            columnar = null;
+
+            System.out.println(size + " generated, " + tasks + " after rolling over, file "
+                + new File(username + ".txt").length() + " bytes");
+            report("Manager", username, tasks, iterations, u -> {
+                Manager loaded = new Manager(u);
+                loaded.readStorage();
+                return loaded;
+            }, (s, from, to) -> ((Manager) s).between(from, to));
+            report("TaskStore", username, tasks, iterations, TaskStoreBenchmark::readColumnar,
+                (s, from, to) -> ((Manager) s).between(from, to));
+            new File(username + ".txt").delete();
+        }
+        dir.delete();
+    }
+
+    private static void report(String name, String username, int tasks, int iterations, Loader loader,
+        Query query) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            loader.load(username);
+        }
+
+        /*Load time and the collections it caused */
+        fullGc();
+        long collections = gcCount();
+        long gcTime = gcMillis();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            loader.load(username);
+        }
+        double loadMs = (System.nanoTime() - start) / 1e6 / iterations;
+        collections = gcCount() - collections;
+        gcTime = gcMillis() - gcTime;
+
+        /*Heap held once loaded, and what a full collection costs with it live */
+        long before = fullGc();
+        Object loaded = loader.load(username);
+        long after = fullGc();
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            System.gc();
+        }
+        double fullGcMs = (System.nanoTime() - start) / 1e6 / iterations;
+
+        /*Month long queries spread over the two years around today */
+        Random rand = new Random(SEED);
+        LocalDate today = LocalDate.now();
+        long titleChars = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            LocalDate from = today.plusDays(rand.nextInt(730) - 365);
+            for (Task t : query.between(loaded, from, from.plusMonths(1))) {
+                titleChars += t.getTitle().length();
+            }
+        }
+        double queryUs = (System.nanoTime() - start) / 1e3 / QUERIES;
+
+        if (titleChars < 0) {
+            throw new IllegalStateException();
+        }
+        Reference.reachabilityFence(loaded); // Held through the full collections and queries
+
+        System.out.printf("%-10s %8.1f bytes/task %9.2f ms/load %6.1f GCs/load %8.2f ms GC/load"
+            + " %8.2f ms full GC live %9.2f us/query%n", name, (double) (after - before) / tasks,
+            loadMs, (double) collections / iterations, (double) gcTime / iterations, fullGcMs, queryUs);
+    }
+
+    /*Collects until the heap stops shrinking, returning the bytes in use */
+    private static long fullGc() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = rt.totalMemory() - rt.freeMemory();
+            if (now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static Manager readColumnar(String username) throws IOException {
+        Manager m = new Manager(username);
+        m.setColumnarStorage(true);
+        m.readStorage();
+        return m;
+    }
+
+    private static boolean sameTasks(Manager m, Manager columnar) {
+        m.loadAllSubTasks();
+        if (m.allTasks.size() != columnar.size()) {
+            return false;
+        }
+        for (Task t : m.allTasks) {
+            Task v = columnar.getTask(t.id);
+            if (v == null || !v.getTitle().equals(t.getTitle())
+                || !v.getDescription().equals(t.getDescription()) || !v.getDate().equals(t.getDate())
+                || v.isComplete() != t.isComplete() || v.getPeriodCode() != t.getPeriodCode()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
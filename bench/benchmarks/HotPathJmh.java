@@ -0,0 +1,183 @@
+/*
+ * File for the HotPathJmh benchmarks, the JMH version of HotPathBenchmark.
+ */
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Times the hot paths in HotPaths with JMH, across store sizes, subTask
+ * depths and shares of recurring Tasks. JMH takes care of warmup, forking
+ * and dead code: every result is returned so it is consumed.
+ * Usage: mvn -P jmh compile exec:exec, with JMH options such as
+ * -Djmh.args="incomplete -p size=1000" to pick benchmarks and parameters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathJmh {
+
+    /*The store, built once per parameter set, and the next input to pick */
+    @State(Scope.Thread)
+    public static class Store {
+        @Param({"1000", "10000", "100000", "1000000"})
+        int size;
+
+        @Param({"0", "2"})
+        int depth;
+
+        @Param({"0", "25"})
+        int recurringPercent;
+
+        HotPaths ops;
+        int pick;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            ops = HotPaths.load();
+            ops.setUp(size, depth, recurringPercent);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            ops.tearDown();
+        }
+
+        int next() {
+            pick = (pick + 1) & (HotPaths.PICKS - 1);
+            return pick;
+        }
+    }
+
+    /*The store, with a batch of new Tasks for each addTask call that is taken back out after it */
+    @State(Scope.Thread)
+    public static class BatchStore extends Store {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            ops.prepareBatch();
+        }
+
+        @TearDown(Level.Invocation)
+        public void remove() {
+            ops.removeBatch();
+        }
+    }
+
+    /*The store, with new subTasks and their parents for each addSubTask call, taken back out after it */
+    @State(Scope.Thread)
+    public static class SubTaskStore extends Store {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            ops.prepareSubTasks();
+        }
+
+        @TearDown(Level.Invocation)
+        public void remove() {
+            ops.removeBatch();
+        }
+    }
+
+    /*As SubTaskStore, for subTasks attached to their parents only */
+    @State(Scope.Thread)
+    public static class AttachStore extends Store {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            ops.prepareSubTasks();
+        }
+
+        @TearDown(Level.Invocation)
+        public void remove() {
+            ops.detachSubTasks();
+        }
+    }
+
+    /*The store, with Tasks marked incomplete for each markComplete call */
+    @State(Scope.Thread)
+    public static class CompleteStore extends Store {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            ops.prepareComplete();
+        }
+
+        @TearDown(Level.Invocation)
+        public void clear() {
+            ops.clearChanges();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HotPaths.BATCH)
+    public void addTask(BatchStore store) {
+        store.ops.addBatch();
+    }
+
+    /*Manager.addSubTask, which places each subTask in allTasks with insertToAll */
+    @Benchmark
+    @OperationsPerInvocation(HotPaths.BATCH)
+    public void insertToAll(SubTaskStore store) {
+        store.ops.addSubTasks();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HotPaths.BATCH)
+    public void addSubTask(AttachStore store) {
+        store.ops.attachSubTasks();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HotPaths.BATCH)
+    public int markComplete(CompleteStore store) {
+        return store.ops.markComplete();
+    }
+
+    @Benchmark
+    public int queryIncomplete(Store store) {
+        return store.ops.queryIncomplete(store.next());
+    }
+
+    @Benchmark
+    public int incomplete(Store store) {
+        return store.ops.incomplete(store.next());
+    }
+
+    @Benchmark
+    public int lowerBound(Store store) {
+        return store.ops.lowerBound(store.next());
+    }
+
+    @Benchmark
+    public Object cloneTask(Store store) throws Exception {
+        return store.ops.cloneTask(store.next());
+    }
+
+    @Benchmark
+    public Object search(Store store) {
+        return store.ops.search(store.next());
+    }
+
+    @Benchmark
+    public Object occurrence(Store store) {
+        return store.ops.occurrence(store.next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public Object readStorage(Store store) throws Exception {
+        return store.ops.readStorage();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public void writeToStorage(Store store) throws Exception {
+        store.ops.writeStorage();
+    }
+}
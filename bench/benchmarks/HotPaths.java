@@ -0,0 +1,148 @@
+/*
+ * File for the HotPaths interface, the operations the JMH benchmarks time.
+ */
+package benchmarks;
+
+/*
+ * The hot paths HotPathBenchmark times, for JMH. JMH benchmarks cannot be
+ * in the default package, and code in a package cannot name the app's
+ * classes, so HotPathOps implements this in the default package and the
+ * benchmarks load it by name through load. Each operation takes a pick,
+ * an index into PICKS dates, Tasks and queries chosen at setUp, so calls
+ * do not repeat the same input.
+ */
+public interface HotPaths {
+    /*Inputs chosen at setUp, a power of two so a pick wraps with a mask */
+    int PICKS = 1024;
+    /*Tasks added, attached or completed per batch */
+    int BATCH = 1000;
+    /*The implementation, in the default package */
+    String IMPLEMENTATION = "HotPathOps";
+
+    /**
+     * @return a new instance of IMPLEMENTATION
+     * @throws ReflectiveOperationException if it is missing or does not
+     * implement HotPaths
+     */
+    static HotPaths load() throws ReflectiveOperationException {
+        return Class.forName(IMPLEMENTATION).asSubclass(HotPaths.class).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Builds a store with TaskGenerator and writes it to a temporary file.
+     * @param size - number of Tasks
+     * @param depth - deepest level of subTasks
+     * @param recurringPercent - share of recurring Tasks
+     * @throws Exception if the store could not be written
+     */
+    void setUp(int size, int depth, int recurringPercent) throws Exception;
+
+    /**
+     * Deletes the store's files.
+     */
+    void tearDown();
+
+    /**
+     * Makes BATCH new Tasks for addBatch.
+     */
+    void prepareBatch();
+
+    /**
+     * Adds the Tasks from prepareBatch through the Manager.
+     */
+    void addBatch();
+
+    /**
+     * Takes the Tasks addBatch or addSubTasks added back out, so the
+     * store keeps its size.
+     */
+    void removeBatch();
+
+    /**
+     * Makes BATCH new Tasks and picks a parent for each, for addSubTasks
+     * and attachSubTasks.
+     */
+    void prepareSubTasks();
+
+    /**
+     * Adds the Tasks from prepareSubTasks under their parents through the
+     * Manager, which places them in allTasks with insertToAll.
+     */
+    void addSubTasks();
+
+    /**
+     * Adds the Tasks from prepareSubTasks under their parents with
+     * Task.addSubTask, leaving the Manager's indexes alone.
+     */
+    void attachSubTasks();
+
+    /**
+     * Takes the Tasks attachSubTasks added back out.
+     */
+    void detachSubTasks();
+
+    /**
+     * Picks BATCH Tasks and marks them incomplete, for markComplete.
+     */
+    void prepareComplete();
+
+    /**
+     * Marks the Tasks from prepareComplete complete with Task.markComplete.
+     * @return number that could be completed
+     */
+    int markComplete();
+
+    /**
+     * Marks every Task as saved after a batch changed them.
+     */
+    void clearChanges();
+
+    /**
+     * @param pick - which date
+     * @return number of incomplete Tasks in a week, filtered out of every Task
+     */
+    int queryIncomplete(int pick);
+
+    /**
+     * @param pick - which date
+     * @return number of incomplete Tasks in a week, copied from the incomplete list
+     */
+    int incomplete(int pick);
+
+    /**
+     * @param pick - which date
+     * @return index of the first Task on or after the date
+     */
+    int lowerBound(int pick);
+
+    /**
+     * @param pick - which Task
+     * @return a deep copy of the Task
+     * @throws Exception if the Task could not be copied
+     */
+    Object cloneTask(int pick) throws Exception;
+
+    /**
+     * @param pick - which query, whole words and type-ahead prefixes in turn
+     * @return Tasks found
+     */
+    Object search(int pick);
+
+    /**
+     * @param pick - which recurring Task
+     * @return the date it rolls over to
+     */
+    Object occurrence(int pick);
+
+    /**
+     * @return the store read back from its file
+     * @throws Exception if the file could not be read
+     */
+    Object readStorage() throws Exception;
+
+    /**
+     * Writes the whole store to its file.
+     * @throws Exception if the file could not be written
+     */
+    void writeStorage() throws Exception;
+}
@@ -0,0 +1,175 @@
+/*
+ * File for the BinaryStorageTest, tests for BinaryStorage.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that Tasks written in the binary format read back as they were,
+ * in the text format too after converting, and that files written as
+ * version 1 and 2 are still read.
+ */
+public class BinaryStorageTest {
+    private static final LocalDate DAY = LocalDate.of(2100, 1, 4); // Far enough ahead that nothing rolls over
+    private static final int WEEKLY = 2;
+
+    @TempDir
+    Path dir;
+
+    /*Each Task with its id, text, date, completion and recurrence, then its subTasks indented */
+    private static List<String> describe(Manager m) {
+        List<String> lines = new ArrayList<String>();
+        for (Task t : m.roots(null, null, null)) {
+            describe(t, "", lines);
+        }
+        return lines;
+    }
+
+    private static void describe(Task t, String indent, List<String> lines) {
+        lines.add(indent + t.getId() + " " + t.getTitle() + "|" + t.getDescription() + " " + t.getDate()
+            + " " + t.isComplete() + " " + t.getPeriodCode());
+        for (Task s : t.getSubTasks()) {
+            describe(s, indent + "  ", lines);
+        }
+    }
+
+    private static Manager read(String user) throws IOException {
+        Manager m = new Manager(user);
+        m.readStorage();
+        return m;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        String user = dir.resolve("round").toString();
+        Manager m = new Manager(user);
+        m.setBinaryStorage(true);
+        int weekly = new Recurrence(WEEKLY, DAY.plusWeeks(8)).toCode();
+        TaskTemplate shared = new TaskTemplate("Standup", "Every Monday", weekly);
+        Task first = new Task(shared, DAY);
+        Task second = new Task(shared, DAY.plusWeeks(1));
+        m.addTask(first);
+        m.addTask(second);
+        Task parent = new Task("Parent ünïcödé", "With a description", DAY.plusDays(2), 0);
+        m.addTask(parent);
+        Task child = new Task("Child", DAY.plusDays(3));
+        m.addSubTask(child, parent);
+        m.addSubTask(new Task("Grandchild", "", DAY.plusDays(1), 0), child);
+        m.markComplete(child.getSubTasks().get(0));
+        m.addTask(new Task("", "", DAY.minusYears(200), 0));
+        m.writeToStorage();
+        assertTrue(BinaryStorage.isBinary(Files.readAllBytes(Paths.get(user + ".txt"))));
+
+        Manager loaded = read(user);
+        assertEquals(describe(m), describe(loaded));
+        assertEquals(m.nextId, loaded.nextId);
+        assertSame(loaded.getTask(first.id).getTemplate(), loaded.getTask(second.id).getTemplate());
+
+        BinaryStorage.convert(user, false);
+        assertFalse(BinaryStorage.isBinary(Files.readAllBytes(Paths.get(user + ".txt"))));
+        assertEquals(describe(m), describe(read(user)));
+        BinaryStorage.convert(user, true);
+        assertEquals(describe(m), describe(read(user)));
+    }
+
+    /*A version 1 or 2 file: no template table, text in each record, ids from version 2 on */
+    private static byte[] oldFile(int version) throws IOException {
+        int weekly = new Recurrence(WEEKLY, DAY.plusWeeks(4)).toCode();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BinaryStorage.MAGIC);
+        out.write(version);
+        varint(out, 3);
+        if (version >= 2) {
+            varint(out, 40);
+        }
+        record(out, version, 0, 10, BinaryStorage.COMPLETE_FLAG, DAY, 0, "Done", "Old");
+        record(out, version, 1, 20, 0, DAY.plusDays(1), 0, "Sub", "");
+        record(out, version, 0, 30, 0, DAY.plusDays(2), weekly, "Weekly", "Repeats");
+        return out.toByteArray();
+    }
+
+    private static void record(OutputStream out, int version, int depth, int id, int flags, LocalDate date,
+        int periodCode, String title, String description) throws IOException {
+        Recurrence r = Recurrence.fromCode(periodCode);
+        varint(out, depth);
+        if (version >= 2) {
+            varint(out, id);
+        }
+        out.write(flags | (r == null ? 0 : r.getPeriod() << BinaryStorage.PERIOD_SHIFT));
+        signedVarint(out, date.toEpochDay());
+        if (r != null) {
+            signedVarint(out, r.untilEpochDay);
+        }
+        string(out, title);
+        string(out, description);
+    }
+
+    private static void varint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void signedVarint(OutputStream out, long value) throws IOException {
+        varint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void string(OutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        varint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void readsOldVersion(String user, int version, List<Integer> ids) throws IOException {
+        Files.write(Paths.get(user + ".txt"), oldFile(version));
+        Manager m = read(user);
+        assertEquals(3, m.size());
+        Task done = m.getTask(ids.get(0));
+        assertEquals("Done", done.getTitle());
+        assertEquals("Old", done.getDescription());
+        assertTrue(done.isComplete());
+        Task sub = m.getTask(ids.get(1));
+        assertSame(done, sub.getParent());
+        assertEquals(DAY.plusDays(1), sub.getDate());
+        Task weekly = m.getTask(ids.get(2));
+        assertEquals("Repeats", weekly.getDescription());
+        assertEquals(new Recurrence(WEEKLY, DAY.plusWeeks(4)).toCode(), weekly.getPeriodCode());
+
+        /*Written back in the current version with the same Tasks */
+        List<String> before = describe(m);
+        m.setBinaryStorage(true);
+        m.writeToStorage();
+        assertEquals(BinaryStorage.VERSION, Files.readAllBytes(Paths.get(user + ".txt"))[BinaryStorage.MAGIC.length]);
+        assertEquals(before, describe(read(user)));
+    }
+
+    @Test
+    public void readsVersion2() throws IOException {
+        String user = dir.resolve("v2").toString();
+        readsOldVersion(user, 2, Arrays.asList(10, 20, 30));
+        assertEquals(40, read(user).nextId);
+    }
+
+    @Test
+    public void readsVersion1InFileOrder() throws IOException {
+        readsOldVersion(dir.resolve("v1").toString(), 1, Arrays.asList(0, 1, 2));
+    }
+
+    @Test
+    public void rejectsNewerVersions() throws IOException {
+        String user = dir.resolve("v9").toString();
+        byte[] data = oldFile(2);
+        data[BinaryStorage.MAGIC.length] = 9;
+        Files.write(Paths.get(user + ".txt"), data);
+        assertThrows(IOException.class, () -> read(user));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * File for the HistoryTest, tests for History and undo/redo through a Manager.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that changes are undone and redone a step at a time, cascades
+ * included, that undone changes are saved like any other, and that a
+ * snapshot shares the copies of subtrees that did not change.
+ */
+public class HistoryTest {
+    private static final LocalDate DAY = LocalDate.of(2100, 1, 4);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void stepsUndoAndRedoInOrder() {
+        History history = new History();
+        List<String> log = new ArrayList<String>();
+        history.begin();
+        history.record(() -> log.add("undo a"), () -> log.add("redo a"));
+        history.begin(); // Nested, still the same step
+        history.record(() -> log.add("undo b"), () -> log.add("redo b"));
+        history.end();
+        history.end();
+        history.record(() -> log.add("undo c"), () -> log.add("redo c")); // A step of its own
+        history.begin();
+        history.end(); // Nothing recorded, no step
+
+        assertTrue(history.undo());
+        assertTrue(history.undo());
+        assertFalse(history.undo());
+        assertEquals(Arrays.asList("undo c", "undo b", "undo a"), log);
+        log.clear();
+        assertTrue(history.redo());
+        assertEquals(Arrays.asList("redo a", "redo b"), log);
+        assertTrue(history.canRedo());
+
+        history.record(() -> { }, () -> { });
+        assertFalse(history.canRedo()); // A new change drops what was undone
+    }
+
+    @Test
+    public void replayingRecordsNothing() {
+        History history = new History();
+        history.record(() -> history.record(() -> { }, () -> { }), () -> { });
+        history.undo();
+        assertFalse(history.canUndo());
+        assertTrue(history.canRedo());
+    }
+
+    @Test
+    public void limitDropsTheOldestSteps() {
+        History history = new History();
+        int[] undone = {0};
+        for (int i = 0; i < 5; i++) {
+            int step = i;
+            history.record(() -> undone[0] = step, () -> { });
+        }
+        history.setLimit(3);
+        while (history.undo()) {
+        }
+        assertEquals(2, undone[0]);
+    }
+
+    @Test
+    public void managerChangesUndoAsOneStep() {
+        Manager m = new Manager(dir.resolve("steps").toString());
+        m.setCascadeCompletion(true);
+        Task parent = new Task("Parent", DAY);
+        m.addTask(parent);
+        Task sub = new Task("Sub", DAY.plusDays(1));
+        m.addSubTask(sub, parent);
+        m.setTitle(parent, "Renamed");
+        m.setDate(sub, DAY.plusDays(3));
+
+        /*Completing the only subTask completes its parent too, and both come back together */
+        m.markComplete(sub);
+        assertTrue(parent.isComplete());
+        assertTrue(m.undo());
+        assertFalse(sub.isComplete());
+        assertFalse(parent.isComplete());
+        assertTrue(m.incompleteTasks.contains(parent));
+
+        assertTrue(m.undo());
+        assertEquals(DAY.plusDays(1), sub.getDate());
+        assertEquals(1, m.allTasks.lowerBound(DAY.plusDays(1)));
+        assertTrue(m.undo());
+        assertEquals("Parent", parent.getTitle());
+        assertTrue(m.undo());
+        assertFalse(parent.hasSubTasks());
+        assertEquals(1, m.size());
+
+        assertTrue(m.redo());
+        assertSame(parent, sub.getParent());
+        assertEquals(2, m.size());
+        assertTrue(m.redo());
+        assertEquals("Renamed", parent.getTitle());
+    }
+
+    @Test
+    public void undoneRemoveIsSaved() throws IOException {
+        String user = dir.resolve("remove").toString();
+        Manager m = new Manager(user);
+        Task parent = new Task("Parent", DAY);
+        m.addTask(parent);
+        m.addSubTask(new Task("Sub", DAY), parent);
+        m.writeToStorage();
+        m.removeTask(parent, true);
+        assertEquals(0, m.size());
+        assertTrue(m.undo());
+        assertEquals(2, m.size());
+        assertSame(parent, m.getTask(parent.getId()));
+        m.writeToStorage();
+
+        Manager loaded = new Manager(user);
+        loaded.readStorage();
+        assertEquals(2, loaded.size());
+        assertEquals("Sub", loaded.getTask(parent.getId()).getSubTasks().get(0).getTitle());
+    }
+
+    @Test
+    public void snapshotsShareUnchangedSubtrees() {
+        Manager m = new Manager(dir.resolve("share").toString());
+        Task changed = new Task("Changed", DAY);
+        Task kept = new Task("Kept", DAY.plusDays(1));
+        m.addTask(changed);
+        m.addTask(kept);
+        m.addSubTask(new Task("Kept sub", DAY), kept);
+        List<Task> first = m.beginSnapshot();
+
+        m.setTitle(changed, "Changed again");
+        List<Task> second = m.beginSnapshot();
+        assertSame(copyOf(first, "Kept"), copyOf(second, "Kept"));
+        assertNotSame(copyOf(first, "Changed"), copyOf(second, "Changed again"));
+        assertEquals("Changed", copyOf(first, "Changed").getTitle()); // Earlier copies never change
+    }
+
+    private static Task copyOf(List<Task> copy, String title) {
+        for (Task t : copy) {
+            if (t.getTitle().equals(title)) {
+                return t;
+            }
+        }
+        throw new AssertionError(title);
+    }
+}
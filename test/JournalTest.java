@@ -0,0 +1,154 @@
+/*
+ * File for the JournalTest, tests for Journal.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that journaled changes come back when the snapshot is read again,
+ * whatever text the Tasks hold, and that a log cut short or holding a bad
+ * record loses no more than that record.
+ */
+public class JournalTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 15);
+
+    @TempDir
+    Path dir;
+
+    /*A journaling Manager with a snapshot of one Task, "Base" */
+    private Manager snapshot(String user) throws IOException {
+        Manager m = new Manager(user);
+        m.setJournaling(true);
+        m.addTask(new Task("Base", DAY));
+        m.writeToStorage();
+        return m;
+    }
+
+    private static Manager reload(String user) throws IOException {
+        Manager m = new Manager(user);
+        m.setJournaling(true);
+        m.readStorage();
+        return m;
+    }
+
+    @Test
+    public void textRoundTrip() throws IOException {
+        String user = dir.resolve("text").toString();
+        Manager m = snapshot(user);
+        Task added = new Task("Tab\there", "Line\nbreak\r\nand \\t a backslash\\", DAY, 0);
+        m.addTask(added);
+        Task base = m.tasks.get(0) == added ? m.tasks.get(1) : m.tasks.get(0);
+        m.setTitle(base, "New\ttitle\n");
+        m.setDescription(base, "\\");
+        m.setDate(base, DAY.plusDays(1));
+        m.saveChanges();
+        assertTrue(new File(user + ".log").exists());
+
+        Manager loaded = reload(user);
+        assertEquals(2, loaded.size());
+        Task t = loaded.getTask(added.id);
+        assertEquals("Tab\there", t.getTitle());
+        assertEquals("Line\nbreak\r\nand \\t a backslash\\", t.getDescription());
+        Task b = loaded.getTask(base.id);
+        assertEquals("New\ttitle\n", b.getTitle());
+        assertEquals("\\", b.getDescription());
+        assertEquals(DAY.plusDays(1), b.getDate());
+    }
+
+    @Test
+    public void escapeRoundTrip() {
+        String[] texts = {"", "plain", "\t\n\r\\", "\\n is not a line break", "end\\"};
+        for (String text : texts) {
+            String escaped = Journal.escape(text);
+            assertEquals(-1, escaped.indexOf('\t'));
+            assertEquals(-1, escaped.indexOf('\n'));
+            assertEquals(text, Journal.unescape(escaped));
+        }
+    }
+
+    @Test
+    public void tornRecordIsTruncated() throws IOException {
+        String user = dir.resolve("torn").toString();
+        Manager m = snapshot(user);
+        m.addTask(new Task("Kept", DAY));
+        m.saveChanges();
+        Path log = Paths.get(user + ".log");
+        long whole = Files.size(log);
+        Files.write(log, "A\t-1\tCut".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        Manager loaded = reload(user);
+        assertEquals(2, loaded.size());
+        assertEquals(whole, Files.size(log));
+
+        /*The next append carries on from the last whole record */
+        loaded.addTask(new Task("After", DAY));
+        loaded.saveChanges();
+        assertEquals(3, reload(user).size());
+    }
+
+    @Test
+    public void badRecordKeepsTheRest() throws IOException {
+        String user = dir.resolve("bad").toString();
+        Manager m = snapshot(user);
+        m.addTask(new Task("First", DAY));
+        m.saveChanges();
+        Path log = Paths.get(user + ".log");
+        Files.write(log, "Q\tnot a record\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        m.addTask(new Task("Second", DAY));
+        m.saveChanges();
+        long length = Files.size(log);
+
+        Manager loaded = reload(user);
+        assertEquals(3, loaded.size());
+        assertEquals(length, Files.size(log));
+    }
+
+    @Test
+    public void oldLogIsReplayedAsWritten() throws IOException {
+        String user = dir.resolve("old").toString();
+        Manager m = snapshot(user);
+        m.addTask(new Task("Back\\slash", DAY));
+        m.saveChanges();
+
+        /*As written before escaping: no format number, text as it is */
+        Path log = Paths.get(user + ".log");
+        String text = new String(Files.readAllBytes(log), StandardCharsets.UTF_8);
+        int headerEnd = text.indexOf('\n');
+        String header = text.substring(0, headerEnd).replaceAll("\r$", "");
+        String records = text.substring(headerEnd + 1).replace("\\\\", "\\");
+        Files.write(log, (header.substring(0, header.lastIndexOf('\t')) + "\n" + records)
+            .getBytes(StandardCharsets.UTF_8));
+
+        Manager loaded = reload(user);
+        assertEquals("Back\\slash", loaded.search("Back", 1).get(0).getTitle());
+        assertTrue(loaded.needsFullWrite());
+        loaded.saveChanges();
+        assertFalse(Files.exists(log));
+        assertFalse(loaded.needsFullWrite());
+    }
+
+    @Test
+    public void compactsOnceTheLogOutgrowsTheTasks() throws IOException {
+        String user = dir.resolve("compact").toString();
+        Manager m = snapshot(user);
+        Task base = m.tasks.get(0);
+        Path log = Paths.get(user + ".log");
+        for (int i = 0; i < 1000; i++) {
+            m.setTitle(base, "Title " + i);
+        }
+        m.saveChanges();
+        assertTrue(Files.exists(log));
+        m.setTitle(base, "Last");
+        assertTrue(m.needsFullWrite());
+        m.saveChanges();
+        assertFalse(Files.exists(log));
+        assertEquals(0, m.journal.recordCount);
+        assertEquals("Last", reload(user).getTask(base.id).getTitle());
+    }
+}
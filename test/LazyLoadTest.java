@@ -0,0 +1,159 @@
+/*
+ * File for the LazyLoadTest, tests for reading subTasks lazily.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that a lazy load leaves subTasks unread until something needs
+ * them, reads each subtree once, and ends up with the same Tasks as
+ * reading everything up front, in the text and binary formats.
+ */
+public class LazyLoadTest {
+    private static final LocalDate DAY = LocalDate.of(2100, 1, 4);
+    private static final int ROOTS = 20;
+
+    @TempDir
+    Path dir;
+
+    /*Writes Tasks where every other one has two subTasks, the first of them with a subTask of its own */
+    private static void write(String user, boolean binary) throws IOException {
+        Manager m = new Manager(user);
+        m.setBinaryStorage(binary);
+        for (int i = 0; i < ROOTS; i++) {
+            Task t = new Task("Task " + i, DAY.plusDays(i));
+            m.addTask(t);
+            if (i % 2 == 0) {
+                Task sub = new Task("Sub " + i, DAY.plusDays(i + 1));
+                m.addSubTask(sub, t);
+                m.addSubTask(new Task("Deep " + i, DAY.plusDays(i + 2)), sub);
+                m.addSubTask(new Task("Other " + i, DAY.plusDays(i)), t);
+            }
+        }
+        m.writeToStorage();
+    }
+
+    private static Manager read(String user, boolean lazy) throws IOException {
+        Manager m = new Manager(user);
+        m.setLazyLoading(lazy);
+        m.readStorage();
+        return m;
+    }
+
+    private static List<String> describe(List<Task> tasks) {
+        List<String> lines = new ArrayList<String>();
+        for (Task t : tasks) {
+            Task parent = t.getParent();
+            lines.add(t.getId() + " " + t.getTitle() + " " + t.getDate() + " " + (parent == null ? -1 : parent.getId()));
+        }
+        return lines;
+    }
+
+    /*Subtrees read later go before the Tasks already on their dates, so only the date order is the same */
+    private static List<String> sorted(List<Task> tasks) {
+        List<String> lines = describe(tasks);
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private static Task root(Manager m, String title) {
+        for (Task t : m.tasks) {
+            if (t.getTitle().equals(title)) {
+                return t;
+            }
+        }
+        throw new AssertionError(title);
+    }
+
+    private static Task subTask(Task parent, String title) {
+        for (Task s : parent.getSubTasks()) {
+            if (s.getTitle().equals(title)) {
+                return s;
+            }
+        }
+        throw new AssertionError(title);
+    }
+
+    private void readsSubTasksWhenNeeded(String name, boolean binary) throws IOException {
+        String user = dir.resolve(name).toString();
+        write(user, binary);
+        Manager eager = read(user, false);
+        Manager lazy = read(user, true);
+
+        assertEquals(eager.size(), lazy.size());
+        assertEquals(ROOTS, lazy.allTasks.size());
+        assertEquals(ROOTS / 2, lazy.unreadSubtrees);
+        assertNotNull(lazy.lazyData);
+
+        Task t = root(lazy, "Task 4");
+        assertTrue(t.hasSubTasks());
+        assertEquals(ROOTS / 2, lazy.unreadSubtrees); // Asking whether there are subTasks reads none
+        List<Task> subTasks = t.getSubTasks();
+        assertEquals(describe(root(eager, "Task 4").getSubTasks()), describe(subTasks));
+        assertEquals("Deep 4", subTask(t, "Sub 4").getSubTasks().get(0).getTitle());
+        assertEquals(ROOTS / 2 - 1, lazy.unreadSubtrees);
+        assertSame(subTasks, t.getSubTasks());
+        assertFalse(root(lazy, "Task 5").hasSubTasks());
+
+        /*A subTask looked up by id reads its subtree */
+        Task deep = eager.search("Deep 8", 1).get(0);
+        assertEquals("Deep 8", lazy.getTask(deep.getId()).getTitle());
+        assertEquals(ROOTS / 2 - 2, lazy.unreadSubtrees);
+
+        lazy.loadAllSubTasks();
+        assertEquals(0, lazy.unreadSubtrees);
+        assertNull(lazy.lazyData);
+        assertEquals(sorted(eager.allTasks), sorted(lazy.allTasks));
+        for (int i = 1; i < lazy.allTasks.size(); i++) {
+            assertFalse(lazy.allTasks.get(i).getDate().isBefore(lazy.allTasks.get(i - 1).getDate()));
+        }
+    }
+
+    @Test
+    public void textReadsSubTasksWhenNeeded() throws IOException {
+        readsSubTasksWhenNeeded("text", false);
+    }
+
+    @Test
+    public void binaryReadsSubTasksWhenNeeded() throws IOException {
+        readsSubTasksWhenNeeded("binary", true);
+    }
+
+    @Test
+    public void unreadSubTasksAreWrittenBack() throws IOException {
+        String user = dir.resolve("write").toString();
+        write(user, true);
+        List<String> before = describe(read(user, false).allTasks);
+
+        Manager lazy = read(user, true);
+        lazy.setTitle(root(lazy, "Task 1"), "Changed");
+        lazy.writeToStorage();
+        List<String> after = describe(read(user, false).allTasks);
+        assertEquals(before.size(), after.size());
+        before.replaceAll(line -> line.replace(" Task 1 ", " Changed "));
+        assertEquals(before, after);
+    }
+
+    @Test
+    public void movedTaskKeepsItsUnreadSubTasks() throws IOException {
+        String user = dir.resolve("move").toString();
+        write(user, false);
+        Manager lazy = read(user, true);
+        Task moved = root(lazy, "Task 2");
+        lazy.moveTask(moved, root(lazy, "Task 3"));
+        assertSame(root(lazy, "Task 3"), moved.getParent());
+        assertEquals(2, moved.getSubTasks().size());
+        lazy.writeToStorage();
+
+        Manager reread = read(user, false);
+        Task again = reread.getTask(moved.getId());
+        assertEquals("Task 3", again.getParent().getTitle());
+        assertEquals("Deep 2", subTask(again, "Sub 2").getSubTasks().get(0).getTitle());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * File for the ManagerRegistryTest, tests for ManagerRegistry.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that users load once however many threads ask for them, and that
+ * the Task budget counts every Task a Manager holds.
+ */
+public class ManagerRegistryTest {
+    private static final int THREADS = 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void concurrentAcquiresLoadOnce() throws Exception {
+        String user = dir.resolve("shared").toString();
+        ManagerRegistry registry = new ManagerRegistry(4, 1000);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            List<Future<Manager>> acquired = new ArrayList<Future<Manager>>();
+            for (int i = 0; i < THREADS; i++) {
+                acquired.add(pool.submit(() -> {
+                    start.await();
+                    return registry.acquire(user);
+                }));
+            }
+            Manager first = acquired.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Manager> f : acquired) {
+                assertSame(first, f.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(THREADS, registry.cache.get(user).pins);
+            for (int i = 0; i < THREADS; i++) {
+                registry.release(user);
+            }
+            assertTrue(registry.isLoaded(user));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void weighsSubTasksLeftUnread() throws Exception {
+        String user = dir.resolve("nested").toString();
+        Manager m = new Manager(user);
+        LocalDate day = LocalDate.of(2024, 5, 15);
+        for (int i = 0; i < 3; i++) {
+            Task t = new Task("Task " + i, day);
+            m.addTask(t);
+            for (int j = 0; j < 4; j++) {
+                m.addSubTask(new Task("Sub " + j, day), t);
+            }
+        }
+        m.writeToStorage();
+
+        ManagerRegistry registry = new ManagerRegistry(4, 1000);
+        Manager loaded = registry.acquire(user);
+        assertTrue(loaded.unreadSubtrees > 0);
+        assertEquals(15, loaded.size());
+        assertEquals(15, registry.loadedTasks);
+        registry.release(user);
+    }
+
+    @Test
+    public void reweighsOnRelease() throws Exception {
+        String user = dir.resolve("growing").toString();
+        ManagerRegistry registry = new ManagerRegistry(4, 5);
+        Manager m = registry.acquire(user);
+        for (int i = 0; i < 6; i++) {
+            m.addTask(new Task("Task " + i, LocalDate.of(2024, 5, 15)));
+        }
+        assertTrue(registry.isLoaded(user)); // Pinned, so kept over budget
+        registry.release(user);
+        assertFalse(registry.isLoaded(user));
+        assertEquals(0, registry.loadedTasks);
+
+        Manager reloaded = registry.acquire(user);
+        assertNotSame(m, reloaded);
+        assertEquals(6, reloaded.size());
+        registry.release(user);
+    }
+}
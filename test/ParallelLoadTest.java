@@ -0,0 +1,85 @@
+/*
+ * File for the ParallelLoadTest, tests for reading a task file in parallel chunks.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that a file read in parallel chunks and merged back together gives
+ * the same Tasks, in the same order, as one read from start to end, down to
+ * the order of Tasks sharing a date.
+ */
+public class ParallelLoadTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 15);
+    private static final int ROOTS = 6000;
+    private static final String PADDING = String.join("", Collections.nCopies(20, "padding "));
+
+    @TempDir
+    Path dir;
+
+    /*Writes Tasks over a few dates, so each chunk holds many of every date, with subTasks and completed Tasks */
+    private static void write(String user, boolean binary) throws IOException {
+        Manager m = new Manager(user);
+        m.setBinaryStorage(binary);
+        Random rand = new Random(7);
+        for (int i = 0; i < ROOTS; i++) {
+            Task t = new Task("Task " + i, PADDING + i, DAY.plusDays(rand.nextInt(10)), 0);
+            m.addTask(t);
+            if (i % 4 == 0) {
+                m.addSubTask(new Task("Sub " + i, DAY.plusDays(rand.nextInt(10))), t);
+            }
+            if (i % 5 == 0) {
+                m.markComplete(t);
+            }
+        }
+        m.writeToStorage();
+    }
+
+    private static Manager read(String user, boolean parallel) throws IOException {
+        Manager m = new Manager(user);
+        m.setParallelLoading(parallel);
+        m.readStorage();
+        return m;
+    }
+
+    private static List<String> order(List<Task> tasks) {
+        List<String> order = new ArrayList<String>();
+        for (Task t : tasks) {
+            order.add(t.getId() + " " + t.getTitle() + " " + t.getDate());
+        }
+        return order;
+    }
+
+    private void sameAsSequential(String name, boolean binary) throws IOException {
+        String user = dir.resolve(name).toString();
+        write(user, binary);
+        assertTrue(Files.size(Paths.get(user + ".txt")) >= 1 << 20); // Large enough to be split
+        Manager sequential = read(user, false);
+        Manager parallel = read(user, true);
+
+        assertEquals(sequential.size(), parallel.size());
+        assertEquals(order(sequential.tasks), order(parallel.tasks));
+        assertEquals(order(sequential.allTasks), order(parallel.allTasks));
+        assertEquals(order(sequential.incompleteTasks), order(parallel.incompleteTasks));
+        assertEquals(order(sequential.allIncompleteTasks), order(parallel.allIncompleteTasks));
+        for (Task t : parallel.allTasks) {
+            assertSame(t, parallel.getTask(t.getId()));
+        }
+    }
+
+    @Test
+    public void textMatchesSequentialRead() throws IOException {
+        sameAsSequential("text", false);
+    }
+
+    @Test
+    public void binaryMatchesSequentialRead() throws IOException {
+        sameAsSequential("binary", true);
+    }
+}
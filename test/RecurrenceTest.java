@@ -0,0 +1,170 @@
+/*
+ * File for the RecurrenceTest, tests for Recurrence.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Checks periodCode decoding and where each period rolls a Task over to,
+ * against the dates stepping one period at a time gives.
+ */
+public class RecurrenceTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 5, 15);
+    private static final LocalDate FAR = LocalDate.of(2030, 1, 1);
+
+    @Test
+    public void codeRoundTrip() {
+        for (int period = Recurrence.DAILY; period <= Recurrence.YEARLY; period++) {
+            Recurrence r = new Recurrence(period, LocalDate.of(2025, 2, 28));
+            assertEquals(period * 100000000 + 20250228, r.toCode());
+            Recurrence back = Recurrence.fromCode(r.toCode());
+            assertEquals(period, back.getPeriod());
+            assertEquals(LocalDate.of(2025, 2, 28), back.getUntil());
+        }
+        assertNull(Recurrence.fromCode(0));
+    }
+
+    @Test
+    public void periodAboveYearlyReadsAsYearly() {
+        Recurrence r = Recurrence.fromCode(720251231);
+        assertEquals(Recurrence.YEARLY, r.getPeriod());
+        assertEquals(LocalDate.of(2025, 12, 31), r.getUntil());
+    }
+
+    @Test
+    public void daily() {
+        Recurrence r = new Recurrence(Recurrence.DAILY, FAR);
+        assertEquals(TODAY, r.occurrence(TODAY.minusDays(40), TODAY, true));
+        assertEquals(TODAY, r.occurrence(TODAY.minusDays(1), TODAY, false));
+        assertEquals(TODAY.plusDays(3), r.occurrence(TODAY.plusDays(3), TODAY, false));
+    }
+
+    @Test
+    public void weekly() {
+        Recurrence r = new Recurrence(Recurrence.WEEKLY, FAR);
+        LocalDate date = LocalDate.of(2024, 3, 6); // A Wednesday, TODAY is one too
+        assertEquals(TODAY, r.occurrence(date, TODAY, true));
+        assertEquals(TODAY.minusWeeks(1), r.occurrence(date, TODAY, false));
+        assertEquals(LocalDate.of(2024, 5, 20), r.occurrence(LocalDate.of(2024, 3, 4), TODAY, true));
+    }
+
+    @Test
+    public void monthly() {
+        Recurrence r = new Recurrence(Recurrence.MONTHLY, FAR);
+        assertEquals(LocalDate.of(2024, 5, 20), r.occurrence(LocalDate.of(2023, 1, 20), TODAY, true));
+        assertEquals(LocalDate.of(2024, 6, 10), r.occurrence(LocalDate.of(2023, 1, 10), TODAY, true));
+        assertEquals(TODAY, r.occurrence(LocalDate.of(2024, 1, 15), TODAY, true));
+    }
+
+    @Test
+    public void yearly() {
+        Recurrence r = new Recurrence(Recurrence.YEARLY, FAR);
+        assertEquals(LocalDate.of(2024, 6, 1), r.occurrence(LocalDate.of(2019, 6, 1), TODAY, true));
+        assertEquals(LocalDate.of(2025, 4, 1), r.occurrence(LocalDate.of(2019, 4, 1), TODAY, true));
+    }
+
+    @Test
+    public void dateAfterTodayStays() {
+        for (int period = Recurrence.WEEKLY; period <= Recurrence.YEARLY; period++) {
+            Recurrence r = new Recurrence(period, FAR);
+            assertEquals(TODAY.plusDays(9), r.occurrence(TODAY.plusDays(9), TODAY, false));
+        }
+    }
+
+    @Test
+    public void incompleteStaysOnLastOccurrence() {
+        Recurrence weekly = new Recurrence(Recurrence.WEEKLY, FAR);
+        assertEquals(LocalDate.of(2024, 5, 13), weekly.occurrence(LocalDate.of(2024, 3, 4), TODAY, false));
+        Recurrence monthly = new Recurrence(Recurrence.MONTHLY, FAR);
+        assertEquals(LocalDate.of(2024, 5, 10), monthly.occurrence(LocalDate.of(2023, 1, 10), TODAY, false));
+        Recurrence yearly = new Recurrence(Recurrence.YEARLY, FAR);
+        assertEquals(LocalDate.of(2024, 4, 1), yearly.occurrence(LocalDate.of(2019, 4, 1), TODAY, false));
+    }
+
+    @Test
+    public void untilBoundary() {
+        LocalDate until = LocalDate.of(2024, 6, 10);
+        Recurrence monthly = new Recurrence(Recurrence.MONTHLY, until);
+        assertEquals(until, monthly.occurrence(LocalDate.of(2024, 1, 10), TODAY, true));
+        Recurrence shorter = new Recurrence(Recurrence.MONTHLY, until.minusDays(1));
+        assertNull(shorter.occurrence(LocalDate.of(2024, 1, 10), TODAY, true));
+        // The incomplete Task stays before today, so it still recurs
+        assertEquals(LocalDate.of(2024, 5, 10), shorter.occurrence(LocalDate.of(2024, 1, 10), TODAY, false));
+
+        Recurrence daily = new Recurrence(Recurrence.DAILY, TODAY);
+        assertEquals(TODAY, daily.occurrence(TODAY.minusDays(5), TODAY, false));
+        assertNull(daily.occurrence(TODAY.minusDays(5), TODAY.plusDays(1), false));
+    }
+
+    @Test
+    public void monthEndsStayCutShort() {
+        Recurrence r = new Recurrence(Recurrence.MONTHLY, FAR);
+        LocalDate today = LocalDate.of(2023, 4, 29);
+        // Jan 31 -> Feb 28 -> Mar 28 -> Apr 28 -> May 28
+        assertEquals(LocalDate.of(2023, 5, 28), r.occurrence(LocalDate.of(2023, 1, 31), today, true));
+        assertEquals(LocalDate.of(2023, 4, 28), r.occurrence(LocalDate.of(2023, 1, 31), today, false));
+        // Mar 31 -> Apr 30 -> May 30 -> Jun 30, no February on the way
+        assertEquals(LocalDate.of(2023, 6, 30), r.occurrence(LocalDate.of(2023, 3, 31), LocalDate.of(2023, 6, 2), true));
+        // May 31 -> Jun 30, then back a month from there
+        assertEquals(LocalDate.of(2023, 5, 30), r.occurrence(LocalDate.of(2023, 5, 31), LocalDate.of(2023, 6, 2), false));
+        // A leap February keeps the 29th
+        assertEquals(LocalDate.of(2024, 3, 29), r.occurrence(LocalDate.of(2024, 1, 30), LocalDate.of(2024, 3, 1), true));
+
+        Recurrence yearly = new Recurrence(Recurrence.YEARLY, FAR);
+        assertEquals(LocalDate.of(2028, 2, 28), yearly.occurrence(LocalDate.of(2024, 2, 29), LocalDate.of(2028, 2, 1), true));
+    }
+
+    @Test
+    public void matchesSteppingOneAtATime() {
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        for (int period = Recurrence.WEEKLY; period <= Recurrence.YEARLY; period++) {
+            Recurrence r = new Recurrence(period, FAR);
+            for (LocalDate date = LocalDate.of(2019, 1, 1); date.isBefore(today); date = date.plusDays(1)) {
+                for (boolean complete : new boolean[] {true, false}) {
+                    assertEquals(stepped(period, date, today, complete), r.occurrence(date, today, complete),
+                        period + " from " + date);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rollOverMovesTask() {
+        Recurrence r = new Recurrence(Recurrence.DAILY, FAR);
+        Task t = new Task("Daily", TODAY.minusDays(2), r.toCode());
+        t.markComplete();
+        assertTrue(r.rollOver(t, TODAY));
+        assertEquals(TODAY, t.getDate());
+        assertFalse(t.isComplete());
+
+        // Stepping on and back lands on an equal date, which is left alone
+        Recurrence weekly = new Recurrence(Recurrence.WEEKLY, FAR);
+        LocalDate date = TODAY.minusDays(3);
+        Task w = new Task("Weekly", date, weekly.toCode());
+        assertTrue(weekly.rollOver(w, TODAY));
+        assertSame(date, w.getDate());
+
+        Recurrence ended = new Recurrence(Recurrence.DAILY, TODAY.minusDays(1));
+        assertFalse(ended.rollOver(new Task("Ended", TODAY.minusDays(2), ended.toCode()), TODAY));
+    }
+
+    /*The loop Recurrence replaced */
+    private static LocalDate stepped(int period, LocalDate date, LocalDate today, boolean complete) {
+        LocalDate d = date;
+        boolean jumped = false;
+        while (d.isBefore(today)) {
+            d = step(period, d, 1);
+            jumped = true;
+        }
+        return jumped && !complete ? step(period, d, -1) : d;
+    }
+
+    private static LocalDate step(int period, LocalDate d, int amount) {
+        if (period == Recurrence.WEEKLY) {
+            return d.plusWeeks(amount);
+        }
+        return period == Recurrence.MONTHLY ? d.plusMonths(amount) : d.plusYears(amount);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * File for the SaveServiceTest, tests for SaveService.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that a save that throws is reported and that later saves are
+ * still written.
+ */
+public class SaveServiceTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void keepsSavingAfterAnUnexpectedException() throws Exception {
+        String user = dir.resolve("failing").toString();
+        boolean[] fail = {true};
+        Manager m = new Manager(user) {
+            @Override
+            void writeSnapshot(List<Task> copy, int count, int nextId, boolean binary) throws IOException {
+                if (fail[0]) {
+                    fail[0] = false;
+                    throw new IllegalStateException("Disk went away");
+                }
+                super.writeSnapshot(copy, count, nextId, binary);
+            }
+        };
+        BlockingQueue<Optional<IOException>> finished = new LinkedBlockingQueue<Optional<IOException>>();
+        SaveService saves = new SaveService(m, Runnable::run, error -> finished.add(Optional.ofNullable(error)));
+
+        m.addTask(new Task("First", LocalDate.of(2024, 5, 15)));
+        saves.requestSave();
+        IOException error = finished.poll(10, TimeUnit.SECONDS).orElse(null);
+        assertNotNull(error);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+
+        m.addTask(new Task("Second", LocalDate.of(2024, 5, 16)));
+        saves.requestSave();
+        assertFalse(finished.poll(10, TimeUnit.SECONDS).isPresent());
+        saves.close();
+
+        Manager loaded = new Manager(user);
+        loaded.readStorage();
+        assertEquals(2, loaded.size());
+    }
+}
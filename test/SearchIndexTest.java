@@ -0,0 +1,129 @@
+/*
+ * File for the SearchIndexTest, tests for SearchIndex through Manager.search.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that searches find exactly the Tasks with a word starting with
+ * each query word, earliest first, whether they walk the Tasks or the
+ * index entries, and that edits and removals are followed.
+ */
+public class SearchIndexTest {
+    private static final LocalDate DAY = LocalDate.of(2100, 1, 4);
+    private static final String[] WORDS = {"alpha", "alpine", "beta", "gamma", "garden", "delta", "report",
+        "review", "rare"};
+
+    @TempDir
+    Path dir;
+
+    private static List<String> titles(List<Task> tasks) {
+        List<String> titles = new ArrayList<String>();
+        for (Task t : tasks) {
+            titles.add(t.getTitle());
+        }
+        return titles;
+    }
+
+    @Test
+    public void splitsIntoLowerCaseWords() {
+        assertEquals(new HashSet<String>(Arrays.asList("call", "bob", "re", "q3", "plan", "ünïcödé")),
+            SearchIndex.words("Call Bob re: Q3-plan", "ÜNÏCÖDÉ, call"));
+        assertTrue(SearchIndex.words(null, " -- ").isEmpty());
+    }
+
+    @Test
+    public void findsPrefixesOfEveryWordInDateOrder() {
+        Manager m = new Manager(dir.resolve("prefix").toString());
+        m.addTask(new Task("Quarterly report", "For the board", DAY.plusDays(3), 0));
+        m.addTask(new Task("Review REPORT draft", "", DAY.plusDays(1), 0));
+        m.addTask(new Task("Water the garden", "Reporting not needed", DAY.plusDays(2), 0));
+        Task parent = new Task("Parent", DAY);
+        m.addTask(parent);
+        m.addSubTask(new Task("Report on the sub level", DAY.plusDays(5)), parent);
+
+        assertEquals(Arrays.asList("Review REPORT draft", "Water the garden", "Quarterly report",
+            "Report on the sub level"), titles(m.search("rep", 10)));
+        assertEquals(Arrays.asList("Review REPORT draft", "Water the garden"), titles(m.search("REP", 2)));
+        assertEquals(Arrays.asList("Quarterly report"), titles(m.search("report BOARD", 10)));
+        assertEquals(Arrays.asList("Water the garden"), titles(m.search("gard rep", 10)));
+        assertTrue(m.search("port", 10).isEmpty()); // Only the start of a word matches
+        assertTrue(m.search("report missing", 10).isEmpty());
+        assertTrue(m.search("  ", 10).isEmpty());
+        assertTrue(m.search("report", 0).isEmpty());
+    }
+
+    @Test
+    public void followsEditsAndRemovals() {
+        Manager m = new Manager(dir.resolve("edits").toString());
+        Task t = new Task("Buy milk", DAY);
+        m.addTask(t);
+        assertEquals(1, m.search("milk", 10).size());
+
+        m.setTitle(t, "Buy bread");
+        assertTrue(m.search("milk", 10).isEmpty());
+        assertSame(t, m.search("bread", 10).get(0));
+        m.setDescription(t, "From the bakery");
+        assertSame(t, m.search("bakery bread", 10).get(0));
+
+        m.removeTask(t, true);
+        assertTrue(m.search("bread", 10).isEmpty());
+        Task again = new Task("Bread again", DAY);
+        m.addTask(again);
+        assertEquals(Arrays.asList(again), m.search("bread", 10));
+    }
+
+    @Test
+    public void staleEntriesAreDroppedOnceTheyOutnumberTheRest() {
+        Manager m = new Manager(dir.resolve("stale").toString());
+        m.search("warm", 1); // Build the index so every change below goes through it
+        List<Task> added = new ArrayList<Task>();
+        for (int i = 0; i < 2000; i++) {
+            Task t = new Task("Entry number " + i, DAY);
+            m.addTask(t);
+            added.add(t);
+        }
+        int full = m.searchIndex.size();
+        for (int i = 0; i < 1900; i++) {
+            m.removeTask(added.get(i), true);
+        }
+        assertTrue(m.searchIndex.size() < full);
+        assertEquals(100, m.search("entry", 1000).size());
+    }
+
+    @Test
+    public void matchesAScanOfEveryTask() {
+        Manager m = new Manager(dir.resolve("scan").toString());
+        Random rand = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            String title = WORDS[rand.nextInt(WORDS.length - 1)] + " " + WORDS[rand.nextInt(WORDS.length - 1)];
+            String description = i % 500 == 0 ? "rare" : WORDS[rand.nextInt(WORDS.length - 1)];
+            m.addTask(new Task(title, description, DAY.plusDays(rand.nextInt(300)), 0));
+        }
+        String[] queries = {"al", "alp", "alpha", "gar", "re", "rev", "rare", "alpha beta", "ga de re",
+            "rare alpha", "zzz"};
+        for (String query : queries) {
+            List<String> terms = new ArrayList<String>(SearchIndex.words(query, ""));
+            List<LocalDate> expected = new ArrayList<LocalDate>();
+            for (Task t : m.allTasks) {
+                Set<String> words = SearchIndex.words(t.getTitle(), t.getDescription());
+                if (terms.stream().allMatch(term -> words.stream().anyMatch(w -> w.startsWith(term)))) {
+                    expected.add(t.getDate());
+                }
+            }
+            for (int limit : new int[] {1, 20, 100000}) {
+                List<Task> found = m.search(query, limit);
+                List<LocalDate> dates = new ArrayList<LocalDate>();
+                for (Task t : found) {
+                    dates.add(t.getDate());
+                }
+                assertEquals(expected.subList(0, Math.min(limit, expected.size())), dates, query + " " + limit);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * File for the TaskIndexTest, tests for TaskIndex.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Checks TaskIndex against a plain list kept in the same order, through
+ * enough inserts and removes to split, merge and drop many chunks, and
+ * that Tasks added in date order fill their chunks.
+ */
+public class TaskIndexTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 15);
+    private static final int TASKS = 20000;
+
+    private static Task task(int id, LocalDate date) {
+        Task t = new Task("Task " + id, date);
+        t.id = id;
+        return t;
+    }
+
+    /*Where TaskIndex.insert puts a Task: before every Task on or after its date */
+    private static void insert(List<Task> expected, Task t) {
+        int i = 0;
+        while (i < expected.size() && expected.get(i).getDate().isBefore(t.getDate())) {
+            i++;
+        }
+        expected.add(i, t);
+    }
+
+    private static void assertSameTasks(List<Task> expected, TaskIndex index) {
+        assertEquals(expected.size(), index.size());
+        int sum = 0;
+        for (TaskIndex.Chunk chunk : index.chunks) {
+            assertTrue(chunk.size > 0);
+            sum += chunk.size;
+        }
+        assertEquals(expected.size(), sum);
+        Iterator<Task> it = index.iterator();
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), it.next());
+        }
+        assertFalse(it.hasNext());
+        for (int i = 0; i < expected.size(); i += 97) {
+            assertSame(expected.get(i), index.get(i));
+            assertEquals(i, index.indexOf(expected.get(i)));
+        }
+    }
+
+    @Test
+    public void matchesAPlainList() {
+        Random rand = new Random(11);
+        TaskIndex index = new TaskIndex();
+        List<Task> expected = new ArrayList<Task>();
+        for (int i = 0; i < TASKS; i++) {
+            Task t = task(i, DAY.plusDays(rand.nextInt(400)));
+            index.insert(t);
+            insert(expected, t);
+        }
+        assertSameTasks(expected, index);
+
+        for (int n = 0; n < 200; n++) {
+            LocalDate date = DAY.plusDays(rand.nextInt(420) - 10);
+            int lower = 0;
+            while (lower < expected.size() && expected.get(lower).getDate().isBefore(date)) {
+                lower++;
+            }
+            assertEquals(lower, index.lowerBound(date));
+        }
+
+        /*Remove most of them, from the front, the back and at random, so chunks merge and go */
+        while (expected.size() > 500) {
+            int i = expected.size() % 3 == 0 ? 0 : rand.nextInt(expected.size());
+            assertSame(expected.remove(i), index.remove(i));
+        }
+        assertSameTasks(expected, index);
+        for (int i = 0; i < TASKS / 2; i++) {
+            Task t = task(TASKS + i, DAY.plusDays(rand.nextInt(400)));
+            index.insert(t);
+            insert(expected, t);
+        }
+        assertSameTasks(expected, index);
+
+        Set<Task> odd = new HashSet<Task>();
+        for (Task t : expected) {
+            if (t.id % 2 == 1) {
+                odd.add(t);
+            }
+        }
+        assertTrue(index.removeIf(odd::contains));
+        expected.removeIf(odd::contains);
+        assertSameTasks(expected, index);
+    }
+
+    @Test
+    public void appendsFillEachChunk() {
+        TaskIndex index = new TaskIndex();
+        List<Task> expected = new ArrayList<Task>();
+        for (int i = 0; i < TASKS; i++) {
+            Task t = task(i, DAY.plusDays(i));
+            index.insert(t);
+            expected.add(t);
+        }
+        assertSameTasks(expected, index);
+        int full = index.chunks.get(0).size;
+        for (int c = 0; c < index.chunks.size() - 1; c++) {
+            assertEquals(full, index.chunks.get(c).size);
+        }
+        assertEquals((TASKS + full - 1) / full, index.chunks.size());
+
+        /*A Task in the middle of a full chunk still splits it in half */
+        Task middle = task(-1, DAY.plusDays(full / 2).minusDays(1));
+        index.insert(middle);
+        insert(expected, middle);
+        assertSameTasks(expected, index);
+        assertEquals(full / 2 + 1, index.chunks.get(0).size);
+    }
+
+    @Test
+    public void clearEmptiesIt() {
+        TaskIndex index = new TaskIndex();
+        for (int i = 0; i < 2000; i++) {
+            index.insert(task(i, DAY.plusDays(i % 30)));
+        }
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.lowerBound(DAY));
+        index.insert(task(0, DAY));
+        assertSame(index.get(0), index.iterator().next());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * File for the TaskStoreTest, tests for TaskStore behind a Manager.
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Checks that a Manager with columnar storage answers like one holding
+ * Task objects, and that the views it hands out become its Tasks once
+ * something needs them.
+ */
+public class TaskStoreTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 15);
+
+    @TempDir
+    Path dir;
+
+    /*Writes a binary file of Tasks a day apart, each with two subTasks, every third complete */
+    private static void write(String user) throws IOException {
+        Manager m = new Manager(user);
+        m.setBinaryStorage(true);
+        for (int i = 0; i < 30; i++) {
+            Task t = new Task("Task " + i, "Description " + i, DAY.plusDays(i), 0);
+            m.addTask(t);
+            m.addSubTask(new Task("Sub " + i, DAY.plusDays(i)), t);
+            m.addSubTask(new Task("Late " + i, DAY.plusDays(i + 1)), t);
+            if (i % 3 == 0) {
+                m.markComplete(t.getSubTasks().get(0));
+                m.markComplete(t.getSubTasks().get(1));
+                m.markComplete(t);
+            }
+        }
+        m.writeToStorage();
+    }
+
+    private static Manager read(String user, boolean columnar) throws IOException {
+        Manager m = new Manager(user);
+        m.setColumnarStorage(columnar);
+        m.readStorage();
+        return m;
+    }
+
+    private static List<String> titles(List<Task> tasks) {
+        List<String> titles = new ArrayList<String>();
+        for (Task t : tasks) {
+            titles.add(t.getId() + " " + t.getTitle() + " " + t.getDate() + " " + t.isComplete());
+        }
+        return titles;
+    }
+
+    @Test
+    public void answersLikeTaskObjects() throws IOException {
+        String user = dir.resolve("same").toString();
+        write(user);
+        Manager objects = read(user, false);
+        Manager columnar = read(user, true);
+        assertNotNull(columnar.columns);
+        assertEquals(0, columnar.allTasks.size());
+
+        assertEquals(objects.size(), columnar.size());
+        LocalDate from = DAY.plusDays(5);
+        LocalDate to = DAY.plusDays(12);
+        assertEquals(titles(objects.between(from, to)), titles(columnar.between(from, to)));
+        assertEquals(titles(objects.dueOn(from)), titles(columnar.dueOn(from)));
+        assertEquals(titles(objects.incomplete(from, to)), titles(columnar.incomplete(from, to)));
+        assertEquals(titles(objects.overdue(to)), titles(columnar.overdue(to)));
+        assertEquals(titles(objects.query(null, null, t -> t.getTitle().startsWith("Late"))),
+            titles(columnar.query(null, null, t -> t.getTitle().startsWith("Late"))));
+        for (int id = 0; id < objects.nextId; id++) {
+            Task t = objects.getTask(id);
+            Task v = columnar.getTask(id);
+            assertEquals(t == null, v == null);
+            if (t != null) {
+                assertEquals(t.getDescription(), v.getDescription());
+            }
+        }
+        assertNotNull(columnar.columns); // Nothing so far needed Task objects
+    }
+
+    @Test
+    public void viewsBecomeTheManagersTasks() throws IOException {
+        String user = dir.resolve("views").toString();
+        write(user);
+        Manager m = read(user, true);
+        Task view = m.getTask(0);
+        assertSame(view, m.getTask(0));
+        assertTrue(view.hasSubTasks());
+
+        m.setTitle(view, "Changed");
+        assertNull(m.columns);
+        assertSame(view, m.getTask(0));
+        assertEquals(2, view.getSubTasks().size());
+        assertEquals(m.size(), m.allTasks.size());
+        m.writeToStorage();
+        assertEquals("Changed", read(user, false).getTask(0).getTitle());
+    }
+
+    @Test
+    public void subTasksOfAViewBuildTheTasks() throws IOException {
+        String user = dir.resolve("subTasks").toString();
+        write(user);
+        Manager m = read(user, true);
+        Task view = m.query(DAY, DAY, t -> t.getTitle().equals("Task 0")).get(0);
+        assertNull(view.getParent());
+        List<Task> subTasks = view.getSubTasks();
+        assertNull(m.columns);
+        assertEquals(Arrays.asList("Sub 0", "Late 0"),
+            Arrays.asList(subTasks.get(0).getTitle(), subTasks.get(1).getTitle()));
+        assertSame(view, subTasks.get(0).getParent());
+        assertEquals(titles(read(user, false).roots(null, null, null)), titles(m.roots(null, null, null)));
+    }
+
+    @Test
+    public void textFilesAreReadAsTasks() throws IOException {
+        String user = dir.resolve("text").toString();
+        Manager m = new Manager(user);
+        m.addTask(new Task("Text", DAY));
+        m.writeToStorage();
+        Manager loaded = read(user, true);
+        assertNull(loaded.columns);
+        assertEquals(1, loaded.size());
+    }
+}